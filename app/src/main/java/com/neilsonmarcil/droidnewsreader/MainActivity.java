@@ -2,23 +2,47 @@ package com.neilsonmarcil.droidnewsreader;
 
 import android.app.AlertDialog;
 import android.app.ProgressDialog;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.os.AsyncTask;
+import android.os.BatteryManager;
+import android.support.v4.net.ConnectivityManagerCompat;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.support.v7.widget.Toolbar;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
 
+import com.neilsonmarcil.droidnewsreader.adapter.CommentHtmlCache;
 import com.neilsonmarcil.droidnewsreader.adapter.NewsListArrayAdapter;
+import com.neilsonmarcil.droidnewsreader.adapter.StoryListDiff;
+import com.neilsonmarcil.droidnewsreader.data.CommentPrefetcher;
 import com.neilsonmarcil.droidnewsreader.data.DataLayer;
+import com.neilsonmarcil.droidnewsreader.data.DiskItemCache;
+import com.neilsonmarcil.droidnewsreader.data.FetchHandle;
+import com.neilsonmarcil.droidnewsreader.data.FetchMetrics;
+import com.neilsonmarcil.droidnewsreader.data.FetchScheduler;
 import com.neilsonmarcil.droidnewsreader.data.RESTDataLayer;
+import com.neilsonmarcil.droidnewsreader.data.TopStoriesSnapshot;
 import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+import com.neilsonmarcil.droidnewsreader.dto.TopStoriesUpdate;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Application entry point, this Activity is the first one to be displayed. It handles all the logic
@@ -34,6 +58,36 @@ public class MainActivity extends AppCompatActivity {
      */
     public static final String REFRESH_ON_START_FLAG = "refreshOnStart";
 
+    /**
+     * the directory under the cache dir where the items are kept
+     */
+    private static final String ITEMS_CACHE_DIR = "items";
+
+    /**
+     * the file under the cache dir where the stories last displayed are kept
+     */
+    private static final String SNAPSHOT_FILE = "topstories.snapshot";
+
+    /**
+     * the number of stories retrieved per page
+     */
+    private static final int PAGE_SIZE = 20;
+
+    /**
+     * the number of rows before the end of the list that triggers the loading of the next page
+     */
+    private static final int PREFETCH_MARGIN = 5;
+
+    /**
+     * the number of rows after the visible ones whose comments are prefetched
+     */
+    private static final int COMMENTS_PREFETCH_ROWS = 5;
+
+    /**
+     * the battery level, in percent, under which the comments are not prefetched unless charging
+     */
+    private static final int PREFETCH_MIN_BATTERY = 20;
+
     /**
      * the ListView that contains the top stories item
      */
@@ -49,6 +103,46 @@ public class MainActivity extends AppCompatActivity {
      */
     private DataLayer mDataLayer;
 
+    /**
+     * the number of stories that can be paged, the ranking last downloaded up to MAX_STORIES
+     */
+    private int mTopStoriesCount;
+
+    /**
+     * the rank of the first story of the next page
+     */
+    private int mNextOffset;
+
+    /**
+     * warms the comments of the stories around the viewport
+     */
+    private CommentPrefetcher mPrefetcher;
+
+    /**
+     * cancels the requests of the list last loaded and its pages, replaced on every reload and
+     * cancelled when the screen is left
+     */
+    private FetchHandle mListHandle = new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+
+    /**
+     * the task loading, refreshing or paging the list, null once it is done
+     */
+    private AsyncTask<?, ?, ?> mListTask;
+
+    /**
+     * true when leaving the screen interrupted mListTask, onResume() loads the list again
+     */
+    private boolean mListInterrupted;
+
+    /**
+     * the stories last displayed, shown at launch until the list is refreshed
+     */
+    private TopStoriesSnapshot mSnapshot;
+
+    /**
+     * true for a debug build, the fetch metrics are recorded and displayed from the menu
+     */
+    private boolean mDebuggable;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -60,38 +154,163 @@ public class MainActivity extends AppCompatActivity {
         Toolbar toolbar = (Toolbar)findViewById(R.id.main_activity_toolbar);
         setSupportActionBar(toolbar);
 
-        // setting the DataLayer
-        mDataLayer = RESTDataLayer.getInstance();
+        // setting the DataLayer, the items are kept on disk between launches
+        RESTDataLayer restDataLayer = RESTDataLayer.getInstance();
+        restDataLayer.setDiskCache(new DiskItemCache(new File(getCacheDir(), ITEMS_CACHE_DIR)));
+        mDataLayer = restDataLayer;
+        mSnapshot = new TopStoriesSnapshot(new File(getCacheDir(), SNAPSHOT_FILE));
+
+        // the fetch metrics cost nothing when they are not recorded, only the debug builds do
+        mDebuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        restDataLayer.getMetrics().setEnabled(mDebuggable);
 
         // getting a refrence to the ListView
         mListView = (ListView)findViewById(R.id.main_activity_listview);
         mSwipeLayout = (SwipeRefreshLayout)findViewById(R.id.main_activity_swipe_layout);
 
+        // the comments of the stories on screen are prefetched in the background
+        mPrefetcher = new CommentPrefetcher(mDataLayer, restDataLayer.getScheduler(),
+                                            new DevicePrefetchPolicy(getApplicationContext()));
+
         // configuring the listview to handle different events
         configureListViewReload();
         configureListViewItemClick();
+        configureListViewScroll();
 
         // loading the data if the flag is null or true
         boolean refreshOnStart = getIntent().getBooleanExtra(REFRESH_ON_START_FLAG, true);
         if (refreshOnStart) {
-            createLoadingTask().execute();
+            // the stories last displayed are shown right away and refreshed in the background
+            SingleNews[] snapshot = mSnapshot.read();
+            if (snapshot != null && snapshot.length > 0) {
+                NewsListArrayAdapter adapter = new NewsListArrayAdapter(MainActivity.this,
+                                                                        R.layout.news_list_single_row,
+                                                                        snapshot);
+                mListView.setAdapter(adapter);
+                mSwipeLayout.setRefreshing(true);
+                createRefreshTask(adapter).execute();
+            }
+            else {
+                createLoadingTask().execute();
+            }
         }
 
         Log.d(TAG, "MainActivity.onCreate(...) completed");
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        // the menu only holds debug tools
+        if (mDebuggable) {
+            getMenuInflater().inflate(R.menu.main_activity_menu, menu);
+        }
+        return super.onCreateOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.main_menu_fetch_metrics) {
+            showFetchMetrics();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+
+        // nothing was cancelled by onPause() yet
+        if (!mListHandle.isCancelled()) {
+            return;
+        }
+
+        NewsListArrayAdapter adapter = null;
+        if (mListView.getAdapter() instanceof NewsListArrayAdapter && mListView.getAdapter().getCount() > 0) {
+            adapter = (NewsListArrayAdapter)mListView.getAdapter();
+        }
+
+        if (mListInterrupted) {
+            // the list or a page was still downloading, refreshing the stories displayed
+            mListInterrupted = false;
+            if (adapter != null) {
+                mSwipeLayout.setRefreshing(true);
+                createRefreshTask(adapter).execute();
+            }
+            else {
+                createLoadingTask().execute();
+            }
+        }
+        else if (adapter != null) {
+            // only the next pages were waiting, they need a handle not cancelled
+            mListHandle = new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+            if (mNextOffset < mTopStoriesCount) {
+                adapter.setPageLoader(new NextPageLoader(adapter, mListHandle), PREFETCH_MARGIN);
+            }
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+
+        // the requests not started are dropped, onResume() starts again what was interrupted
+        mListHandle.cancel();
+        if (mListTask != null) {
+            mListTask.cancel(false);
+            mListTask = null;
+            mListInterrupted = true;
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // nobody will display the stories still downloading
+        mListHandle.cancel();
+        mPrefetcher.shutdown();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        RESTDataLayer.getInstance().onTrimMemory(level);
+        CommentHtmlCache.getInstance().onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        RESTDataLayer.getInstance().onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        CommentHtmlCache.getInstance().onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
     /**
-     * This function creates a a new task to retrieve the data on a worker thread.
+     * This function creates a a new task to retrieve the data on a worker thread. It downloads the
+     * ranking and the first page only, the stories are published as they are downloaded and the
+     * list is displayed as soon as the first one arrives. The next pages are loaded when the user
+     * scrolls. The requests of the previous list are cancelled.
      * @return an AsyncTask to be executed later.
      */
-    private AsyncTask<Void, Void, SingleNews[]> createLoadingTask() {
-        return new AsyncTask<Void, Void, SingleNews[]>() {
+    private AsyncTask<Void, SingleNews, Integer> createLoadingTask() {
+        mListHandle.cancel();
+        final FetchHandle handle = new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+        mListHandle = handle;
+
+        return new AsyncTask<Void, SingleNews, Integer>() {
 
             private ProgressDialog mDialog;
 
+            /**
+             * the adapter receiving the stories of this task, created with the first story
+             */
+            private NewsListArrayAdapter mAdapter;
+
             @Override
             protected void onPreExecute() {
 
+                mListTask = this;
                 if (!mSwipeLayout.isRefreshing()) {
 
                     mDialog = new ProgressDialog(MainActivity.this);
@@ -102,6 +321,8 @@ public class MainActivity extends AppCompatActivity {
                     mDialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
                         @Override
                         public void onCancel(DialogInterface dialog) {
+                            // stops the downloads as well as the task
+                            handle.cancel();
                             cancel(true);
                         }
                     });
@@ -111,22 +332,61 @@ public class MainActivity extends AppCompatActivity {
             }
 
             @Override
-            protected SingleNews[] doInBackground(Void... params) {
+            protected Integer doInBackground(Void... params) {
 
                 Log.i(TAG, "MainActivity.LoadingTask starting...");
 
-                SingleNews[] news = new SingleNews[0];
+                final int[] count = new int[1];
 
                 try {
-                    news = mDataLayer.getTopStories();
+                    mTopStoriesCount = Math.min(mDataLayer.getTopStoriesIds().length, DataLayer.MAX_STORIES);
+                    if (handle.isCancelled()) {
+                        return 0;
+                    }
+                    mDataLayer.getTopStories(0, PAGE_SIZE, new DataLayer.StoriesListener() {
+                        @Override
+                        public void onStory(int rank, SingleNews news) {
+                            publishProgress(news);
+                        }
+
+                        @Override
+                        public void onComplete(int total) {
+                            count[0] = total;
+                        }
+                    }, handle);
                 }
                 catch (Exception ex) {
                     cancel(true);
                     Log.e(TAG, "MainActivity.LoadingTask threw an exception", ex);
                 }
 
-                Log.i(TAG, "MainActivity.LoadingTask done. Returning " + news.length + " items");
-                return news;
+                Log.i(TAG, "MainActivity.LoadingTask done. Returning " + count[0] + " items");
+                return count[0];
+            }
+
+            @Override
+            protected void onProgressUpdate(SingleNews... news) {
+
+                // the first story replaces the previous list and ends the waiting, the
+                // adapter displayed is reused to keep its rows
+                if (mAdapter == null) {
+                    if (mListView.getAdapter() instanceof NewsListArrayAdapter) {
+                        mAdapter = (NewsListArrayAdapter)mListView.getAdapter();
+                        mAdapter.setPageLoader(null, 0);
+                        mAdapter.clear();
+                    }
+                    else {
+                        mAdapter = new NewsListArrayAdapter(MainActivity.this,
+                                                            R.layout.news_list_single_row,
+                                                            new ArrayList<SingleNews>());
+                        mListView.setAdapter(mAdapter);
+                    }
+
+                    dismissDialog();
+                    mSwipeLayout.setRefreshing(false);
+                }
+
+                appendStories(mAdapter, news);
             }
 
             @Override
@@ -134,6 +394,12 @@ public class MainActivity extends AppCompatActivity {
 
                 dismissDialog();
 
+                // interrupted by onPause(), the list is loaded again by onResume()
+                if (mListTask != this) {
+                    return;
+                }
+                mListTask = null;
+
                 // saying the refresh is done on the SwipeRefreshLayout
                 mSwipeLayout.setRefreshing(false);
 
@@ -147,13 +413,27 @@ public class MainActivity extends AppCompatActivity {
             }
 
             @Override
-            protected void onPostExecute(SingleNews[] news) {
+            protected void onPostExecute(Integer count) {
 
-                // loading the data into the list view
-                ArrayAdapter<SingleNews> adapter = new NewsListArrayAdapter(MainActivity.this,
-                                                        R.layout.news_list_single_row,
-                                                        news);
-                mListView.setAdapter(adapter);
+                if (mListTask == this) {
+                    mListTask = null;
+                }
+
+                // nothing was published, showing the empty list
+                if (mAdapter == null) {
+                    ArrayAdapter<SingleNews> adapter = new NewsListArrayAdapter(MainActivity.this,
+                                                            R.layout.news_list_single_row,
+                                                            new SingleNews[0]);
+                    mListView.setAdapter(adapter);
+                }
+                else {
+                    // the next pages are loaded when scrolling
+                    mNextOffset = PAGE_SIZE;
+                    if (mNextOffset < mTopStoriesCount) {
+                        mAdapter.setPageLoader(new NextPageLoader(mAdapter, handle), PREFETCH_MARGIN);
+                    }
+                    saveSnapshot(mAdapter);
+                }
 
                 dismissDialog();
 
@@ -169,6 +449,178 @@ public class MainActivity extends AppCompatActivity {
         };
     }
 
+    /**
+     * This function creates a task to refresh the list displayed without reloading it: only the
+     * ranking, the new stories and the score and comments of the stories kept are downloaded. The
+     * stories are updated in the same adapter so the scroll position is kept.
+     * @param adapter the adapter displaying the list
+     * @return an AsyncTask to be executed later.
+     */
+    private AsyncTask<Void, Void, TopStoriesUpdate> createRefreshTask(final NewsListArrayAdapter adapter) {
+        mListHandle.cancel();
+        final FetchHandle handle = new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+        mListHandle = handle;
+
+        // the pages are loaded again with the new ranking
+        adapter.setPageLoader(null, 0);
+        final int count = Math.max(adapter.getCount(), PAGE_SIZE);
+
+        return new AsyncTask<Void, Void, TopStoriesUpdate>() {
+
+            @Override
+            protected void onPreExecute() {
+                mListTask = this;
+            }
+
+            @Override
+            protected TopStoriesUpdate doInBackground(Void... params) {
+                return mDataLayer.refreshTopStories(count, handle);
+            }
+
+            @Override
+            protected void onPostExecute(TopStoriesUpdate update) {
+
+                if (mListTask == this) {
+                    mListTask = null;
+                }
+                mSwipeLayout.setRefreshing(false);
+
+                // keeping the list displayed when the ranking could not be downloaded
+                if (update.Stories.length == 0) {
+                    Log.w(TAG, "MainActivity.RefreshTask: nothing received, keeping the list");
+                    return;
+                }
+
+                // only the rows that changed are bound again
+                StoryListDiff diff = adapter.update(Arrays.asList(update.Stories), mListView);
+                Log.d(TAG, "MainActivity.RefreshTask: " + diff);
+
+                mTopStoriesCount = Math.min(update.Ids.length, DataLayer.MAX_STORIES);
+                mNextOffset = update.Stories.length;
+                if (mNextOffset < mTopStoriesCount) {
+                    adapter.setPageLoader(new NextPageLoader(adapter, handle), PREFETCH_MARGIN);
+                }
+                saveSnapshot(adapter);
+            }
+        };
+    }
+
+    /**
+     * This function creates a task to retrieve a page of stories on a worker thread and append
+     * them to the adapter as they are downloaded.
+     * @param adapter the adapter receiving the stories
+     * @param handle cancels the requests of the list
+     * @return an AsyncTask to be executed later with the offset of the page.
+     */
+    private AsyncTask<Integer, SingleNews, Void> createPageTask(final NewsListArrayAdapter adapter,
+                                                                final FetchHandle handle) {
+        return new AsyncTask<Integer, SingleNews, Void>() {
+
+            @Override
+            protected void onPreExecute() {
+                mListTask = this;
+            }
+
+            @Override
+            protected Void doInBackground(Integer... params) {
+
+                Log.i(TAG, "MainActivity.PageTask starting at " + params[0]);
+
+                try {
+                    mDataLayer.getTopStories(params[0], PAGE_SIZE, new DataLayer.StoriesListener() {
+                        @Override
+                        public void onStory(int rank, SingleNews news) {
+                            publishProgress(news);
+                        }
+
+                        @Override
+                        public void onComplete(int total) {
+                        }
+                    }, handle);
+                }
+                catch (Exception ex) {
+                    Log.e(TAG, "MainActivity.PageTask threw an exception", ex);
+                }
+
+                return null;
+            }
+
+            @Override
+            protected void onProgressUpdate(SingleNews... news) {
+                // the list was refreshed or reloaded since this page was requested
+                if (!handle.isCancelled()) {
+                    appendStories(adapter, news);
+                }
+            }
+
+            @Override
+            protected void onPostExecute(Void result) {
+                if (mListTask == this) {
+                    mListTask = null;
+                }
+                if (!handle.isCancelled()) {
+                    adapter.onPageLoaded(mNextOffset < mTopStoriesCount);
+                }
+            }
+        };
+    }
+
+    /**
+     * Displays the fetch metrics recorded so far and the concurrency limit in a dialog, they are
+     * also written to the log.
+     */
+    private void showFetchMetrics() {
+        final RESTDataLayer restDataLayer = RESTDataLayer.getInstance();
+        FetchMetrics.Snapshot snapshot = restDataLayer.getMetrics().snapshot();
+        String dump = snapshot + restDataLayer.getConcurrencyLimit().toString();
+        Log.i(TAG, "MainActivity.showFetchMetrics():\n" + dump);
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
+        builder.setTitle(R.string.dialog_fetch_metrics_title);
+        builder.setMessage(dump);
+        builder.setPositiveButton(getString(android.R.string.ok), null);
+        builder.setNeutralButton(R.string.dialog_fetch_metrics_reset, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                restDataLayer.getMetrics().reset();
+            }
+        });
+        builder.show();
+    }
+
+    /**
+     * Saves the stories displayed in the snapshot on a worker thread, they are displayed at the
+     * next launch until the list is refreshed.
+     * @param adapter the adapter displaying the list
+     */
+    private void saveSnapshot(NewsListArrayAdapter adapter) {
+        final SingleNews[] stories = new SingleNews[adapter.getCount()];
+        for (int i = 0; i < stories.length; i++) {
+            stories[i] = adapter.getItem(i);
+        }
+
+        RESTDataLayer.getInstance().getScheduler().execute(
+                new FetchHandle(FetchScheduler.Priority.BACKGROUND), new Runnable() {
+                    @Override
+                    public void run() {
+                        mSnapshot.write(stories);
+                    }
+                }, null);
+    }
+
+    /**
+     * Appends the stories at the end of the list and refresh the ListView once.
+     * @param adapter the adapter displaying the list
+     * @param news the stories to append
+     */
+    private void appendStories(NewsListArrayAdapter adapter, SingleNews[] news) {
+        adapter.setNotifyOnChange(false);
+        for (SingleNews n : news) {
+            adapter.add(n);
+        }
+        adapter.notifyDataSetChanged();
+    }
+
     /**
      * Create and assign the OnItemClickListener for the ListView.
      */
@@ -178,6 +630,14 @@ public class MainActivity extends AppCompatActivity {
         Log.d(TAG, "MainActivity.configureListViewItemClick() completed");
     }
 
+    /**
+     * Assign the OnScrollListener telling the prefetcher which stories are around the viewport.
+     */
+    private void configureListViewScroll() {
+        mListView.setOnScrollListener(new ListViewScrollListener());
+        Log.d(TAG, "MainActivity.configureListViewScroll() completed");
+    }
+
     /**
      * Retrieve the SwipeRefreshLayout and assign a listener to determine when the reload is necessary
      */
@@ -206,6 +666,37 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Loads the next page of the Top Stories when the adapter needs it.
+     */
+    protected class NextPageLoader implements NewsListArrayAdapter.PageLoader {
+
+        /**
+         * the adapter receiving the pages
+         */
+        private NewsListArrayAdapter mAdapter;
+
+        /**
+         * cancels the requests of the list
+         */
+        private FetchHandle mHandle;
+
+        public NextPageLoader(NewsListArrayAdapter adapter, FetchHandle handle) {
+            mAdapter = adapter;
+            mHandle = handle;
+        }
+
+        @Override
+        public void loadNextPage() {
+            if (mHandle.isCancelled()) {
+                return;
+            }
+            int offset = mNextOffset;
+            mNextOffset += PAGE_SIZE;
+            createPageTask(mAdapter, mHandle).execute(offset);
+        }
+    }
+
     /**
      * Implements the OnRefresh event related to the Swipe Refresh Container Layout. The refresh
      * action launched the Loading Task.
@@ -214,7 +705,85 @@ public class MainActivity extends AppCompatActivity {
 
         @Override
         public void onRefresh() {
-            createLoadingTask().execute();
+            mPrefetcher.reset();
+
+            // refreshing the list displayed if there is one, loading it otherwise
+            if (mListView.getAdapter() instanceof NewsListArrayAdapter && mListView.getAdapter().getCount() > 0) {
+                createRefreshTask((NewsListArrayAdapter)mListView.getAdapter()).execute();
+            }
+            else {
+                createLoadingTask().execute();
+            }
+        }
+    }
+
+    /**
+     * Sends the stories visible and the next few ones to the prefetcher when the viewport changes.
+     */
+    protected class ListViewScrollListener implements AbsListView.OnScrollListener {
+
+        /**
+         * the window last sent, the prefetcher is updated only when it changes
+         */
+        private int mFirst = -1;
+        private int mLast = -1;
+        private ArrayAdapter<?> mAdapter;
+
+        @Override
+        public void onScrollStateChanged(AbsListView view, int scrollState) {
+        }
+
+        @Override
+        public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+            if (!(view.getAdapter() instanceof NewsListArrayAdapter)) {
+                return;
+            }
+            NewsListArrayAdapter adapter = (NewsListArrayAdapter)view.getAdapter();
+
+            int last = Math.min(firstVisibleItem + visibleItemCount + COMMENTS_PREFETCH_ROWS, adapter.getCount());
+            if (firstVisibleItem == mFirst && last == mLast && adapter == mAdapter) {
+                return;
+            }
+            mFirst = firstVisibleItem;
+            mLast = last;
+            mAdapter = adapter;
+
+            ArrayList<SingleNews> window = new ArrayList<>(last - firstVisibleItem);
+            for (int i = firstVisibleItem; i < last; i++) {
+                window.add(adapter.getItem(i));
+            }
+            mPrefetcher.setWindow(window);
+        }
+    }
+
+    /**
+     * Allows the prefetching on an unmetered network when the battery is not low.
+     */
+    protected static class DevicePrefetchPolicy implements CommentPrefetcher.Policy {
+
+        private final Context mContext;
+
+        public DevicePrefetchPolicy(Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public boolean isPrefetchAllowed() {
+            ConnectivityManager cm = (ConnectivityManager)mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+            NetworkInfo network = cm.getActiveNetworkInfo();
+            if (network == null || !network.isConnected() || ConnectivityManagerCompat.isActiveNetworkMetered(cm)) {
+                return false;
+            }
+
+            // the battery status is a sticky broadcast, no receiver is needed to read it
+            Intent battery = mContext.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+            if (battery == null) {
+                return true;
+            }
+            boolean charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            return charging || level < 0 || scale <= 0 || level * 100 / scale >= PREFETCH_MIN_BATTERY;
         }
     }
 }
\ No newline at end of file
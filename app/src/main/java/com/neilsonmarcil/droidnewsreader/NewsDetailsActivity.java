@@ -2,6 +2,8 @@ package com.neilsonmarcil.droidnewsreader;
 
 import android.app.ProgressDialog;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.support.v7.widget.Toolbar;
@@ -10,12 +12,17 @@ import android.widget.ArrayAdapter;
 import android.widget.ListView;
 import android.widget.TextView;
 
+import com.neilsonmarcil.droidnewsreader.adapter.CommentHtmlCache;
 import com.neilsonmarcil.droidnewsreader.adapter.CommentsListArrayAdapter;
 import com.neilsonmarcil.droidnewsreader.data.DataLayer;
+import com.neilsonmarcil.droidnewsreader.data.FetchHandle;
+import com.neilsonmarcil.droidnewsreader.data.FetchScheduler;
 import com.neilsonmarcil.droidnewsreader.data.RESTDataLayer;
 import com.neilsonmarcil.droidnewsreader.dto.NewsComment;
 import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
 
+import java.util.ArrayList;
+
 /**
  * Display the comments and reply for a specific story
  */
@@ -28,10 +35,26 @@ public class NewsDetailsActivity extends AppCompatActivity {
      */
     public static final String REFRESH_ON_START_FLAG = "refreshOnStart";
 
+    /**
+     * represents the delay used to group the comments received in a single update of the list,
+     * about one frame
+     */
+    private static final long FRAME_DELAY = 16;
+
     /**
      * the task that use the DataLayer to retrieve the comments from a story
      */
-    private AsyncTask<Integer, Void, SingleNews> mLoadingTask;
+    private AsyncTask<Integer, SingleNews, SingleNews> mLoadingTask;
+
+    /**
+     * cancels the requests of the loading task when the screen is left
+     */
+    private FetchHandle mLoadingHandle;
+
+    /**
+     * the comments displayed, they are added while they are downloaded
+     */
+    private CommentsListArrayAdapter mCommentsAdapter;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -50,28 +73,64 @@ public class NewsDetailsActivity extends AppCompatActivity {
         super.onResume();
 
         if (getIntent().getBooleanExtra(REFRESH_ON_START_FLAG, true)) {
-            // creating the loading task
-            mLoadingTask = createLoadingTask();
-
             // getting the news id
             int id = getIntent().getIntExtra("news_id", -1);
             if (id != -1) {
+
+                // the story is usually in memory from the list, the header is displayed right away
+                SingleNews cached = RESTDataLayer.getInstance().getCachedNews(id);
+                if (cached != null) {
+                    setHeaderContent(cached);
+                }
+
+                // the comments are appended to an empty list while they are downloaded
+                mCommentsAdapter = new CommentsListArrayAdapter(NewsDetailsActivity.this,
+                        R.layout.comments_list_single_row, new ArrayList<NewsComment>());
+                ListView listView = (ListView)findViewById(R.id.news_details_comments_listview);
+                listView.setAdapter(mCommentsAdapter);
+
+                // creating the loading task
+                mLoadingHandle = new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+                mLoadingTask = createLoadingTask(cached == null, mLoadingHandle);
                 mLoadingTask.execute(id);
             }
         }
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+
+        // the comments are loaded again by onResume(), the requests not started are dropped
+        if (mLoadingHandle != null) {
+            mLoadingHandle.cancel();
+            mLoadingTask.cancel(false);
+            mLoadingHandle = null;
+            mLoadingTask = null;
+        }
+    }
+
     /**
-     * creates the task to retrieve the comments
+     * creates the task to retrieve the story and its comments. The comments are displayed as
+     * they arrive, grouped by a CommentsBatcher.
+     * @param showDialog true to show a progress dialog until the story is retrieved, when it was
+     *                   not in memory
+     * @param handle cancels the requests
      * @return an AsyncTask ready to be used
      */
-    private AsyncTask<Integer, Void, SingleNews> createLoadingTask() {
-        return new AsyncTask<Integer, Void, SingleNews>() {
+    private AsyncTask<Integer, SingleNews, SingleNews> createLoadingTask(final boolean showDialog,
+                                                                         final FetchHandle handle) {
+        return new AsyncTask<Integer, SingleNews, SingleNews>() {
 
             private ProgressDialog mDialog;
 
+            private final CommentsBatcher mBatcher = new CommentsBatcher(mCommentsAdapter);
+
             @Override
             protected void onPreExecute() {
+                if (!showDialog) {
+                    return;
+                }
                 mDialog = new ProgressDialog(NewsDetailsActivity.this);
                 mDialog.setTitle(R.string.dialog_loading_singlestory_title);
                 mDialog.setMessage(getString(R.string.dialog_loading_singlestory_message));
@@ -86,20 +145,41 @@ public class NewsDetailsActivity extends AppCompatActivity {
                 int index = params[0];
 
                 SingleNews theNews = dataLayer.getSpecificNews(index);
-                theNews.NewsComments = dataLayer.getCommentsFromNews(theNews);
+                publishProgress(theNews);
+
+                if (!handle.isCancelled()) {
+                    dataLayer.getCommentsFromNews(theNews, mBatcher, handle);
+                }
 
                 return theNews;
             }
 
             @Override
-            protected void onPostExecute(SingleNews n) {
+            protected void onCancelled() {
+                mBatcher.cancel();
+                if (mDialog != null && mDialog.isShowing()) {
+                    mDialog.dismiss();
+                }
+            }
 
-                setDetailsContent(n);
+            @Override
+            protected void onProgressUpdate(SingleNews... values) {
+                // the story is available, the comments are coming
+                setHeaderContent(values[0]);
 
                 if (mDialog != null && mDialog.isShowing()) {
                     mDialog.dismiss();
                 }
             }
+
+            @Override
+            protected void onPostExecute(SingleNews n) {
+
+                // the last comments received are displayed now, the adapter keeps them: the story
+                // is shared with the cache and the other threads, it is not changed
+                mBatcher.run();
+                setCommentsCount(mCommentsAdapter.getCount());
+            }
         };
     }
 
@@ -109,24 +189,145 @@ public class NewsDetailsActivity extends AppCompatActivity {
      */
     public void setDetailsContent(SingleNews n) {
 
+        setHeaderContent(n);
+        setCommentsCount(n.NewsComments.length);
+
+        ListView listView = (ListView)findViewById(R.id.news_details_comments_listview);
+        ArrayAdapter<NewsComment> comments = new CommentsListArrayAdapter(NewsDetailsActivity.this,
+                R.layout.comments_list_single_row,
+                n.NewsComments);
+
+        listView.setAdapter(comments);
+    }
+
+    /**
+     * fills the header of the story, it does not need the comments
+     * @param n the SingleNews
+     */
+    private void setHeaderContent(SingleNews n) {
         TextView title = (TextView)findViewById(R.id.news_details_title);
         title.setText(n.Title);
+    }
 
+    /**
+     * displays the number of comments
+     * @param count the number of comments
+     */
+    private void setCommentsCount(int count) {
         TextView nbComments = (TextView)findViewById(R.id.news_details_nb_comments);
 
         // bug fix with the getQuantityString. Will check if it's zero and get the string directly
         // otherwise will use the getquantityString method
         String nbCommentsStr = getString(R.string.news_list_header_no_comment);
-        if (n.NewsComments.length > 0) {
-            nbCommentsStr = getResources().getQuantityString(R.plurals.comments, n.NewsComments.length, n.NewsComments.length);
+        if (count > 0) {
+            nbCommentsStr = getResources().getQuantityString(R.plurals.comments, count, count);
         }
         nbComments.setText(nbCommentsStr);
+    }
 
-        ListView listView = (ListView)findViewById(R.id.news_details_comments_listview);
-        ArrayAdapter<NewsComment> comments = new CommentsListArrayAdapter(NewsDetailsActivity.this,
-                R.layout.comments_list_single_row,
-                n.NewsComments);
+    /**
+     * Receives the comments on the worker thread and applies them to the adapter on the UI thread.
+     * Everything received within a frame is applied with a single notifyDataSetChanged() so a big
+     * thread does not relayout the list for every comment. The HTML of the bodies displayed is
+     * rendered on the worker thread before the comments are handed to the UI thread.
+     */
+    private class CommentsBatcher implements DataLayer.CommentsListener, Runnable {
 
-        listView.setAdapter(comments);
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        private final CommentsListArrayAdapter mAdapter;
+
+        private final CommentHtmlCache mHtml = CommentHtmlCache.getInstance();
+
+        /**
+         * the comments received and not added yet, guarded by this
+         */
+        private final ArrayList<NewsComment> mPending = new ArrayList<>();
+
+        /**
+         * true when replies were linked to comments already in the adapter, guarded by this
+         */
+        private boolean mRepliesChanged;
+
+        /**
+         * true when an update is posted, guarded by this
+         */
+        private boolean mScheduled;
+
+        CommentsBatcher(CommentsListArrayAdapter adapter) {
+            mAdapter = adapter;
+        }
+
+        @Override
+        public void onComment(int position, NewsComment comment) {
+            mHtml.render(comment);
+            synchronized (this) {
+                mPending.add(comment);
+                schedule();
+            }
+        }
+
+        @Override
+        public void onReplies(NewsComment comment) {
+            // only the first reply is displayed with the comment
+            mHtml.render(comment.Replies[0]);
+            synchronized (this) {
+                mRepliesChanged = true;
+                schedule();
+            }
+        }
+
+        @Override
+        public void onComplete(int count) {
+            // the task applies the last update in onPostExecute
+        }
+
+        /**
+         * applies the pending changes, called on the UI thread
+         */
+        @Override
+        public void run() {
+            NewsComment[] added;
+            boolean changed;
+            synchronized (this) {
+                added = mPending.toArray(new NewsComment[mPending.size()]);
+                changed = mRepliesChanged || added.length > 0;
+                mPending.clear();
+                mRepliesChanged = false;
+                mScheduled = false;
+            }
+            mHandler.removeCallbacks(this);
+
+            if (changed) {
+                mAdapter.setNotifyOnChange(false);
+                for (NewsComment comment : added) {
+                    mAdapter.add(comment);
+                }
+                mAdapter.notifyDataSetChanged();
+                setCommentsCount(mAdapter.getCount());
+            }
+        }
+
+        /**
+         * drops the pending changes, called on the UI thread
+         */
+        void cancel() {
+            synchronized (this) {
+                mPending.clear();
+                mRepliesChanged = false;
+                mScheduled = false;
+            }
+            mHandler.removeCallbacks(this);
+        }
+
+        /**
+         * posts an update for the next frame if there is none, the lock must be held
+         */
+        private void schedule() {
+            if (!mScheduled) {
+                mScheduled = true;
+                mHandler.postDelayed(this, FRAME_DELAY);
+            }
+        }
     }
 }
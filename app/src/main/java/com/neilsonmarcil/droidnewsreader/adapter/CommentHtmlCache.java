@@ -0,0 +1,236 @@
+package com.neilsonmarcil.droidnewsreader.adapter;
+
+import android.text.Html;
+
+import com.neilsonmarcil.droidnewsreader.data.ItemCache;
+import com.neilsonmarcil.droidnewsreader.dto.NewsComment;
+
+/**
+ * Keeps the body of the comments converted from HTML to a Spanned, by comment id. The comments
+ * are rendered with render(...) on the worker thread that loads them, so binding a row on the UI
+ * thread is a lookup with get(...) instead of parsing the HTML again on every bind. The UI thread
+ * never renders: a body missing from the cache is displayed as plain text until a loading thread
+ * renders it again.
+ * The cache is bounded by an approximate size in bytes, the least recently used bodies are
+ * evicted. It is thread-safe.
+ */
+public class CommentHtmlCache {
+
+    private static final String TAG = "droidnewsreader";
+
+    /**
+     * Represents the share of the max heap size the rendered bodies can use in memory
+     */
+    private static final int MEMORY_DIVIDER = 32;
+
+    /**
+     * Represents the approximate memory used by a rendered body, excluding its characters. The
+     * spans of the links and paragraphs are included.
+     */
+    private static final int RENDERED_OVERHEAD = 256;
+
+    /**
+     * Represents the length of the longest entity decoded by toPlainText(String), with its '&'
+     */
+    private static final int MAX_ENTITY_LENGTH = 8;
+
+    /**
+     * Holds the unique instance, the class loader creates it once on the first call to
+     * getInstance() whatever the calling thread.
+     */
+    private static class InstanceHolder {
+        static final CommentHtmlCache INSTANCE = new CommentHtmlCache(Runtime.getRuntime().maxMemory() / MEMORY_DIVIDER);
+    }
+
+    /**
+     * the rendered bodies by comment id
+     */
+    private final ItemCache<Rendered> mRendered;
+
+    /**
+     * Returns the unique CommentHtmlCache instance, can be called from any thread.
+     * @return the CommentHtmlCache
+     */
+    public static CommentHtmlCache getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Creates an empty cache
+     * @param maxSize the budget in bytes
+     */
+    public CommentHtmlCache(long maxSize) {
+        mRendered = new ItemCache<>(maxSize, new ItemCache.Sizer<Rendered>() {
+            @Override
+            public int sizeOf(Rendered rendered) {
+                // the source and the rendered characters
+                return RENDERED_OVERHEAD + 2 * rendered.body.length() + 2 * rendered.text.length();
+            }
+        });
+    }
+
+    /**
+     * Renders the body of a comment if it is not in the cache yet, meant to be called on a worker
+     * thread when the comment is loaded.
+     * @param comment the comment
+     * @return the rendered body
+     */
+    public CharSequence render(NewsComment comment) {
+        Rendered rendered = mRendered.get(comment.Id);
+        String body = bodyOf(comment);
+        if (rendered != null && rendered.isFor(body)) {
+            return rendered.text;
+        }
+
+        rendered = new Rendered(body, fromHtml(body));
+        mRendered.put(comment.Id, rendered);
+        return rendered.text;
+    }
+
+    /**
+     * Returns the rendered body of a comment, meant to be called on the UI thread. When it is not
+     * in the cache, because it was evicted or the comment did not go through render(...), the
+     * body is returned as plain text instead of being rendered on the calling thread.
+     * @param comment the comment
+     * @return the rendered body, or the body as plain text
+     */
+    public CharSequence get(NewsComment comment) {
+        Rendered rendered = mRendered.get(comment.Id);
+        String body = bodyOf(comment);
+        if (rendered != null && rendered.isFor(body)) {
+            return rendered.text;
+        }
+        return toPlainText(body);
+    }
+
+    /**
+     * Releases memory according to the level received by ComponentCallbacks2.onTrimMemory(int)
+     * @param level the level received by onTrimMemory(int)
+     */
+    public void onTrimMemory(int level) {
+        mRendered.onTrimMemory(level);
+    }
+
+    /**
+     * @return the number of bodies in the cache
+     */
+    public int getCount() {
+        return mRendered.getCount();
+    }
+
+    /**
+     * Converts the HTML of a body to a styled text, called by render(...) on a worker thread
+     * @param html the body of a comment
+     * @return the rendered body
+     */
+    protected CharSequence fromHtml(String html) {
+        return Html.fromHtml(html);
+    }
+
+    /**
+     * Converts the HTML of a body to plain text in a single pass: the tags are dropped, a
+     * paragraph starts on a new line and the entities are decoded. It is cheap enough for the UI
+     * thread, the links and the styles are lost until the body is rendered.
+     * @param html the body of a comment
+     * @return the text of the body
+     */
+    public static String toPlainText(String html) {
+        StringBuilder text = new StringBuilder(html.length());
+        int i = 0;
+        while (i < html.length()) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                int end = html.indexOf('>', i);
+                if (end < 0) {
+                    break;
+                }
+                if (isParagraph(html, i + 1, end) && text.length() > 0) {
+                    text.append("\n\n");
+                }
+                i = end + 1;
+            }
+            else if (c == '&') {
+                int end = html.indexOf(';', i);
+                int decoded = end > 0 && end - i <= MAX_ENTITY_LENGTH ? decodeEntity(html, i + 1, end) : -1;
+                if (decoded >= 0) {
+                    text.append((char)decoded);
+                    i = end + 1;
+                }
+                else {
+                    text.append(c);
+                    i++;
+                }
+            }
+            else {
+                text.append(c);
+                i++;
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return true if the tag between start and end opens a paragraph
+     */
+    private static boolean isParagraph(String html, int start, int end) {
+        return end > start && Character.toLowerCase(html.charAt(start)) == 'p' &&
+               (end == start + 1 || html.charAt(start + 1) == ' ');
+    }
+
+    /**
+     * @return the character of the entity between start and end, -1 if it is not known
+     */
+    private static int decodeEntity(String html, int start, int end) {
+        String name = html.substring(start, end);
+        if (name.startsWith("#")) {
+            try {
+                boolean hex = name.length() > 1 && (name.charAt(1) == 'x' || name.charAt(1) == 'X');
+                int code = hex ? Integer.parseInt(name.substring(2), 16) : Integer.parseInt(name.substring(1));
+                return code <= Character.MAX_VALUE ? code : -1;
+            }
+            catch (NumberFormatException ex) {
+                return -1;
+            }
+        }
+        switch (name) {
+            case "amp":
+                return '&';
+            case "lt":
+                return '<';
+            case "gt":
+                return '>';
+            case "quot":
+                return '"';
+            case "apos":
+                return '\'';
+            case "nbsp":
+                return ' ';
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * the body of a deleted comment is missing
+     */
+    private static String bodyOf(NewsComment comment) {
+        return comment.Body != null ? comment.Body : "";
+    }
+
+    /**
+     * A rendered body with its source, a comment edited since it was rendered is rendered again
+     */
+    private static class Rendered {
+        final String body;
+        final CharSequence text;
+
+        Rendered(String body, CharSequence text) {
+            this.body = body;
+            this.text = text;
+        }
+
+        boolean isFor(String source) {
+            return body == source || body.equals(source);
+        }
+    }
+}
@@ -2,7 +2,6 @@ package com.neilsonmarcil.droidnewsreader.adapter;
 
 import android.app.Activity;
 import android.content.Context;
-import android.text.Html;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -12,8 +11,13 @@ import android.widget.TextView;
 
 import com.neilsonmarcil.droidnewsreader.R;
 import com.neilsonmarcil.droidnewsreader.dto.NewsComment;
+import com.neilsonmarcil.droidnewsreader.util.RelativeTimeCache;
 import com.neilsonmarcil.droidnewsreader.util.TimeFormatUtil;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 
 /**
  * Implements an ArrayAdapter to display a comment from a story and the latest reply associated to it
@@ -33,9 +37,14 @@ public class CommentsListArrayAdapter extends ArrayAdapter<NewsComment> {
     private int mResource;
 
     /**
-     * the list of Comments, including the latest comment
+     * renders the dates of the comments
+     */
+    private final RelativeTimeCache mTimes = new RelativeTimeCache();
+
+    /**
+     * the bodies already converted from HTML, usually while the comments were loaded
      */
-    private NewsComment[] mComments;
+    private final CommentHtmlCache mHtml = CommentHtmlCache.getInstance();
 
     /**
      * default constructor
@@ -44,19 +53,30 @@ public class CommentsListArrayAdapter extends ArrayAdapter<NewsComment> {
      * @param comments the data to display
      */
     public CommentsListArrayAdapter(Context c, int ress, NewsComment[] comments) {
+        this(c, ress, new ArrayList<>(Arrays.asList(comments)));
+    }
+
+    /**
+     * Constructor for a list that can grow, comments can be appended with add(...) while they
+     * are downloaded.
+     * @param c the Context
+     * @param ress the Layout resource
+     * @param comments the data to display, the adapter keeps the reference
+     */
+    public CommentsListArrayAdapter(Context c, int ress, List<NewsComment> comments) {
         super(c, ress, comments);
         mContext = c;
         mResource = ress;
-        mComments = comments;
     }
 
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
 
         View row = convertView;
-        CommentHolder holder = new CommentHolder();
+        CommentHolder holder;
 
         if (row == null) {
+            holder = new CommentHolder();
 
             LayoutInflater inflater = ((Activity)mContext).getLayoutInflater();
             row = inflater.inflate(mResource, null);
@@ -79,20 +99,22 @@ public class CommentsListArrayAdapter extends ArrayAdapter<NewsComment> {
         }
 
         // set the properties here
-        NewsComment comment = mComments[position];
+        NewsComment comment = getItem(position);
         holder.author.setText(comment.Author);
-        holder.message.setText(Html.fromHtml(comment.Body));
-        holder.date.setText(TimeFormatUtil.formatTimespanAgoFirstUnit(System.currentTimeMillis() -
-                            (comment.Date * TimeFormatUtil.UNIX_TO_JVM)));
+        holder.message.setText(mHtml.get(comment));
+        holder.date.setText(mTimes.format(comment.Date * TimeFormatUtil.UNIX_TO_JVM));
 
         // checking if there is a reply to display
         if (comment.Replies.length > 0) {
             holder.replyLayout.setVisibility(View.VISIBLE);
-            holder.replyMessage.setText(Html.fromHtml(comment.Replies[0].Body));
+            holder.replyMessage.setText(mHtml.get(comment.Replies[0]));
             holder.replyAuthor.setText(comment.Replies[0].Author);
 
-            holder.replyDate.setText(TimeFormatUtil.formatTimespanAgoFirstUnit(System.currentTimeMillis() -
-                                     (comment.Replies[0].Date) * TimeFormatUtil.UNIX_TO_JVM));
+            holder.replyDate.setText(mTimes.format(comment.Replies[0].Date * TimeFormatUtil.UNIX_TO_JVM));
+        }
+        else {
+            // the row may be recycled from a comment with a reply, or the reply is not loaded yet
+            holder.replyLayout.setVisibility(View.GONE);
         }
 
         return row;
@@ -5,16 +5,23 @@ import android.app.AlertDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
+import android.text.TextUtils;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.ListView;
 import android.widget.TextView;
 
 import com.neilsonmarcil.droidnewsreader.R;
 import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+import com.neilsonmarcil.droidnewsreader.util.RelativeTimeCache;
 import com.neilsonmarcil.droidnewsreader.util.TimeFormatUtil;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Encapsulates the logic to create a ArrayAdapter to display a list of SingleNews.
  */
@@ -33,9 +40,29 @@ public class NewsListArrayAdapter extends ArrayAdapter<SingleNews> {
     private int mResourceId;
 
     /**
-     * the object to display
+     * renders the dates of the rows
+     */
+    private final RelativeTimeCache mTimes = new RelativeTimeCache();
+
+    /**
+     * the stories displayed, the same list as the one of the ArrayAdapter
+     */
+    private List<SingleNews> mStories;
+
+    /**
+     * loads the next page when the lazy loading mode is enabled, null otherwise
+     */
+    private PageLoader mPageLoader;
+
+    /**
+     * the number of rows left before the end of the list when the next page is requested
+     */
+    private int mPrefetchMargin;
+
+    /**
+     * true while a page requested to the PageLoader is not loaded yet
      */
-    private SingleNews[] mNewsObjects;
+    private boolean mPageLoading;
 
     /**
      * Default constructor
@@ -44,15 +71,117 @@ public class NewsListArrayAdapter extends ArrayAdapter<SingleNews> {
      * @param objects the list of SingleNews to be displayed
      */
     public NewsListArrayAdapter(Context context, int resource, SingleNews[] objects) {
+        this(context, resource, new ArrayList<>(Arrays.asList(objects)));
+    }
+
+    /**
+     * Constructor for a list that can grow, stories can be appended with add(...) while they
+     * are downloaded.
+     * @param context the Context from the calling Activity
+     * @param resource the Resource Layout representing a single item
+     * @param objects the list of SingleNews to be displayed, the adapter keeps the reference
+     */
+    public NewsListArrayAdapter(Context context, int resource, List<SingleNews> objects) {
         super(context, resource, objects);
         mContext = context;
         mResourceId = resource;
-        mNewsObjects = objects;
+        mStories = objects;
+    }
+
+    /**
+     * Replaces the stories displayed with an updated list. The changes are computed by Id: when
+     * only the fields of the stories changed, the visible rows showing a changed story are bound
+     * again and nothing else. When stories were inserted, removed or moved, the list is
+     * notified once, the rows still showing the same story are not bound again and the story at
+     * the top of the ListView stays at the same place.
+     * @param stories the updated stories, in display order
+     * @param listView the ListView displaying this adapter
+     * @return the changes applied
+     */
+    public StoryListDiff update(List<SingleNews> stories, ListView listView) {
+
+        StoryListDiff diff = StoryListDiff.compute(mStories, stories);
+
+        if (!diff.isStructural()) {
+            // same stories in the same order, the instances can be new
+            for (int i = 0; i < stories.size(); i++) {
+                mStories.set(i, stories.get(i));
+            }
+
+            // binding the visible rows, the ones that did not change are skipped by getView
+            int first = listView.getFirstVisiblePosition() - listView.getHeaderViewsCount();
+            for (int i = 0; i < listView.getChildCount(); i++) {
+                int position = first + i;
+                if (position >= 0 && position < getCount()) {
+                    getView(position, listView.getChildAt(i), listView);
+                }
+            }
+            return diff;
+        }
+
+        // remembering the story at the top to keep the user's place
+        int first = listView.getFirstVisiblePosition();
+        View top = listView.getChildAt(0);
+        int topOffset = top != null ? top.getTop() : 0;
+        int anchorId = first < getCount() ? getItem(first).Id : -1;
+
+        setNotifyOnChange(false);
+        mStories.clear();
+        mStories.addAll(stories);
+        notifyDataSetChanged();
+
+        for (int i = 0; i < mStories.size(); i++) {
+            if (mStories.get(i).Id == anchorId) {
+                listView.setSelectionFromTop(i, topOffset);
+                break;
+            }
+        }
+        return diff;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).Id;
+    }
+
+    /**
+     * Enables the lazy loading mode, the next page is requested when a row close to the end of
+     * the list is displayed. Only one page is requested at a time.
+     * @param loader the PageLoader, null to disable the lazy loading mode
+     * @param prefetchMargin the number of rows before the end of the list that triggers the
+     *                       next page
+     */
+    public void setPageLoader(PageLoader loader, int prefetchMargin) {
+        mPageLoader = loader;
+        mPrefetchMargin = prefetchMargin;
+        mPageLoading = false;
+    }
+
+    /**
+     * Tells the adapter the page requested is loaded
+     * @param hasMore false if there are no more pages, the lazy loading mode is disabled
+     */
+    public void onPageLoaded(boolean hasMore) {
+        mPageLoading = false;
+        if (!hasMore) {
+            mPageLoader = null;
+        }
     }
 
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
 
+        // the end of the list is getting close, requesting the next page
+        if (mPageLoader != null && !mPageLoading && position >= getCount() - 1 - mPrefetchMargin) {
+            mPageLoading = true;
+            mPageLoader.loadNextPage();
+        }
+
         SingleNewsHolder holder;
         View row = convertView;
 
@@ -73,14 +202,29 @@ public class NewsListArrayAdapter extends ArrayAdapter<SingleNews> {
             holder = (SingleNewsHolder)row.getTag();
         }
 
-        SingleNews news = mNewsObjects[position];
+        SingleNews news = getItem(position);
+
+        // the row already shows this story as it is, nothing to bind. A revalidated story is a
+        // new instance, the fields displayed are compared
+        long now = mTimes.now();
+        if (isBound(holder, news) && now < holder.dateChange) {
+            return row;
+        }
+        holder.boundId = news.Id;
+        holder.boundScore = news.Score;
+        holder.boundTitle = news.Title;
+        holder.boundAuthor = news.Author;
+        holder.boundUrl = news.Url;
+        holder.boundDate = news.Date;
+
         holder.title.setText(news.Title);
         holder.author.setText(news.Author);
         holder.score.setText(String.valueOf(news.Score));
 
         // set the date
-        holder.date.setText(TimeFormatUtil.formatTimespanAgoFirstUnit(
-                System.currentTimeMillis() - (news.Date * TimeFormatUtil.UNIX_TO_JVM)));
+        long date = news.Date * TimeFormatUtil.UNIX_TO_JVM;
+        holder.date.setText(mTimes.format(date, now));
+        holder.dateChange = mTimes.getNextChange(date, now);
 
         // set the onclick listener here
         holder.url.setTag(news.Url);
@@ -95,6 +239,15 @@ public class NewsListArrayAdapter extends ArrayAdapter<SingleNews> {
         return row;
     }
 
+    /**
+     * @return true if the row of the holder displays the fields of the story as they are
+     */
+    private static boolean isBound(SingleNewsHolder holder, SingleNews news) {
+        return holder.boundId == news.Id && holder.boundScore == news.Score &&
+               holder.boundDate == news.Date && TextUtils.equals(holder.boundTitle, news.Title) &&
+               TextUtils.equals(holder.boundAuthor, news.Author) && TextUtils.equals(holder.boundUrl, news.Url);
+    }
+
     /**
      * Create a new instance of View.OnClickListener to be used on the Visit website button
      * @return a instance of View.OnClickListener
@@ -131,6 +284,17 @@ public class NewsListArrayAdapter extends ArrayAdapter<SingleNews> {
         };
     }
 
+    /**
+     * Loads the next page of stories for the lazy loading mode. The stories are appended with
+     * add(...) and onPageLoaded(boolean) must be called when it is done.
+     */
+    public interface PageLoader {
+        /**
+         * called on the UI thread when the next page is needed
+         */
+        void loadNextPage();
+    }
+
     /**
      * Simple holder to make it easier assigning data to the TextView
      */
@@ -140,5 +304,16 @@ public class NewsListArrayAdapter extends ArrayAdapter<SingleNews> {
         public TextView author;
         public TextView score;
         public Button url;
+
+        /**
+         * the story and fields of the last bind, and the time when the date displayed changes
+         */
+        public int boundId;
+        public int boundScore;
+        public String boundTitle;
+        public String boundAuthor;
+        public String boundUrl;
+        public long boundDate;
+        public long dateChange;
     }
 }
@@ -0,0 +1,116 @@
+package com.neilsonmarcil.droidnewsreader.adapter;
+
+import com.neilsonmarcil.droidnewsreader.data.IntObjectMap;
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+
+import java.util.List;
+
+/**
+ * The changes between two lists of stories, keyed by SingleNews.Id: the stories inserted, the
+ * stories removed and the stories kept that moved. The moves are the smallest number of stories
+ * to take out and put back to go from the old order to the new one, the kept stories that form
+ * the longest increasing run of old positions stay where they are.
+ * The changes of the fields of a story are not part of the diff, the adapter detects them row
+ * by row when it binds.
+ */
+public class StoryListDiff {
+
+    private final int mInserted;
+    private final int mRemoved;
+    private final int mMoved;
+
+    private StoryListDiff(int inserted, int removed, int moved) {
+        mInserted = inserted;
+        mRemoved = removed;
+        mMoved = moved;
+    }
+
+    /**
+     * Computes the changes from a list to another
+     * @param oldList the list displayed
+     * @param newList the list to display
+     * @return the changes
+     */
+    public static StoryListDiff compute(List<SingleNews> oldList, List<SingleNews> newList) {
+
+        IntObjectMap<Integer> oldPositions = new IntObjectMap<>(oldList.size());
+        for (int i = 0; i < oldList.size(); i++) {
+            oldPositions.put(oldList.get(i).Id, i);
+        }
+
+        // the old position of the kept stories, in the new order
+        int[] kept = new int[newList.size()];
+        int keptCount = 0;
+        for (SingleNews news : newList) {
+            Integer oldPosition = oldPositions.get(news.Id);
+            if (oldPosition != null) {
+                kept[keptCount++] = oldPosition;
+            }
+        }
+
+        int inserted = newList.size() - keptCount;
+        int removed = oldList.size() - keptCount;
+        int moved = keptCount - longestIncreasingRun(kept, keptCount);
+        return new StoryListDiff(inserted, removed, moved);
+    }
+
+    /**
+     * @return the number of stories that were not in the old list
+     */
+    public int getInserted() {
+        return mInserted;
+    }
+
+    /**
+     * @return the number of stories that are not in the new list
+     */
+    public int getRemoved() {
+        return mRemoved;
+    }
+
+    /**
+     * @return the number of stories kept that changed order
+     */
+    public int getMoved() {
+        return mMoved;
+    }
+
+    /**
+     * @return true if the stories or their order changed, false if only the fields can differ
+     */
+    public boolean isStructural() {
+        return mInserted > 0 || mRemoved > 0 || mMoved > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "StoryListDiff[inserted=" + mInserted + " removed=" + mRemoved + " moved=" + mMoved + "]";
+    }
+
+    /**
+     * @return the length of the longest strictly increasing subsequence of the first count values
+     */
+    private static int longestIncreasingRun(int[] values, int count) {
+        // tails[k] is the smallest last value of an increasing subsequence of length k + 1
+        int[] tails = new int[count];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (tails[middle] < values[i]) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+            tails[low] = values[i];
+            if (low == length) {
+                length++;
+            }
+        }
+        return length;
+    }
+}
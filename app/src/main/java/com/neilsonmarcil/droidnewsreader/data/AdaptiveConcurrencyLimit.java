@@ -0,0 +1,249 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+/**
+ * Finds the number of requests in flight a network can take, AIMD-style like the TCP congestion
+ * window. Every completed request is reported as a sample: the limit grows by one once a full
+ * limit of requests completed at a normal latency, and it is cut by a ratio when a request fails
+ * or the latency climbs well above the best one observed, the sign the link is queuing.
+ * After a cut the samples of the requests already in flight are not counted again, a burst of
+ * failures only cuts the limit once.
+ * The best latency is learned again regularly, moving from wifi to a mobile network changes it.
+ * All the functions are thread-safe.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    /**
+     * Represents the default lowest limit, one slow request cannot hold all the others
+     */
+    public static final int DEFAULT_MIN_LIMIT = 2;
+
+    /**
+     * Represents the default highest limit
+     */
+    public static final int DEFAULT_MAX_LIMIT = 12;
+
+    /**
+     * Represents the share of the limit kept after a congestion
+     */
+    private static final float DECREASE_RATIO = 0.7f;
+
+    /**
+     * Represents how many times the best latency the smoothed latency can reach before it is
+     * taken as a congestion
+     */
+    private static final int LATENCY_TOLERANCE = 2;
+
+    /**
+     * Represents the weight of a sample in the smoothed latency, 1 / 2^LATENCY_SMOOTHING
+     */
+    private static final int LATENCY_SMOOTHING = 3;
+
+    /**
+     * Represents the number of samples after which the best latency is learned again
+     */
+    private static final int BASELINE_WINDOW = 200;
+
+    private final int mMinLimit;
+    private final int mMaxLimit;
+
+    /**
+     * notified of every change of the limit, can be null
+     */
+    private final Listener mListener;
+
+    /**
+     * the fields below are guarded by this
+     */
+    private int mLimit;
+
+    /**
+     * the successful samples since the limit last changed
+     */
+    private int mSuccesses;
+
+    /**
+     * the samples since the limit was last cut, and the limit before that cut: the samples of the
+     * requests that were in flight
+     */
+    private int mSinceDecrease;
+    private int mInFlightAtDecrease;
+
+    /**
+     * the latencies in nanoseconds: smoothed, best of the current window and best of the previous
+     * window, 0 until the first sample
+     */
+    private long mSmoothedLatency;
+    private long mWindowBest;
+    private long mPreviousBest;
+    private int mWindowSamples;
+
+    /**
+     * the counters, to see how the limit behaves
+     */
+    private int mIncreases;
+    private int mDecreases;
+
+    /**
+     * Creates a limit between the default bounds
+     * @param initialLimit the limit until the first samples
+     * @param listener notified of every change of the limit, can be null
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, Listener listener) {
+        this(DEFAULT_MIN_LIMIT, initialLimit, DEFAULT_MAX_LIMIT, listener);
+    }
+
+    /**
+     * Creates a limit
+     * @param minLimit the lowest limit, greater than 0
+     * @param initialLimit the limit until the first samples
+     * @param maxLimit the highest limit
+     * @param listener notified of every change of the limit, can be null
+     */
+    public AdaptiveConcurrencyLimit(int minLimit, int initialLimit, int maxLimit, Listener listener) {
+        if (minLimit <= 0 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("minLimit must be between 1 and maxLimit");
+        }
+        mMinLimit = minLimit;
+        mMaxLimit = maxLimit;
+        mLimit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+        mListener = listener;
+    }
+
+    /**
+     * @return the number of requests allowed in flight
+     */
+    public synchronized int getLimit() {
+        return mLimit;
+    }
+
+    /**
+     * @return the number of times the limit grew
+     */
+    public synchronized int getIncreaseCount() {
+        return mIncreases;
+    }
+
+    /**
+     * @return the number of times the limit was cut
+     */
+    public synchronized int getDecreaseCount() {
+        return mDecreases;
+    }
+
+    /**
+     * @return the smoothed latency of the requests, in nanoseconds
+     */
+    public synchronized long getSmoothedLatency() {
+        return mSmoothedLatency;
+    }
+
+    /**
+     * Reports a request that succeeded
+     * @param latencyNanos the time the request took
+     */
+    public synchronized void onSuccess(long latencyNanos) {
+        mSinceDecrease++;
+        updateLatency(latencyNanos);
+
+        if (mSmoothedLatency > getBestLatency() * LATENCY_TOLERANCE) {
+            decrease();
+            return;
+        }
+
+        if (++mSuccesses >= mLimit && mLimit < mMaxLimit) {
+            setLimit(mLimit + 1);
+            mIncreases++;
+        }
+    }
+
+    /**
+     * Reports a request that failed in a way that can come from an overloaded network or host: a
+     * timeout, a dropped connection, an HTTP 5xx or 429
+     */
+    public synchronized void onDropped() {
+        mSinceDecrease++;
+        decrease();
+    }
+
+    /**
+     * cuts the limit unless it was already cut for the requests in flight, the lock must be held
+     */
+    private void decrease() {
+        if (mSinceDecrease < mInFlightAtDecrease) {
+            return;
+        }
+        mSinceDecrease = 0;
+        mInFlightAtDecrease = mLimit;
+
+        int limit = Math.max(mMinLimit, (int)(mLimit * DECREASE_RATIO));
+        if (limit != mLimit) {
+            mDecreases++;
+        }
+        setLimit(limit);
+    }
+
+    /**
+     * changes the limit and starts counting the successes again, the lock must be held
+     */
+    private void setLimit(int limit) {
+        mSuccesses = 0;
+        if (limit == mLimit) {
+            return;
+        }
+        mLimit = limit;
+
+        // called with the lock held so the listener sees the changes in order
+        if (mListener != null) {
+            mListener.onLimitChanged(limit);
+        }
+    }
+
+    /**
+     * @return the best latency of the current and the previous windows, the lock must be held
+     */
+    private long getBestLatency() {
+        if (mWindowBest == 0) {
+            return mPreviousBest;
+        }
+        return mPreviousBest == 0 ? mWindowBest : Math.min(mWindowBest, mPreviousBest);
+    }
+
+    /**
+     * updates the smoothed latency and the best latency of the window, the lock must be held
+     */
+    private void updateLatency(long latencyNanos) {
+        long latency = Math.max(1, latencyNanos);
+        if (mSmoothedLatency == 0) {
+            mSmoothedLatency = latency;
+        }
+        else {
+            mSmoothedLatency += (latency - mSmoothedLatency) >> LATENCY_SMOOTHING;
+        }
+
+        if (mWindowBest == 0 || latency < mWindowBest) {
+            mWindowBest = latency;
+        }
+        if (++mWindowSamples >= BASELINE_WINDOW) {
+            mPreviousBest = mWindowBest;
+            mWindowBest = 0;
+            mWindowSamples = 0;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AdaptiveConcurrencyLimit[limit=" + mLimit + " latency=" + mSmoothedLatency / 1000000 +
+               "ms increases=" + mIncreases + " decreases=" + mDecreases + "]";
+    }
+
+    /**
+     * Receives the changes of the limit.
+     */
+    public interface Listener {
+        /**
+         * called on the thread that reported the sample, with the lock of the limit held
+         * @param limit the new number of requests allowed in flight
+         */
+        void onLimitChanged(int limit);
+    }
+}
@@ -0,0 +1,188 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Retrieves a batch of items by id and reports the outcome of every id in a BatchResult. The ids
+ * are deduplicated, the items in memory are served right away and only the missing ones are
+ * loaded, concurrently with the ItemFetcher.
+ */
+public class BatchFetcher<V> {
+
+    private static final String TAG = "droidnewsreader";
+
+    /**
+     * loads the missing items concurrently
+     */
+    private final ItemFetcher mFetcher;
+
+    /**
+     * the items in memory, null to load every item
+     */
+    private final StripedItemCache<V> mCache;
+
+    /**
+     * loads a single item missing from memory
+     */
+    private final ItemFetcher.Loader<V> mLoader;
+
+    /**
+     * records the lookups in memory, can be null
+     */
+    private final FetchMetrics mMetrics;
+
+    /**
+     * Creates a batch fetcher
+     * @param fetcher loads the missing items concurrently
+     * @param cache the items in memory, null to load every item with the loader
+     * @param loader loads a single item missing from memory, called on the fetcher threads
+     */
+    public BatchFetcher(ItemFetcher fetcher, StripedItemCache<V> cache, ItemFetcher.Loader<V> loader) {
+        this(fetcher, cache, loader, null);
+    }
+
+    /**
+     * Creates a batch fetcher recording its lookups in memory
+     * @param fetcher loads the missing items concurrently
+     * @param cache the items in memory, null to load every item with the loader
+     * @param loader loads a single item missing from memory, called on the fetcher threads
+     * @param metrics records the time of the lookups, the hits and the misses, the loader must not
+     *                record its own look for the item again, can be null
+     */
+    public BatchFetcher(ItemFetcher fetcher, StripedItemCache<V> cache, ItemFetcher.Loader<V> loader,
+                        FetchMetrics metrics) {
+        mFetcher = fetcher;
+        mCache = cache;
+        mLoader = loader;
+        mMetrics = metrics;
+    }
+
+    /**
+     * Retrieves the items and reports each of them to a callback as soon as it is available. This
+     * call blocks until every item is settled or the timeout expires, the items still loading
+     * then have the TIMEOUT status and are no longer reported.
+     * The callback receives every position of the ids, a duplicated id is reported once per
+     * position. The items in memory are reported on the calling thread, the others on the
+     * fetcher threads, the calls are never concurrent.
+     * @param ids the ids, can contain duplicates
+     * @param handle the priority of the requests and the flag to cancel them, null for the user
+     *               visible priority
+     * @param timeoutMillis the time to wait for the whole batch in milliseconds, 0 to wait for
+     *                      every item
+     * @param callback receives every item, null for none
+     * @return the outcome of every distinct id
+     */
+    public BatchResult<V> fetch(int[] ids, FetchHandle handle, long timeoutMillis, ItemFetcher.Callback<V> callback) {
+
+        Collector<V> collector = new Collector<>(ids, callback);
+
+        // the items in memory do not go to the network
+        int missing = 0;
+        int[] misses = new int[collector.mResult.size()];
+        for (int i = 0; i < collector.mResult.size(); i++) {
+            BatchResult.Entry<V> entry = collector.mResult.getAt(i);
+            V cached = mCache != null ? lookup(entry.Id) : null;
+            if (cached != null) {
+                collector.settle(entry, cached, BatchResult.ItemStatus.CACHED, null);
+            }
+            else {
+                misses[missing++] = entry.Id;
+            }
+        }
+
+        if (missing > 0) {
+            int[] requested = missing == misses.length ? misses : Arrays.copyOf(misses, missing);
+            FetchHandle h = handle != null ? handle : new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+            mFetcher.fetch(requested, h, mLoader, collector, timeoutMillis);
+        }
+
+        // the items settled from now on are ignored, they stay TIMEOUT
+        collector.close();
+        return collector.mResult;
+    }
+
+    /**
+     * looks for an item in memory and records the lookup
+     */
+    private V lookup(int id) {
+        if (mMetrics == null) {
+            return mCache.get(id);
+        }
+
+        long start = mMetrics.start();
+        V cached = mCache.get(id);
+        mMetrics.record(FetchMetrics.Stage.CACHE_LOOKUP, start);
+        mMetrics.increment(cached != null ? FetchMetrics.Counter.CACHE_HITS : FetchMetrics.Counter.CACHE_MISSES);
+        return cached;
+    }
+
+    /**
+     * @return the status of a failure, TIMEOUT or CANCELLED when the exception tells so
+     */
+    static BatchResult.ItemStatus statusOf(Exception ex) {
+        if (ex instanceof CancellationException) {
+            return BatchResult.ItemStatus.CANCELLED;
+        }
+        if (ex instanceof SocketTimeoutException) {
+            return BatchResult.ItemStatus.TIMEOUT;
+        }
+        return BatchResult.ItemStatus.FAILED;
+    }
+
+    /**
+     * Fills the result of a batch and forwards every position of the ids to the callback.
+     */
+    private static class Collector<V> implements ItemFetcher.Callback<V> {
+
+        final BatchResult<V> mResult;
+
+        private final ItemFetcher.Callback<V> mCallback;
+
+        /**
+         * true once the batch returned, guarded by this
+         */
+        private boolean mClosed;
+
+        Collector(int[] ids, ItemFetcher.Callback<V> callback) {
+            mCallback = callback;
+            mResult = new BatchResult<>(ids);
+        }
+
+        @Override
+        public void onItem(int index, int id, V item) {
+            settle(mResult.get(id), item, BatchResult.ItemStatus.OK, null);
+        }
+
+        @Override
+        public void onFailure(int index, int id, Exception ex) {
+            settle(mResult.get(id), null, statusOf(ex), ex);
+        }
+
+        synchronized void settle(BatchResult.Entry<V> entry, V item, BatchResult.ItemStatus status, Exception ex) {
+            if (mClosed) {
+                return;
+            }
+            entry.Item = item;
+            entry.Status = status;
+            entry.Error = ex;
+
+            if (mCallback == null) {
+                return;
+            }
+            for (int i = mResult.firstPosition(entry); i >= 0; i = mResult.nextPosition(i)) {
+                if (item != null) {
+                    mCallback.onItem(i, entry.Id, item);
+                }
+                else {
+                    mCallback.onFailure(i, entry.Id, ex);
+                }
+            }
+        }
+
+        synchronized void close() {
+            mClosed = true;
+        }
+    }
+}
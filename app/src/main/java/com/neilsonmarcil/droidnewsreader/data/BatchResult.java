@@ -0,0 +1,213 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of a batch of items requested by id: every distinct id of the batch has an Entry
+ * telling if its item was found in memory, loaded, or why it is missing. The entries are kept in
+ * the order of the ids and can be looked up by id.
+ */
+public class BatchResult<V> {
+
+    /**
+     * The outcome for an id
+     */
+    public enum ItemStatus {
+        /**
+         * loaded from the disk or the host
+         */
+        OK,
+
+        /**
+         * found in memory, nothing was requested
+         */
+        CACHED,
+
+        /**
+         * the item could not be loaded, the Error tells why
+         */
+        FAILED,
+
+        /**
+         * the item was not loaded before the end of the batch timeout, or the host did not answer
+         * in time
+         */
+        TIMEOUT,
+
+        /**
+         * the handle of the batch was cancelled before the item was requested
+         */
+        CANCELLED
+    }
+
+    /**
+     * the entries in the order of the ids, without the duplicates
+     */
+    private final ArrayList<Entry<V>> mEntries;
+
+    /**
+     * the entries by id
+     */
+    private final IntObjectMap<Entry<V>> mById;
+
+    /**
+     * the next position of the same id in the batch for every position, -1 for the last one
+     */
+    private final int[] mNextPosition;
+
+    /**
+     * Creates a result where every id times out until it is settled
+     * @param ids the ids of the batch, the duplicates share the same entry
+     */
+    BatchResult(int[] ids) {
+        mEntries = new ArrayList<>(ids.length);
+        mById = new IntObjectMap<>();
+        mNextPosition = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            mNextPosition[i] = -1;
+            Entry<V> entry = mById.get(ids[i]);
+            if (entry == null) {
+                entry = new Entry<>(ids[i]);
+                entry.mFirstPosition = i;
+                mEntries.add(entry);
+                mById.put(ids[i], entry);
+            }
+            else {
+                mNextPosition[entry.mLastPosition] = i;
+            }
+            entry.mLastPosition = i;
+        }
+    }
+
+    /**
+     * @return the first position of an entry in the ids of the batch
+     */
+    int firstPosition(Entry<V> entry) {
+        return entry.mFirstPosition;
+    }
+
+    /**
+     * @return the next position of the same id in the batch, -1 if there is none
+     */
+    int nextPosition(int position) {
+        return mNextPosition[position];
+    }
+
+    /**
+     * @return the number of distinct ids
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Returns an entry by position
+     * @param index the position among the distinct ids, in the order of the batch
+     * @return the entry
+     */
+    public Entry<V> getAt(int index) {
+        return mEntries.get(index);
+    }
+
+    /**
+     * Returns an entry by id
+     * @param id the unique id
+     * @return the entry, null if the id was not part of the batch
+     */
+    public Entry<V> get(int id) {
+        return mById.get(id);
+    }
+
+    /**
+     * Returns the item of an id
+     * @param id the unique id
+     * @return the item, null if it is missing or the id was not part of the batch
+     */
+    public V getItem(int id) {
+        Entry<V> entry = mById.get(id);
+        return entry != null ? entry.Item : null;
+    }
+
+    /**
+     * @return the items found or loaded, in the order of the ids
+     */
+    public List<V> getItems() {
+        ArrayList<V> items = new ArrayList<>(mEntries.size());
+        for (Entry<V> entry : mEntries) {
+            if (entry.Item != null) {
+                items.add(entry.Item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * @param status the status
+     * @return the number of distinct ids with that status
+     */
+    public int getCount(ItemStatus status) {
+        int count = 0;
+        for (Entry<V> entry : mEntries) {
+            if (entry.Status == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return true if every item was found or loaded
+     */
+    public boolean isComplete() {
+        for (Entry<V> entry : mEntries) {
+            if (entry.Item == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult[" + size() + " ids, " + getCount(ItemStatus.CACHED) + " cached, " +
+               getCount(ItemStatus.OK) + " ok, " + getCount(ItemStatus.FAILED) + " failed, " +
+               getCount(ItemStatus.TIMEOUT) + " timeout, " + getCount(ItemStatus.CANCELLED) + " cancelled]";
+    }
+
+    /**
+     * The outcome for a single id.
+     */
+    public static class Entry<V> {
+
+        /**
+         * the unique id
+         */
+        public final int Id;
+
+        /**
+         * the item, null unless the Status is OK or CACHED
+         */
+        public V Item;
+
+        /**
+         * the outcome
+         */
+        public ItemStatus Status = ItemStatus.TIMEOUT;
+
+        /**
+         * the reason of a failure, null otherwise
+         */
+        public Exception Error;
+
+        /**
+         * the first and last positions of the id in the batch
+         */
+        private int mFirstPosition;
+        private int mLastPosition;
+
+        Entry(int id) {
+            Id = id;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import android.util.Log;
+
+import com.neilsonmarcil.droidnewsreader.dto.NewsComment;
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Warms the caches with the first comments of the stories displayed in the list, so opening a
+ * story usually renders from memory. The list tells the prefetcher which stories are in or near
+ * the viewport, they are warmed in that order one story at a time on the FetchScheduler with the
+ * prefetch priority, so the requests of the screens always go first. A story that leaves the
+ * window is dropped, even in the middle of its comments.
+ * The work is limited by a number of requests and stops when the Policy does not allow it, for
+ * example on a metered network or a low battery. Only the comments actually downloaded count
+ * against the budget, and a story with a comment that could not be loaded stays eligible for
+ * the next window.
+ */
+public class CommentPrefetcher {
+
+    private static final String TAG = "droidnewsreader";
+
+    /**
+     * Represents the default number of comments warmed for each story, the ones displayed first
+     * by the details screen
+     */
+    public static final int DEFAULT_COMMENTS_PER_STORY = 10;
+
+    /**
+     * Represents the default number of requests allowed until the next reset()
+     */
+    public static final int DEFAULT_BUDGET = 300;
+
+    /**
+     * loads the comments into the caches
+     */
+    private final DataLayer mDataLayer;
+
+    /**
+     * tells if the device allows prefetching now
+     */
+    private final Policy mPolicy;
+
+    /**
+     * the number of comments warmed for each story, each with its first reply
+     */
+    private final int mCommentsPerStory;
+
+    /**
+     * the number of requests allowed after a reset()
+     */
+    private final int mMaxBudget;
+
+    /**
+     * runs the stories one at a time
+     */
+    private final FetchScheduler mScheduler;
+
+    /**
+     * the prefetch priority, cancelled by shutdown()
+     */
+    private final FetchHandle mHandle = new FetchHandle(FetchScheduler.Priority.PREFETCH);
+
+    /**
+     * the stories waiting, in window order. Guarded by this.
+     */
+    private final ArrayList<SingleNews> mQueue = new ArrayList<>();
+
+    /**
+     * the id of the stories in the window. Guarded by this.
+     */
+    private final HashSet<Integer> mWindow = new HashSet<>();
+
+    /**
+     * the id of the stories already warmed. Guarded by this.
+     */
+    private final HashSet<Integer> mWarmed = new HashSet<>();
+
+    /**
+     * the number of requests left. Guarded by this.
+     */
+    private int mBudget;
+
+    /**
+     * true while a story is queued in the scheduler or warmed. Guarded by this.
+     */
+    private boolean mRunning;
+
+    /**
+     * Creates a prefetcher with the default number of comments and budget
+     * @param dataLayer loads the comments into the caches
+     * @param scheduler runs the requests
+     * @param policy tells if the device allows prefetching now
+     */
+    public CommentPrefetcher(DataLayer dataLayer, FetchScheduler scheduler, Policy policy) {
+        this(dataLayer, scheduler, policy, DEFAULT_COMMENTS_PER_STORY, DEFAULT_BUDGET);
+    }
+
+    /**
+     * Creates a prefetcher
+     * @param dataLayer loads the comments into the caches
+     * @param scheduler runs the requests
+     * @param policy tells if the device allows prefetching now
+     * @param commentsPerStory the number of comments warmed for each story
+     * @param budget the number of requests allowed until the next reset()
+     */
+    public CommentPrefetcher(DataLayer dataLayer, FetchScheduler scheduler, Policy policy,
+                             int commentsPerStory, int budget) {
+        mDataLayer = dataLayer;
+        mScheduler = scheduler;
+        mPolicy = policy;
+        mCommentsPerStory = commentsPerStory;
+        mMaxBudget = budget;
+        mBudget = budget;
+    }
+
+    /**
+     * Sets the stories in or near the viewport, the ones that are not warmed yet are queued in
+     * this order and the stories that left the window are dropped. Can be called on every scroll.
+     * @param stories the stories, the visible ones first
+     */
+    public synchronized void setWindow(List<SingleNews> stories) {
+        mWindow.clear();
+        mQueue.clear();
+        for (SingleNews news : stories) {
+            mWindow.add(news.Id);
+            if (!mWarmed.contains(news.Id) && news.Comments != null && news.Comments.length > 0) {
+                mQueue.add(news);
+            }
+        }
+
+        if (!mRunning) {
+            scheduleNext();
+        }
+    }
+
+    /**
+     * Restores the budget and forgets the stories warmed, used when the list is reloaded
+     */
+    public synchronized void reset() {
+        mBudget = mMaxBudget;
+        mWarmed.clear();
+    }
+
+    /**
+     * Stops prefetching for good, the request in progress is completed
+     */
+    public synchronized void shutdown() {
+        mHandle.cancel();
+        mQueue.clear();
+        mWindow.clear();
+    }
+
+    /**
+     * @return the number of requests left until the next reset()
+     */
+    public synchronized int getBudget() {
+        return mBudget;
+    }
+
+    /**
+     * queues the next story in the scheduler if there is one, the lock must be held
+     */
+    private void scheduleNext() {
+        if (mQueue.isEmpty() || mBudget <= 0 || mHandle.isCancelled()) {
+            mRunning = false;
+            return;
+        }
+
+        mRunning = true;
+        final SingleNews news = mQueue.remove(0);
+        mScheduler.execute(mHandle, new Runnable() {
+            @Override
+            public void run() {
+                boolean allowed = mPolicy.isPrefetchAllowed();
+                boolean warmed = allowed && warm(news);
+
+                synchronized (CommentPrefetcher.this) {
+                    if (warmed) {
+                        mWarmed.add(news.Id);
+                    }
+                    if (!allowed) {
+                        Log.d(TAG, "CommentPrefetcher: prefetch not allowed, dropping the queue");
+                        mQueue.clear();
+                    }
+                    scheduleNext();
+                }
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                synchronized (CommentPrefetcher.this) {
+                    mRunning = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * loads the first comments of the story and the first reply of each
+     * @return true if every comment was loaded, false if one failed, the story left the window or
+     * the budget is exhausted
+     */
+    private boolean warm(SingleNews news) {
+        boolean complete = true;
+        int count = Math.min(news.Comments.length, mCommentsPerStory);
+        for (int i = 0; i < count; i++) {
+            NewsComment comment = load(news.Id, news.Comments[i]);
+            if (comment == null) {
+                if (!isActive(news.Id)) {
+                    return false;
+                }
+                // the others are still warmed, the story is tried again with the next window
+                complete = false;
+                continue;
+            }
+
+            // the details screen displays the first reply with the comment
+            if (comment.CommentsIds != null && comment.CommentsIds.length > 0 &&
+                load(news.Id, comment.CommentsIds[0]) == null) {
+                if (!isActive(news.Id)) {
+                    return false;
+                }
+                complete = false;
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * returns a comment from memory or downloads it, only a download takes a request from the
+     * budget
+     * @return the comment, null if it failed or no request could be taken
+     */
+    private NewsComment load(int newsId, int id) {
+        NewsComment comment = mDataLayer.getCachedComment(id);
+        if (comment != null) {
+            return comment;
+        }
+        if (!acquire(newsId)) {
+            return null;
+        }
+
+        // the data layer returns an empty comment when it cannot be retrieved
+        comment = mDataLayer.getSpecificComment(id);
+        return comment.Id == id ? comment : null;
+    }
+
+    /**
+     * @return true if the story can still take requests, the lock is taken
+     */
+    private synchronized boolean isActive(int newsId) {
+        return mBudget > 0 && !mHandle.isCancelled() && mWindow.contains(newsId);
+    }
+
+    /**
+     * takes one request from the budget if the story is still in the window
+     */
+    private synchronized boolean acquire(int newsId) {
+        if (!isActive(newsId)) {
+            return false;
+        }
+        mBudget--;
+        return true;
+    }
+
+    /**
+     * Tells if the device allows prefetching, called from a worker thread before each story.
+     */
+    public interface Policy {
+        /**
+         * @return true if the network and the battery allow prefetching now
+         */
+        boolean isPrefetchAllowed();
+    }
+}
@@ -0,0 +1,261 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import android.util.Log;
+
+import com.neilsonmarcil.droidnewsreader.dto.NewsComment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Loads a tree of comments level by level. All the comments of a level are requested in parallel
+ * with the ItemFetcher, their replies form the next level, so a tree loads in about one round
+ * trip per level whatever the number of comments. The depth and the number of children kept at
+ * each level are limited.
+ * A comment that cannot be loaded is left out of the tree with its replies.
+ * The tree is made of copies of the comments: the ones loaded are shared with the memory cache
+ * and the other trees, they are never changed.
+ */
+public class CommentTreeLoader {
+
+    private static final String TAG = "droidnewsreader";
+
+    private static final NewsComment[] NO_REPLIES = new NewsComment[0];
+
+    /**
+     * retrieves the comments of a level in parallel
+     */
+    private final BatchFetcher<NewsComment> mBatch;
+
+    /**
+     * the number of levels to load
+     */
+    private final int mMaxDepth;
+
+    /**
+     * the number of children to keep at each level, the last one is used for the deeper levels
+     */
+    private final int[] mMaxChildren;
+
+    /**
+     * Creates a loader
+     * @param fetcher downloads the comments in parallel
+     * @param loader loads a single comment, called on the fetcher threads
+     * @param maxDepth the number of levels to load, 1 loads the comments of the story only
+     * @param maxChildren the number of children to keep at each level starting with the comments
+     *                    of the story, the last value applies to the deeper levels
+     */
+    public CommentTreeLoader(ItemFetcher fetcher, ItemFetcher.Loader<NewsComment> loader,
+                             int maxDepth, int[] maxChildren) {
+        this(new BatchFetcher<>(fetcher, null, loader), maxDepth, maxChildren);
+    }
+
+    /**
+     * Creates a loader retrieving each level with a BatchFetcher, the comments in memory are
+     * served without a request
+     * @param batch retrieves the comments of a level
+     * @param maxDepth the number of levels to load, 1 loads the comments of the story only
+     * @param maxChildren the number of children to keep at each level starting with the comments
+     *                    of the story, the last value applies to the deeper levels
+     */
+    public CommentTreeLoader(BatchFetcher<NewsComment> batch, int maxDepth, int[] maxChildren) {
+        if (maxDepth <= 0 || maxChildren.length == 0) {
+            throw new IllegalArgumentException("maxDepth and maxChildren cannot be empty");
+        }
+        mBatch = batch;
+        mMaxDepth = maxDepth;
+        mMaxChildren = Arrays.copyOf(maxChildren, maxChildren.length);
+    }
+
+    /**
+     * Loads the tree and links the replies of every comment. This call blocks until the tree is
+     * loaded, it is thread-safe.
+     * @param rootIds the ids of the comments of the story, in display order
+     * @return the comments of the story with their Replies, in display order
+     */
+    public NewsComment[] load(int[] rootIds) {
+        return load(rootIds, null, null);
+    }
+
+    /**
+     * Loads the tree and reports the progress to a listener: the comments of the story in display
+     * order as they arrive, then the replies of every comment once its level is loaded. This call
+     * blocks until the tree is loaded, it is thread-safe.
+     * @param rootIds the ids of the comments of the story, in display order
+     * @param listener receives the comments as they are available, null for none
+     * @param handle the priority of the requests and the flag to stop loading, the tree loaded so
+     *               far is returned when it is cancelled. Null for the user visible priority.
+     * @return the comments of the story with their Replies, in display order
+     */
+    public NewsComment[] load(int[] rootIds, DataLayer.CommentsListener listener, FetchHandle handle) {
+
+        // the position of the parent of each id in the previous level, -1 for the roots
+        int[] ids = Arrays.copyOf(rootIds, Math.min(rootIds.length, maxChildren(0)));
+        int[] parents = new int[ids.length];
+        Arrays.fill(parents, -1);
+
+        NewsComment[] roots = null;
+        NewsComment[] previous = null;
+
+        for (int depth = 0; depth < mMaxDepth && ids.length > 0; depth++) {
+
+            if (handle != null && handle.isCancelled()) {
+                break;
+            }
+
+            NewsComment[] level = fetchLevel(ids, handle, previous == null ? listener : null);
+
+            if (previous == null) {
+                roots = level;
+            }
+            else {
+                link(previous, level, parents, listener);
+            }
+
+            // the replies of this level form the next one
+            int max = depth + 1 < mMaxDepth ? maxChildren(depth + 1) : 0;
+            int count = 0;
+            for (NewsComment comment : level) {
+                if (comment != null) {
+                    count += Math.min(comment.CommentsIds.length, max);
+                }
+            }
+
+            int[] nextIds = new int[count];
+            int[] nextParents = new int[count];
+            int n = 0;
+            for (int i = 0; i < level.length; i++) {
+                if (level[i] != null) {
+                    int children = Math.min(level[i].CommentsIds.length, max);
+                    for (int c = 0; c < children; c++) {
+                        nextIds[n] = level[i].CommentsIds[c];
+                        nextParents[n] = i;
+                        n++;
+                    }
+                }
+            }
+
+            previous = level;
+            ids = nextIds;
+            parents = nextParents;
+        }
+
+        NewsComment[] comments = roots == null ? new NewsComment[0] : compact(roots);
+        if (listener != null) {
+            listener.onComplete(comments.length);
+        }
+        return comments;
+    }
+
+    /**
+     * fetches every id of a level in parallel, the failed ones are null
+     */
+    private NewsComment[] fetchLevel(int[] ids, FetchHandle handle, DataLayer.CommentsListener listener) {
+
+        LevelCollector collector = new LevelCollector(ids.length, listener);
+        mBatch.fetch(ids, handle, 0, collector);
+        return collector.mLevel;
+    }
+
+    /**
+     * sets the Replies of every parent, in the order of its CommentsIds. The array is built
+     * before it is assigned so a reader never sees a partial list.
+     */
+    private static void link(NewsComment[] parents, NewsComment[] children, int[] parentOf,
+                             DataLayer.CommentsListener listener) {
+
+        ArrayList<NewsComment> replies = new ArrayList<>();
+        int i = 0;
+        while (i < children.length) {
+            int parent = parentOf[i];
+            replies.clear();
+            for (; i < children.length && parentOf[i] == parent; i++) {
+                if (children[i] != null) {
+                    replies.add(children[i]);
+                }
+            }
+            parents[parent].Replies = replies.toArray(new NewsComment[replies.size()]);
+            if (listener != null && !replies.isEmpty()) {
+                listener.onReplies(parents[parent]);
+            }
+        }
+    }
+
+    /**
+     * @return a copy of a comment loaded, without replies, to be linked in this tree only
+     */
+    private static NewsComment node(NewsComment comment) {
+        NewsComment node = new NewsComment();
+        node.Id = comment.Id;
+        node.ParentId = comment.ParentId;
+        node.Author = comment.Author;
+        node.Body = comment.Body;
+        node.Date = comment.Date;
+        node.CommentsIds = comment.CommentsIds;
+        node.Replies = NO_REPLIES;
+        return node;
+    }
+
+    /**
+     * @return the comments loaded, without the failed ones
+     */
+    private static NewsComment[] compact(NewsComment[] comments) {
+        ArrayList<NewsComment> loaded = new ArrayList<>(comments.length);
+        for (NewsComment comment : comments) {
+            if (comment != null) {
+                loaded.add(comment);
+            }
+        }
+        return loaded.toArray(new NewsComment[loaded.size()]);
+    }
+
+    private int maxChildren(int depth) {
+        return mMaxChildren[Math.min(depth, mMaxChildren.length - 1)];
+    }
+
+    /**
+     * Keeps a copy of the comments of a level by position. When there is a listener the comments are also
+     * delivered in display order: a comment is held back only until every comment before it is
+     * either loaded or failed, like the RankOrderPublisher does for the stories.
+     */
+    private static class LevelCollector implements ItemFetcher.Callback<NewsComment> {
+
+        final NewsComment[] mLevel;
+        private final boolean[] mSettled;
+        private final DataLayer.CommentsListener mListener;
+        private int mNext;
+        private int mDelivered;
+
+        LevelCollector(int size, DataLayer.CommentsListener listener) {
+            mLevel = new NewsComment[size];
+            mSettled = new boolean[size];
+            mListener = listener;
+        }
+
+        @Override
+        public synchronized void onItem(int index, int id, NewsComment item) {
+            mLevel[index] = node(item);
+            mSettled[index] = true;
+            drain();
+        }
+
+        @Override
+        public synchronized void onFailure(int index, int id, Exception ex) {
+            Log.w(TAG, "Could not load comment " + id, ex);
+            mSettled[index] = true;
+            drain();
+        }
+
+        private void drain() {
+            if (mListener == null) {
+                return;
+            }
+            while (mNext < mSettled.length && mSettled[mNext]) {
+                NewsComment comment = mLevel[mNext++];
+                if (comment != null) {
+                    mListener.onComment(mDelivered++, comment);
+                }
+            }
+        }
+    }
+}
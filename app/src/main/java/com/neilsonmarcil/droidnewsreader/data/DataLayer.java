@@ -2,18 +2,84 @@ package com.neilsonmarcil.droidnewsreader.data;
 
 import com.neilsonmarcil.droidnewsreader.dto.NewsComment;
 import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+import com.neilsonmarcil.droidnewsreader.dto.TopStoriesUpdate;
 
 /**
  * Responsible to retrieve the data.
+ * The implementations must be thread-safe: every function can be called from any thread other
+ * than the UI thread, the functions download and block until the data is available. Concurrent
+ * calls for the same item share a single download.
  */
 public interface DataLayer {
 
+    /**
+     * Represents the max number of Top Stories served, the ranks past it are never loaded
+     */
+    int MAX_STORIES = 500;
+
     /**
      * Returns a list of Top Stories
      * @return an array containing SingeNews instance.
      */
     SingleNews[] getTopStories();
 
+    /**
+     * Retrieves the Top Stories and delivers them one at a time, in rank order, as soon as they
+     * are available. The first stories can be displayed before the rest is downloaded.
+     * @param listener receives the stories, called from a worker thread
+     */
+    void getTopStories(StoriesListener listener);
+
+    /**
+     * Downloads the ranking of the Top Stories and keeps it for the paged functions. The calls
+     * running at the same time keep the ranking downloaded last.
+     * @return the stories id in rank order, can be empty
+     */
+    int[] getTopStoriesIds();
+
+    /**
+     * Returns a page of the Top Stories from the last ranking downloaded by getTopStoriesIds(),
+     * the ranking is downloaded first if there is none yet. Only the stories in the page are
+     * retrieved.
+     * @param offset the rank of the first story
+     * @param count the max number of stories to return
+     * @return an array containing the stories of the page, can be shorter than count and is empty
+     *         past MAX_STORIES
+     */
+    SingleNews[] getTopStories(int offset, int count);
+
+    /**
+     * Same as getTopStories(int, int) but delivers the stories of the page one at a time, in rank
+     * order, as soon as they are available.
+     * @param offset the rank of the first story
+     * @param count the max number of stories to deliver
+     * @param listener receives the stories, called from a worker thread
+     */
+    void getTopStories(int offset, int count, StoriesListener listener);
+
+    /**
+     * Same as getTopStories(int, int, StoriesListener) with the priority of a handle. When the
+     * handle is cancelled the stories not requested yet are skipped and onComplete(int) is called
+     * with the stories delivered so far.
+     * @param offset the rank of the first story
+     * @param count the max number of stories to deliver
+     * @param listener receives the stories, called from a worker thread
+     * @param handle the priority of the requests and the flag to cancel them
+     */
+    void getTopStories(int offset, int count, StoriesListener listener, FetchHandle handle);
+
+    /**
+     * Downloads the ranking again and updates the first stories without downloading everything:
+     * the stories that were not in the previous ranking are retrieved like getTopStories(int, int)
+     * and the ones kept are downloaded again in the same batch to update their score and
+     * comments, into new instances. The stories of the previous ranking outside of the first ones are
+     * released from memory, they are revalidated when they are requested again.
+     * @param count the number of stories to update, usually the number displayed
+     * @param handle the priority of the requests and the flag to cancel them
+     * @return the ranking and the first stories, both empty if the ranking could not be downloaded
+     */
+    TopStoriesUpdate refreshTopStories(int count, FetchHandle handle);
+
     /**
      * Returns a news based on the ID
      * @param id the unique Id for
@@ -21,6 +87,62 @@ public interface DataLayer {
      */
     SingleNews getSpecificNews(int id);
 
+    /**
+     * Retrieves several stories at once. The ids are deduplicated, the stories in memory are
+     * returned without a request and the others are retrieved concurrently. A story that cannot
+     * be retrieved does not fail the others, its entry tells why.
+     * @param ids the stories id, can contain duplicates
+     * @return the outcome of every distinct id, in the order of the ids
+     */
+    BatchResult<SingleNews> getNews(int[] ids);
+
+    /**
+     * Same as getNews(int[]) with the priority of a handle and a timeout. The stories not
+     * retrieved when the handle is cancelled or the timeout expires are reported as CANCELLED or
+     * TIMEOUT.
+     * @param ids the stories id, can contain duplicates
+     * @param handle the priority of the requests and the flag to cancel them, null for the user
+     *               visible priority
+     * @param timeoutMillis the time to wait for the whole batch in milliseconds, 0 to wait for
+     *                      every story
+     * @return the outcome of every distinct id, in the order of the ids
+     */
+    BatchResult<SingleNews> getNews(int[] ids, FetchHandle handle, long timeoutMillis);
+
+    /**
+     * Retrieves several comments at once, like getNews(int[]). The Replies are not linked.
+     * @param ids the comments id, can contain duplicates
+     * @return the outcome of every distinct id, in the order of the ids
+     */
+    BatchResult<NewsComment> getComments(int[] ids);
+
+    /**
+     * Same as getComments(int[]) with the priority of a handle and a timeout, like
+     * getNews(int[], FetchHandle, long).
+     * @param ids the comments id, can contain duplicates
+     * @param handle the priority of the requests and the flag to cancel them, null for the user
+     *               visible priority
+     * @param timeoutMillis the time to wait for the whole batch in milliseconds, 0 to wait for
+     *                      every comment
+     * @return the outcome of every distinct id, in the order of the ids
+     */
+    BatchResult<NewsComment> getComments(int[] ids, FetchHandle handle, long timeoutMillis);
+
+    /**
+     * Returns a news only if it is already in memory, nothing is downloaded so it can be called
+     * from the UI thread
+     * @param id the unique Id
+     * @return the SingleNews, null if it is not in memory
+     */
+    SingleNews getCachedNews(int id);
+
+    /**
+     * Returns a comment only if it is already in memory, like getCachedNews(int)
+     * @param id the unique Id
+     * @return the NewsComment, null if it is not in memory
+     */
+    NewsComment getCachedComment(int id);
+
     /**
      * get a specific comment with the unique id
      * @param id the unique id
@@ -35,4 +157,80 @@ public interface DataLayer {
      */
     NewsComment[] getCommentsFromNews(SingleNews news);
 
+    /**
+     * Returns the tree of comments of a story, each level is retrieved in parallel
+     * @param news the story from which to retreive the comments
+     * @param maxDepth the number of levels, 1 for the comments of the story only
+     * @param maxChildren the max number of children at each level starting with the comments of
+     *                    the story, the last value applies to the deeper levels
+     * @return the comments of the story with their Replies, the ones that could not be retrieved
+     * are left out
+     */
+    NewsComment[] getCommentsFromNews(SingleNews news, int maxDepth, int[] maxChildren);
+
+    /**
+     * Same as getCommentsFromNews(SingleNews) but delivers the comments as soon as they are
+     * available: the comments of the story in display order, then the replies of each comment
+     * once they are linked. This call blocks until the tree is loaded.
+     * @param news the story from which to retreive the comments
+     * @param listener receives the comments, called from a worker thread
+     */
+    void getCommentsFromNews(SingleNews news, CommentsListener listener);
+
+    /**
+     * Same as getCommentsFromNews(SingleNews, CommentsListener) with the priority of a handle.
+     * When the handle is cancelled the comments not requested yet are skipped and onComplete(int)
+     * is called with the comments delivered so far.
+     * @param news the story from which to retreive the comments
+     * @param listener receives the comments, called from a worker thread
+     * @param handle the priority of the requests and the flag to cancel them
+     */
+    void getCommentsFromNews(SingleNews news, CommentsListener listener, FetchHandle handle);
+
+    /**
+     * Receives the stories delivered by getTopStories(StoriesListener). The calls are never
+     * concurrent and always follow the rank order.
+     */
+    interface StoriesListener {
+
+        /**
+         * called when the next story in rank order is available
+         * @param rank the rank of the story in the ranking starting at 0, the rank of a story
+         *             that could not be retrieved is skipped
+         * @param news the story
+         */
+        void onStory(int rank, SingleNews news);
+
+        /**
+         * called once every story is delivered
+         * @param count the number of stories delivered
+         */
+        void onComplete(int count);
+    }
+
+    /**
+     * Receives the comments delivered by getCommentsFromNews(SingleNews, CommentsListener). The
+     * calls are never concurrent.
+     */
+    interface CommentsListener {
+
+        /**
+         * called when the next comment of the story in display order is available
+         * @param position the position of the comment in the list delivered so far, starting at 0
+         * @param comment the comment, its Replies are not loaded yet
+         */
+        void onComment(int position, NewsComment comment);
+
+        /**
+         * called when the Replies of a comment already delivered are linked
+         * @param comment the comment, either one of the story or a reply
+         */
+        void onReplies(NewsComment comment);
+
+        /**
+         * called once the tree is loaded
+         * @param count the number of comments of the story delivered
+         */
+        void onComplete(int count);
+    }
 }
@@ -0,0 +1,392 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import android.util.Log;
+
+import com.neilsonmarcil.droidnewsreader.dto.NewsComment;
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Keeps the stories and comments on disk between launches, one small binary file per item. Every
+ * record remembers when it was saved: the title, author, url, body and time of an item never
+ * change and can always be served from disk, the score and the replies (kids) change and are only
+ * trusted for the TTL of the item type. After MAX_AGE the record is deleted.
+ */
+public class DiskItemCache {
+
+    private static final String TAG = "droidnewsreader";
+
+    /**
+     * Represents how long the score and kids of a story are trusted, in milliseconds
+     */
+    public static final long STORY_TTL = 5 * 60 * 1000L;
+
+    /**
+     * Represents how long the kids of a comment are trusted, in milliseconds
+     */
+    public static final long COMMENT_TTL = 30 * 60 * 1000L;
+
+    /**
+     * Represents the age after which a record is deleted, in milliseconds
+     */
+    public static final long MAX_AGE = 7 * 24 * 60 * 60 * 1000L;
+
+    /**
+     * Represents the age after which a temporary file is left behind by a write that did not
+     * complete, in milliseconds. A younger one may still be written.
+     */
+    public static final long TEMP_MAX_AGE = 5 * 60 * 1000L;
+
+    /**
+     * Represents the version of the file format, a record with another version is ignored
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * the prefix of the story files
+     */
+    private static final String STORY_PREFIX = "s";
+
+    /**
+     * the prefix of the comment files
+     */
+    private static final String COMMENT_PREFIX = "c";
+
+    /**
+     * the prefix of the temporary files, File.createTempFile() needs at least 3 characters
+     */
+    private static final String TEMP_PREFIX = "tmp-";
+
+    /**
+     * the strings are saved in UTF-8
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * the directory containing the records
+     */
+    private final File mDirectory;
+
+    /**
+     * Creates a cache saving the records in a directory, the directory is created if needed
+     * @param directory the directory, usually under Context.getCacheDir()
+     */
+    public DiskItemCache(File directory) {
+        mDirectory = directory;
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "DiskItemCache could not create " + directory);
+        }
+    }
+
+    /**
+     * Reads a story from the disk
+     * @param id the unique id
+     * @return the record, null if the story is not on disk or cannot be read
+     */
+    public Record<SingleNews> readNews(int id) {
+
+        DataInputStream in = open(STORY_PREFIX, id);
+        if (in == null) {
+            return null;
+        }
+
+        try {
+            long savedAt = readHeader(in);
+            if (savedAt < 0) {
+                return null;
+            }
+
+            SingleNews news = new SingleNews();
+            news.Id = in.readInt();
+            news.Title = readString(in);
+            news.Author = readString(in);
+            news.Url = readString(in);
+            news.Date = in.readLong();
+            news.Score = in.readInt();
+            news.Comments = readIntArray(in);
+            return new Record<>(news, savedAt, STORY_TTL);
+        }
+        catch (IOException ex) {
+            Log.w(TAG, "DiskItemCache could not read story " + id, ex);
+        }
+        finally {
+            close(in);
+        }
+
+        return null;
+    }
+
+    /**
+     * Saves a story on disk, replacing the previous record
+     * @param news the story
+     */
+    public void writeNews(SingleNews news) {
+
+        File tmp = null;
+        DataOutputStream out = null;
+
+        try {
+            tmp = File.createTempFile(TEMP_PREFIX + STORY_PREFIX, null, mDirectory);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            writeHeader(out);
+            out.writeInt(news.Id);
+            writeString(out, news.Title);
+            writeString(out, news.Author);
+            writeString(out, news.Url);
+            out.writeLong(news.Date);
+            out.writeInt(news.Score);
+            writeIntArray(out, news.Comments);
+            out.close();
+            out = null;
+
+            commit(tmp, STORY_PREFIX, news.Id);
+        }
+        catch (IOException ex) {
+            Log.w(TAG, "DiskItemCache could not write story " + news.Id, ex);
+            close(out);
+            delete(tmp);
+        }
+    }
+
+    /**
+     * Reads a comment from the disk, the replies are not saved with the comment
+     * @param id the unique id
+     * @return the record, null if the comment is not on disk or cannot be read
+     */
+    public Record<NewsComment> readComment(int id) {
+
+        DataInputStream in = open(COMMENT_PREFIX, id);
+        if (in == null) {
+            return null;
+        }
+
+        try {
+            long savedAt = readHeader(in);
+            if (savedAt < 0) {
+                return null;
+            }
+
+            NewsComment comment = new NewsComment();
+            comment.Id = in.readInt();
+            comment.ParentId = in.readInt();
+            comment.Author = readString(in);
+            comment.Body = readString(in);
+            comment.Date = in.readLong();
+            comment.CommentsIds = readIntArray(in);
+            return new Record<>(comment, savedAt, COMMENT_TTL);
+        }
+        catch (IOException ex) {
+            Log.w(TAG, "DiskItemCache could not read comment " + id, ex);
+        }
+        finally {
+            close(in);
+        }
+
+        return null;
+    }
+
+    /**
+     * Saves a comment on disk, replacing the previous record. The replies are not saved.
+     * @param comment the comment
+     */
+    public void writeComment(NewsComment comment) {
+
+        File tmp = null;
+        DataOutputStream out = null;
+
+        try {
+            tmp = File.createTempFile(TEMP_PREFIX + COMMENT_PREFIX, null, mDirectory);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            writeHeader(out);
+            out.writeInt(comment.Id);
+            out.writeInt(comment.ParentId);
+            writeString(out, comment.Author);
+            writeString(out, comment.Body);
+            out.writeLong(comment.Date);
+            writeIntArray(out, comment.CommentsIds);
+            out.close();
+            out = null;
+
+            commit(tmp, COMMENT_PREFIX, comment.Id);
+        }
+        catch (IOException ex) {
+            Log.w(TAG, "DiskItemCache could not write comment " + comment.Id, ex);
+            close(out);
+            delete(tmp);
+        }
+    }
+
+    /**
+     * Deletes the records older than MAX_AGE and the temporary files older than TEMP_MAX_AGE, left
+     * behind by a write that did not complete
+     * @return the number of files deleted
+     */
+    public int purgeExpired() {
+
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+
+        long now = System.currentTimeMillis();
+        int deleted = 0;
+        for (File f : files) {
+            long maxAge = f.getName().startsWith(TEMP_PREFIX) ? TEMP_MAX_AGE : MAX_AGE;
+            if (f.lastModified() < now - maxAge && f.delete()) {
+                deleted++;
+            }
+        }
+
+        Log.d(TAG, "DiskItemCache.purgeExpired(): " + deleted + " files deleted");
+        return deleted;
+    }
+
+    /**
+     * Opens the file of an item
+     * @return the stream, null if there is no file for the item
+     */
+    private DataInputStream open(String prefix, int id) {
+        try {
+            return new DataInputStream(new BufferedInputStream(new FileInputStream(getFile(prefix, id))));
+        }
+        catch (FileNotFoundException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the file of an item by the temporary file in a single rename, a reader never sees
+     * a file partially written.
+     */
+    private void commit(File tmp, String prefix, int id) throws IOException {
+        if (!tmp.renameTo(getFile(prefix, id))) {
+            delete(tmp);
+            throw new IOException("Could not rename " + tmp);
+        }
+    }
+
+    private File getFile(String prefix, int id) {
+        return new File(mDirectory, prefix + id);
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Reads the header of a record
+     * @return the time the record was saved, -1 if the version is not supported
+     */
+    private static long readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != VERSION) {
+            return -1;
+        }
+        return in.readLong();
+    }
+
+    /**
+     * writes a String as its length in bytes followed by the UTF-8 bytes, -1 for null. Used
+     * instead of writeUTF() that cannot write more than 64KB.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void writeIntArray(DataOutputStream out, int[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(values.length);
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+
+    private static int[] readIntArray(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static void close(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            }
+            catch (IOException ex) {
+                Log.w(TAG, "DiskItemCache could not close a file", ex);
+            }
+        }
+    }
+
+    private static void delete(File f) {
+        if (f != null && f.exists() && !f.delete()) {
+            Log.w(TAG, "DiskItemCache could not delete " + f);
+        }
+    }
+
+    /**
+     * An item read from the disk and the time it was saved.
+     */
+    public static class Record<T> {
+
+        /**
+         * the item
+         */
+        public final T Item;
+
+        /**
+         * the time the item was saved, in milliseconds
+         */
+        public final long SavedAt;
+
+        /**
+         * how long the volatile fields of the item are trusted
+         */
+        private final long mTtl;
+
+        public Record(T item, long savedAt, long ttl) {
+            Item = item;
+            SavedAt = savedAt;
+            mTtl = ttl;
+        }
+
+        /**
+         * @return true if the volatile fields (score, kids) are still within the TTL
+         */
+        public boolean isFresh() {
+            return System.currentTimeMillis() - SavedAt < mTtl;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+/**
+ * Identifies the requests made for a screen or a job: their priority in the FetchScheduler and a
+ * flag to cancel them together. The loops of the data layer check the flag between requests, the
+ * requests queued for a cancelled handle are skipped and the request in progress completes.
+ * A handle can be shared by several threads, cancel() can be called from any of them.
+ */
+public class FetchHandle {
+
+    /**
+     * the priority of the requests
+     */
+    private final FetchScheduler.Priority mPriority;
+
+    /**
+     * true once cancel() is called
+     */
+    private volatile boolean mCancelled;
+
+    /**
+     * Creates a handle that is not cancelled
+     * @param priority the priority of the requests made with this handle
+     */
+    public FetchHandle(FetchScheduler.Priority priority) {
+        mPriority = priority;
+    }
+
+    /**
+     * @return the priority of the requests made with this handle
+     */
+    public FetchScheduler.Priority getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * Cancels the requests made with this handle that are not started yet, cannot be undone
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * @return true if cancel() was called
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+}
@@ -0,0 +1,239 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records where the time of the data layer goes: a LatencyHistogram per stage of a load and a
+ * counter per event. Recording is off by default, the data layer then only reads a volatile
+ * boolean per stage: start() returns 0 and the record functions return right away.
+ * The typical use around a stage:
+ * <pre>
+ *     long start = metrics.start();
+ *     ... the stage ...
+ *     metrics.record(FetchMetrics.Stage.PARSE, start);
+ * </pre>
+ * All the functions are thread-safe.
+ */
+public class FetchMetrics {
+
+    /**
+     * The stages of a load, each one has a LatencyHistogram.
+     */
+    public enum Stage {
+        /**
+         * the host name resolution and the opening of the connection, 0 for a pooled connection
+         */
+        CONNECT,
+
+        /**
+         * from the request sent to the last byte of the body
+         */
+        DOWNLOAD,
+
+        /**
+         * the decoding of the item from the bytes received
+         */
+        PARSE,
+
+        /**
+         * the lookup of an item in the memory cache
+         */
+        CACHE_LOOKUP,
+
+        /**
+         * a whole request, the retries and their delays included
+         */
+        REQUEST
+    }
+
+    /**
+     * The events counted.
+     */
+    public enum Counter {
+        /**
+         * an item found in memory
+         */
+        CACHE_HITS,
+
+        /**
+         * an item missing from memory
+         */
+        CACHE_MISSES,
+
+        /**
+         * an item missing from memory found on disk, a stale one is revalidated in the background
+         */
+        DISK_HITS,
+
+        /**
+         * the bytes of the bodies received
+         */
+        BYTES_READ,
+
+        /**
+         * an attempt of a request made again after a transient failure
+         */
+        RETRIES,
+
+        /**
+         * a request that failed after its last attempt
+         */
+        FAILURES
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+
+    /**
+     * true when the stages and events are recorded
+     */
+    private volatile boolean mEnabled;
+
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[STAGES.length];
+    private final AtomicLong[] mCounters = new AtomicLong[COUNTERS.length];
+
+    /**
+     * Creates the metrics, recording is off
+     */
+    public FetchMetrics() {
+        for (int i = 0; i < mHistograms.length; i++) {
+            mHistograms[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < mCounters.length; i++) {
+            mCounters[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Turns the recording on or off, the values recorded so far are kept
+     * @param enabled true to record
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    /**
+     * @return true when the stages and events are recorded
+     */
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * @return the time a stage starts in nanoseconds, 0 when recording is off
+     */
+    public long start() {
+        return mEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a stage that ends now
+     * @param stage the stage
+     * @param start the value returned by start() when the stage started, nothing is recorded for 0
+     */
+    public void record(Stage stage, long start) {
+        if (start != 0) {
+            mHistograms[stage.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the duration of a stage measured elsewhere, like a RequestTiming
+     * @param stage the stage
+     * @param nanos the duration in nanoseconds
+     */
+    public void recordNanos(Stage stage, long nanos) {
+        if (mEnabled) {
+            mHistograms[stage.ordinal()].record(nanos);
+        }
+    }
+
+    /**
+     * Counts an event
+     * @param counter the event
+     */
+    public void increment(Counter counter) {
+        if (mEnabled) {
+            mCounters[counter.ordinal()].incrementAndGet();
+        }
+    }
+
+    /**
+     * Adds to a counter
+     * @param counter the counter
+     * @param delta the value to add
+     */
+    public void add(Counter counter, long delta) {
+        if (mEnabled) {
+            mCounters[counter.ordinal()].addAndGet(delta);
+        }
+    }
+
+    /**
+     * @return a copy of the values recorded so far
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * forgets every value recorded
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : mHistograms) {
+            histogram.reset();
+        }
+        for (AtomicLong counter : mCounters) {
+            counter.set(0);
+        }
+    }
+
+    /**
+     * The values recorded at a point in time, they do not change afterwards.
+     */
+    public static class Snapshot {
+
+        private final LatencyHistogram[] mHistograms = new LatencyHistogram[STAGES.length];
+        private final long[] mCounters = new long[COUNTERS.length];
+
+        Snapshot(FetchMetrics metrics) {
+            for (int i = 0; i < mHistograms.length; i++) {
+                mHistograms[i] = metrics.mHistograms[i].copy();
+            }
+            for (int i = 0; i < mCounters.length; i++) {
+                mCounters[i] = metrics.mCounters[i].get();
+            }
+        }
+
+        /**
+         * @param stage the stage
+         * @return the durations of the stage, do not record in it
+         */
+        public LatencyHistogram getHistogram(Stage stage) {
+            return mHistograms[stage.ordinal()];
+        }
+
+        /**
+         * @param counter the counter
+         * @return its value
+         */
+        public long getCount(Counter counter) {
+            return mCounters[counter.ordinal()];
+        }
+
+        /**
+         * @return one line per stage then one per counter, to be logged or displayed
+         */
+        @Override
+        public String toString() {
+            StringBuilder dump = new StringBuilder(512);
+            for (Stage stage : STAGES) {
+                dump.append(stage).append(": ").append(getHistogram(stage)).append('\n');
+            }
+            for (Counter counter : COUNTERS) {
+                dump.append(counter).append(": ").append(getCount(counter)).append('\n');
+            }
+            return dump.toString();
+        }
+    }
+}
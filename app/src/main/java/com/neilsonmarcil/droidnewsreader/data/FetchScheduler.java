@@ -0,0 +1,201 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the requests of the whole application on a pool of worker threads. The requests
+ * waiting for a thread are ordered by priority: what the user is looking at goes before the
+ * prefetch, which goes before the background refresh. Within a priority the order of submission
+ * is kept. A request whose FetchHandle is cancelled while it waits is skipped.
+ * The number of threads can be changed while running, to follow an AdaptiveConcurrencyLimit.
+ * All the functions are thread-safe.
+ */
+public class FetchScheduler {
+
+    /**
+     * Represents the default number of worker threads, also the number of requests in flight
+     */
+    public static final int DEFAULT_THREADS = 4;
+
+    /**
+     * The priority classes, in decreasing order of priority.
+     */
+    public enum Priority {
+        /**
+         * the content displayed or about to be displayed
+         */
+        USER_VISIBLE,
+
+        /**
+         * the content the user will probably open
+         */
+        PREFETCH,
+
+        /**
+         * the revalidation of the content already displayed
+         */
+        BACKGROUND
+    }
+
+    /**
+     * the handle of the request running on the current worker thread
+     */
+    private static final ThreadLocal<FetchHandle> CURRENT = new ThreadLocal<>();
+
+    /**
+     * the worker threads and the queue of the requests waiting
+     */
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * gives the order of submission to keep it within a priority
+     */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /**
+     * Creates a scheduler with the default number of threads
+     */
+    public FetchScheduler() {
+        this(DEFAULT_THREADS);
+    }
+
+    /**
+     * Creates a scheduler
+     * @param threads the number of worker threads, must be greater than 0
+     */
+    public FetchScheduler(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be greater than 0");
+        }
+        mExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new WorkerThreadFactory());
+    }
+
+    /**
+     * Queues a request
+     * @param handle gives the priority, the request is skipped if it is cancelled before it starts
+     * @param request the request
+     * @param onSkipped called on a worker thread instead of the request when it is skipped, can
+     *                  be null
+     */
+    public void execute(FetchHandle handle, Runnable request, Runnable onSkipped) {
+        mExecutor.execute(new PrioritizedRequest(handle, request, onSkipped, mSequence.getAndIncrement()));
+    }
+
+    /**
+     * Changes the number of worker threads. More threads start right away when requests are
+     * waiting, the threads in excess stop once their current request is done.
+     * @param threads the number of worker threads, must be greater than 0
+     */
+    public void setConcurrency(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be greater than 0");
+        }
+
+        // the core size can never be above the max size, the order depends on the direction
+        synchronized (mExecutor) {
+            if (threads > mExecutor.getMaximumPoolSize()) {
+                mExecutor.setMaximumPoolSize(threads);
+                mExecutor.setCorePoolSize(threads);
+            }
+            else {
+                mExecutor.setCorePoolSize(threads);
+                mExecutor.setMaximumPoolSize(threads);
+            }
+        }
+    }
+
+    /**
+     * @return the number of worker threads
+     */
+    public int getConcurrency() {
+        return mExecutor.getCorePoolSize();
+    }
+
+    /**
+     * @return the number of requests waiting for a thread
+     */
+    public int getQueuedCount() {
+        return mExecutor.getQueue().size();
+    }
+
+    /**
+     * Returns the handle of the request running on the calling thread, a request can check it
+     * to stop early once it is cancelled
+     * @return the FetchHandle, null if the calling thread is not running a request
+     */
+    public static FetchHandle getCurrentHandle() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Stops the worker threads, the requests queued are still run
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * A request in the queue, ordered by priority then by submission.
+     */
+    private static class PrioritizedRequest implements Runnable, Comparable<PrioritizedRequest> {
+
+        private final FetchHandle mHandle;
+        private final Runnable mRequest;
+        private final Runnable mOnSkipped;
+        private final long mSequence;
+
+        PrioritizedRequest(FetchHandle handle, Runnable request, Runnable onSkipped, long sequence) {
+            mHandle = handle;
+            mRequest = request;
+            mOnSkipped = onSkipped;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            if (!mHandle.isCancelled()) {
+                CURRENT.set(mHandle);
+                try {
+                    mRequest.run();
+                }
+                finally {
+                    CURRENT.remove();
+                }
+            }
+            else if (mOnSkipped != null) {
+                mOnSkipped.run();
+            }
+        }
+
+        @Override
+        public int compareTo(PrioritizedRequest other) {
+            int byPriority = mHandle.getPriority().compareTo(other.mHandle.getPriority());
+            if (byPriority != 0) {
+                return byPriority;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Creates daemon worker threads with a recognizable name and a lower priority than the UI.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "droidnewsreader-fetch-" + mCount.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import java.io.IOException;
+
+/**
+ * Thrown by an HttpTransport when the host answers with a status other than 200. The status tells
+ * if the request is worth retrying.
+ */
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * the HTTP status received
+     */
+    private final int mStatus;
+
+    /**
+     * Creates the exception
+     * @param status the HTTP status received
+     * @param path the path requested
+     */
+    public HttpStatusException(int status, String path) {
+        super("HTTP " + status + " for " + path);
+        mStatus = status;
+    }
+
+    /**
+     * @return the HTTP status received
+     */
+    public int getStatus() {
+        return mStatus;
+    }
+}
@@ -0,0 +1,20 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import java.io.IOException;
+
+/**
+ * Performs the HTTP requests of the RESTDataLayer. The implementation decides how the connections
+ * are opened and kept, the tests can replace it with a stub.
+ */
+public interface HttpTransport {
+
+    /**
+     * Performs a GET and reads the whole body in the StreamBuffer of the calling thread. The
+     * content is only valid until the next request on the same thread.
+     * @param path the path relative to the base URL of the transport
+     * @param timing receives the time spent in each stage of the request, can be null
+     * @return the StreamBuffer holding the body
+     * @throws IOException if the request failed, an HttpStatusException if the status is not 200
+     */
+    StreamBuffer get(String path, RequestTiming timing) throws IOException;
+}
@@ -0,0 +1,92 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import java.util.Arrays;
+
+/**
+ * Parses a JSON array of integers, like the response of the Top Stories endpoint, in a single
+ * pass over the bytes. The digits are accumulated directly in an int, no String is created, and
+ * the values are written in an int[] that doubles when it is full.
+ */
+public class IntArrayParser {
+
+    /**
+     * Represents the average number of bytes used by an item id and its separator, used to size
+     * the array before parsing
+     */
+    private static final int BYTES_PER_ID = 9;
+
+    /**
+     * Parses the array contained in the bytes
+     * @param data the bytes, UTF-8 or ASCII
+     * @param offset the position of the first byte to read
+     * @param length the number of bytes to read
+     * @return the values in the order of the array, empty for []
+     * @throws NumberFormatException if the bytes are not a JSON array of integers
+     */
+    public static int[] parse(byte[] data, int offset, int length) {
+
+        int end = offset + length;
+        int i = skipWhitespace(data, offset, end);
+        if (i == end || data[i] != '[') {
+            throw new NumberFormatException("JSON array expected at " + i);
+        }
+
+        int[] values = new int[length / BYTES_PER_ID + 1];
+        int count = 0;
+
+        i = skipWhitespace(data, i + 1, end);
+        if (i < end && data[i] == ']') {
+            return new int[0];
+        }
+
+        while (i < end) {
+
+            // a value
+            boolean negative = data[i] == '-';
+            if (negative) {
+                i++;
+            }
+
+            int start = i;
+            int value = 0;
+            while (i < end && data[i] >= '0' && data[i] <= '9') {
+                int digit = data[i] - '0';
+                if (value > (Integer.MAX_VALUE - digit) / 10) {
+                    throw new NumberFormatException("Value too big at " + start);
+                }
+                value = value * 10 + digit;
+                i++;
+            }
+            if (i == start) {
+                throw new NumberFormatException("Digit expected at " + i);
+            }
+
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = negative ? -value : value;
+
+            // followed by a separator or the end of the array
+            i = skipWhitespace(data, i, end);
+            if (i < end && data[i] == ']') {
+                return count == values.length ? values : Arrays.copyOf(values, count);
+            }
+            if (i == end || data[i] != ',') {
+                throw new NumberFormatException("',' or ']' expected at " + i);
+            }
+            i = skipWhitespace(data, i + 1, end);
+        }
+
+        throw new NumberFormatException("Unterminated JSON array");
+    }
+
+    /**
+     * @return the position of the first byte that is not a JSON whitespace, end if there is none
+     */
+    private static int skipWhitespace(byte[] data, int i, int end) {
+        while (i < end && (data[i] == ' ' || data[i] == '\n' || data[i] == '\r' || data[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+}
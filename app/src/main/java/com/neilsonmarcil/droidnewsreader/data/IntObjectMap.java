@@ -0,0 +1,197 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import java.util.Arrays;
+
+/**
+ * A map from int to object using open addressing with linear probing. The keys are kept in an
+ * int[] next to an Object[] of values, so a lookup does not box the key and an insert does not
+ * allocate an entry. A null value marks an empty slot, null values cannot be stored.
+ * The table is kept at most half full: with linear probing a lookup, and above all a lookup of
+ * a missing key, then checks few slots. The two arrays still take less memory than the entries
+ * and the boxed keys of a HashMap holding the same items.
+ * This class is not synchronized.
+ */
+public class IntObjectMap<V> {
+
+    /**
+     * Represents the capacity used when none is given
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Represents the golden ratio used to spread the keys, item ids are sequential
+     */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    /**
+     * the keys, only valid where the value is not null
+     */
+    private int[] mKeys;
+
+    /**
+     * the values, null for an empty slot
+     */
+    private Object[] mValues;
+
+    /**
+     * the number of entries
+     */
+    private int mSize;
+
+    /**
+     * the number of entries that triggers the next resize, half of the capacity
+     */
+    private int mThreshold;
+
+    /**
+     * Creates an empty map with the default capacity
+     */
+    public IntObjectMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty map able to hold the expected number of entries without resizing
+     * @param expectedSize the expected number of entries
+     */
+    public IntObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 2) * 2 - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @param key the key
+     * @return the value, null if the key is not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = mValues.length - 1;
+        for (int i = slot(key, mask); mValues[i] != null; i = (i + 1) & mask) {
+            if (mKeys[i] == key) {
+                return (V)mValues[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param key the key
+     * @return true if the key is in the map
+     */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Adds or replaces the value for a key
+     * @param key the key
+     * @param value the value, cannot be null
+     * @return the previous value, null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("IntObjectMap cannot hold null values");
+        }
+
+        int mask = mValues.length - 1;
+        int i = slot(key, mask);
+        for (; mValues[i] != null; i = (i + 1) & mask) {
+            if (mKeys[i] == key) {
+                V previous = (V)mValues[i];
+                mValues[i] = value;
+                return previous;
+            }
+        }
+
+        mKeys[i] = key;
+        mValues[i] = value;
+        if (++mSize > mThreshold) {
+            resize(mValues.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Removes a key. The entries following it in the probe sequence are shifted back, the map
+     * never holds tombstones.
+     * @param key the key
+     * @return the value removed, null if the key was not in the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int mask = mValues.length - 1;
+        for (int i = slot(key, mask); mValues[i] != null; i = (i + 1) & mask) {
+            if (mKeys[i] == key) {
+                V removed = (V)mValues[i];
+                shiftBack(i, mask);
+                mSize--;
+                return removed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Removes every entry, the capacity is kept
+     */
+    public void clear() {
+        Arrays.fill(mValues, null);
+        mSize = 0;
+    }
+
+    /**
+     * empties the slot and moves back the following entries that are not at their home slot
+     */
+    private void shiftBack(int empty, int mask) {
+        mValues[empty] = null;
+        for (int i = (empty + 1) & mask; mValues[i] != null; i = (i + 1) & mask) {
+            int home = slot(mKeys[i], mask);
+
+            // the entry can move if its home slot is not between the empty slot and itself
+            boolean reachable = empty <= i ? (home > empty && home <= i) : (home > empty || home <= i);
+            if (!reachable) {
+                mKeys[empty] = mKeys[i];
+                mValues[empty] = mValues[i];
+                mValues[i] = null;
+                empty = i;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        int[] keys = mKeys;
+        Object[] values = mValues;
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for (int j = 0; j < values.length; j++) {
+            if (values[j] != null) {
+                int i = slot(keys[j], mask);
+                while (mValues[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                mKeys[i] = keys[j];
+                mValues[i] = values[j];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new int[capacity];
+        mValues = new Object[capacity];
+        mThreshold = capacity / 2;
+    }
+
+    private static int slot(int key, int mask) {
+        int h = key * HASH_MULTIPLIER;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,276 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+/**
+ * A memory cache for the items, bounded by an approximate size in bytes. When the budget is
+ * exceeded the least recently used items are evicted. The size of an item is given by a Sizer
+ * when it is added, it does not need to be exact.
+ * The items are indexed by id in an IntObjectMap and linked in access order, a lookup does not
+ * allocate. All the functions are synchronized, the cache can be shared by the fetcher threads.
+ * StripedItemCache splits the items over several instances to avoid contention on the lock.
+ */
+public class ItemCache<V> {
+
+    private static final String TAG = "droidnewsreader";
+
+    /**
+     * the entries by id
+     */
+    private final IntObjectMap<Entry<V>> mItems;
+
+    /**
+     * the least recently used entry, null when the cache is empty
+     */
+    private Entry<V> mEldest;
+
+    /**
+     * the most recently used entry, null when the cache is empty
+     */
+    private Entry<V> mNewest;
+
+    /**
+     * returns the approximate size of an item
+     */
+    private final Sizer<V> mSizer;
+
+    /**
+     * the budget in bytes
+     */
+    private final long mMaxSize;
+
+    /**
+     * the approximate size of the items in the cache
+     */
+    private long mSize;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    /**
+     * Creates an empty cache
+     * @param maxSize the budget in bytes, must be greater than 0
+     * @param sizer returns the approximate size of an item
+     */
+    public ItemCache(long maxSize, Sizer<V> sizer) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than 0");
+        }
+        mItems = new IntObjectMap<>();
+        mSizer = sizer;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Returns an item and marks it as the most recently used
+     * @param id the unique id
+     * @return the item, null if it is not in the cache
+     */
+    public synchronized V get(int id) {
+        Entry<V> entry = mItems.get(id);
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+
+        mHitCount++;
+        unlink(entry);
+        linkNewest(entry);
+        return entry.value;
+    }
+
+    /**
+     * Adds or replaces an item, the least recently used items are evicted if the budget is
+     * exceeded. An item bigger than the whole budget is not kept.
+     * @param id the unique id
+     * @param value the item, cannot be null
+     */
+    public synchronized void put(int id, V value) {
+        Entry<V> entry = mItems.get(id);
+        if (entry == null) {
+            entry = new Entry<>(id);
+            mItems.put(id, entry);
+        }
+        else {
+            mSize -= entry.size;
+            unlink(entry);
+        }
+
+        entry.value = value;
+        entry.size = mSizer.sizeOf(value);
+        mSize += entry.size;
+        linkNewest(entry);
+        trimTo(mMaxSize);
+    }
+
+    /**
+     * Removes an item, it is not counted as an eviction
+     * @param id the unique id
+     * @return the item removed, null if it was not in the cache
+     */
+    public synchronized V remove(int id) {
+        Entry<V> entry = mItems.remove(id);
+        if (entry == null) {
+            return null;
+        }
+        unlink(entry);
+        mSize -= entry.size;
+        return entry.value;
+    }
+
+    /**
+     * Evicts the least recently used items until the size is under the limit
+     * @param maxSize the size to reach in bytes, 0 to evict everything
+     */
+    public synchronized void trimToSize(long maxSize) {
+        trimTo(maxSize);
+    }
+
+    /**
+     * Releases memory according to the level received by ComponentCallbacks2.onTrimMemory(int).
+     * The cache is emptied when the process is likely to be killed and halved when the system
+     * is getting low on memory.
+     * @param level the level received by onTrimMemory(int)
+     */
+    public synchronized void onTrimMemory(int level) {
+        trimTo(trimTarget(level, mSize));
+        Log.d(TAG, "ItemCache.onTrimMemory(" + level + "): " + this);
+    }
+
+    /**
+     * Returns the size a cache should be trimmed to for a level of onTrimMemory(int)
+     * @param level the level received by onTrimMemory(int)
+     * @param size the current size in bytes
+     * @return 0 when the process is likely to be killed, half the size when the system is getting
+     * low on memory, the size otherwise
+     */
+    static long trimTarget(int level, long size) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 0;
+        }
+        else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return size / 2;
+        }
+        return size;
+    }
+
+    /**
+     * @return the approximate size of the items in the cache, in bytes
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return the number of items in the cache
+     */
+    public synchronized int getCount() {
+        return mItems.size();
+    }
+
+    /**
+     * @return the number of get(int) that found the item
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the number of get(int) that did not find the item
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the number of items evicted to respect the budget or after a trim
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ItemCache[count=" + mItems.size() + " size=" + mSize + "/" + mMaxSize +
+               " hits=" + mHitCount + " misses=" + mMissCount + " evictions=" + mEvictionCount + "]";
+    }
+
+    /**
+     * evicts the eldest items until the size is under the limit, the lock must be held
+     */
+    private void trimTo(long maxSize) {
+        while (mSize > maxSize && mEldest != null) {
+            Entry<V> eldest = mEldest;
+            unlink(eldest);
+            mItems.remove(eldest.id);
+            mSize -= eldest.size;
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * removes the entry from the access order list, the lock must be held
+     */
+    private void unlink(Entry<V> entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        }
+        else {
+            mEldest = entry.next;
+        }
+
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        else {
+            mNewest = entry.prev;
+        }
+
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    /**
+     * adds the entry at the most recently used end of the list, the lock must be held
+     */
+    private void linkNewest(Entry<V> entry) {
+        entry.prev = mNewest;
+        if (mNewest != null) {
+            mNewest.next = entry;
+        }
+        else {
+            mEldest = entry;
+        }
+        mNewest = entry;
+    }
+
+    /**
+     * An item in the cache and its place in the access order list
+     */
+    private static class Entry<V> {
+        final int id;
+        V value;
+        int size;
+        Entry<V> prev;
+        Entry<V> next;
+
+        Entry(int id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * Returns the approximate memory used by an item.
+     */
+    public interface Sizer<V> {
+        /**
+         * @param value the item
+         * @return the approximate size in bytes
+         */
+        int sizeOf(V value);
+    }
+}
@@ -0,0 +1,461 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import com.neilsonmarcil.droidnewsreader.dto.NewsComment;
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+
+import org.json.JSONException;
+
+/**
+ * Decodes an item of the REST API directly from the bytes of the response into a SingleNews or a
+ * NewsComment. The bytes are read once from left to right: the keys are compared to the known
+ * fields without creating a String, the known values are decoded in place and everything else
+ * is skipped. The UTF-8 strings are decoded in a char buffer kept by the decoder.
+ */
+public class ItemDecoder {
+
+    /**
+     * the known fields, their index is used as an identifier
+     */
+    private static final byte[][] KEYS = {
+            ascii("id"), ascii("by"), ascii("time"), ascii("title"), ascii("url"),
+            ascii("score"), ascii("kids"), ascii("text"), ascii("parent")
+    };
+
+    private static final int KEY_UNKNOWN = -1;
+    private static final int KEY_ID = 0;
+    private static final int KEY_BY = 1;
+    private static final int KEY_TIME = 2;
+    private static final int KEY_TITLE = 3;
+    private static final int KEY_URL = 4;
+    private static final int KEY_SCORE = 5;
+    private static final int KEY_KIDS = 6;
+    private static final int KEY_TEXT = 7;
+    private static final int KEY_PARENT = 8;
+
+    /**
+     * Represents the initial size of the char buffer used to decode the strings
+     */
+    private static final int INITIAL_CHARS = 256;
+
+    /**
+     * one decoder per thread, the char buffer is reused from one item to the next
+     */
+    private static final ThreadLocal<ItemDecoder> POOL = new ThreadLocal<ItemDecoder>() {
+        @Override
+        protected ItemDecoder initialValue() {
+            return new ItemDecoder();
+        }
+    };
+
+    private byte[] mData;
+    private int mPos;
+    private int mEnd;
+
+    /**
+     * the buffer receiving the decoded characters of a string
+     */
+    private char[] mChars = new char[INITIAL_CHARS];
+
+    /**
+     * Decodes a story
+     * @param data the bytes of the response
+     * @param offset the position of the first byte
+     * @param length the number of bytes
+     * @return the SingleNews, the missing strings are empty and the missing kids are an empty array
+     * @throws JSONException if the bytes are not a JSON object
+     */
+    public static SingleNews decodeNews(byte[] data, int offset, int length) throws JSONException {
+
+        ItemDecoder d = POOL.get().reset(data, offset, length);
+        SingleNews news = new SingleNews();
+        news.Title = "";
+        news.Author = "";
+        news.Url = "";
+        news.Comments = new int[0];
+
+        d.beginObject();
+        while (d.hasNextField()) {
+            switch (d.nextKey()) {
+                case KEY_ID:    news.Id = (int)d.nextLong(); break;
+                case KEY_BY:    news.Author = d.nextString(); break;
+                case KEY_TIME:  news.Date = d.nextLong(); break;
+                case KEY_TITLE: news.Title = d.nextString(); break;
+                case KEY_URL:   news.Url = d.nextString(); break;
+                case KEY_SCORE: news.Score = (int)d.nextLong(); break;
+                case KEY_KIDS:  news.Comments = d.nextIntArray(); break;
+                default:        d.skipValue(); break;
+            }
+        }
+        d.release();
+
+        return news;
+    }
+
+    /**
+     * Decodes a comment
+     * @param data the bytes of the response
+     * @param offset the position of the first byte
+     * @param length the number of bytes
+     * @return the NewsComment, the missing strings are empty and the missing kids are an empty array
+     * @throws JSONException if the bytes are not a JSON object
+     */
+    public static NewsComment decodeComment(byte[] data, int offset, int length) throws JSONException {
+
+        ItemDecoder d = POOL.get().reset(data, offset, length);
+        NewsComment comment = new NewsComment();
+        comment.Author = "";
+        comment.Body = "";
+        comment.CommentsIds = new int[0];
+
+        d.beginObject();
+        while (d.hasNextField()) {
+            switch (d.nextKey()) {
+                case KEY_ID:     comment.Id = (int)d.nextLong(); break;
+                case KEY_BY:     comment.Author = d.nextString(); break;
+                case KEY_TIME:   comment.Date = d.nextLong(); break;
+                case KEY_TEXT:   comment.Body = d.nextString(); break;
+                case KEY_PARENT: comment.ParentId = (int)d.nextLong(); break;
+                case KEY_KIDS:   comment.CommentsIds = d.nextIntArray(); break;
+                default:         d.skipValue(); break;
+            }
+        }
+        d.release();
+
+        return comment;
+    }
+
+    private ItemDecoder reset(byte[] data, int offset, int length) {
+        mData = data;
+        mPos = offset;
+        mEnd = offset + length;
+        return this;
+    }
+
+    /**
+     * the decoder does not keep a reference to the response after decoding
+     */
+    private void release() {
+        mData = null;
+    }
+
+    private void beginObject() throws JSONException {
+        expect('{');
+    }
+
+    /**
+     * Moves to the next field of the object
+     * @return false when the end of the object is reached
+     */
+    private boolean hasNextField() throws JSONException {
+        int c = peek();
+        if (c == '}') {
+            mPos++;
+            return false;
+        }
+        if (c == ',') {
+            mPos++;
+            peek();
+        }
+        return true;
+    }
+
+    /**
+     * Reads a key and the ':' following it
+     * @return the index of the key in KEYS, KEY_UNKNOWN if it is not a known field
+     */
+    private int nextKey() throws JSONException {
+        expect('"');
+        int start = mPos;
+        int end = findStringEnd(start);
+        mPos = end + 1;
+        expect(':');
+
+        int length = end - start;
+        for (int k = 0; k < KEYS.length; k++) {
+            if (regionMatches(start, length, KEYS[k])) {
+                return k;
+            }
+        }
+        return KEY_UNKNOWN;
+    }
+
+    /**
+     * Reads a number, null is read as 0
+     */
+    private long nextLong() throws JSONException {
+        if (peek() == 'n') {
+            skipValue();
+            return 0;
+        }
+
+        boolean negative = mData[mPos] == '-';
+        if (negative) {
+            mPos++;
+        }
+
+        int start = mPos;
+        long value = 0;
+        while (mPos < mEnd && mData[mPos] >= '0' && mData[mPos] <= '9') {
+            value = value * 10 + (mData[mPos++] - '0');
+        }
+        if (mPos == start) {
+            throw new JSONException("Number expected at " + mPos);
+        }
+
+        // the API only returns integers, a fraction or an exponent is ignored
+        skipNumberRest();
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads a string and decodes the escapes and the UTF-8 sequences, null is read as ""
+     */
+    private String nextString() throws JSONException {
+        if (peek() == 'n') {
+            skipValue();
+            return "";
+        }
+        expect('"');
+
+        int count = 0;
+        while (true) {
+            if (mPos >= mEnd) {
+                throw new JSONException("Unterminated string");
+            }
+            if (count + 2 > mChars.length) {
+                char[] bigger = new char[mChars.length * 2];
+                System.arraycopy(mChars, 0, bigger, 0, count);
+                mChars = bigger;
+            }
+
+            int b = mData[mPos++] & 0xff;
+            if (b == '"') {
+                return new String(mChars, 0, count);
+            }
+            else if (b == '\\') {
+                count = decodeEscape(count);
+            }
+            else if (b < 0x80) {
+                mChars[count++] = (char)b;
+            }
+            else {
+                count = decodeUtf8(b, count);
+            }
+        }
+    }
+
+    /**
+     * Reads an array of integers, null is read as an empty array
+     */
+    private int[] nextIntArray() throws JSONException {
+        if (peek() == 'n') {
+            skipValue();
+            return new int[0];
+        }
+
+        int start = mPos;
+        int end = start;
+        while (end < mEnd && mData[end] != ']') {
+            end++;
+        }
+        if (end == mEnd) {
+            throw new JSONException("Unterminated array");
+        }
+
+        try {
+            int[] values = IntArrayParser.parse(mData, start, end + 1 - start);
+            mPos = end + 1;
+            return values;
+        }
+        catch (NumberFormatException ex) {
+            throw new JSONException("Array of integers expected at " + start + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Skips any value, including objects and arrays
+     */
+    private void skipValue() throws JSONException {
+        int c = peek();
+        if (c == '"') {
+            mPos = findStringEnd(mPos + 1) + 1;
+        }
+        else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                if (mPos >= mEnd) {
+                    throw new JSONException("Unterminated value");
+                }
+                int b = mData[mPos++];
+                if (b == '"') {
+                    mPos = findStringEnd(mPos) + 1;
+                }
+                else if (b == '{' || b == '[') {
+                    depth++;
+                }
+                else if (b == '}' || b == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+        }
+        else {
+            // a number, true, false or null
+            int start = mPos;
+            while (mPos < mEnd && mData[mPos] != ',' && mData[mPos] != '}' && mData[mPos] != ']'
+                    && !isWhitespace(mData[mPos])) {
+                mPos++;
+            }
+            if (mPos == start) {
+                throw new JSONException("Value expected at " + start);
+            }
+        }
+    }
+
+    /**
+     * @return the position of the closing quote of the string starting at start
+     */
+    private int findStringEnd(int start) throws JSONException {
+        for (int i = start; i < mEnd; i++) {
+            if (mData[i] == '\\') {
+                i++;
+            }
+            else if (mData[i] == '"') {
+                return i;
+            }
+        }
+        throw new JSONException("Unterminated string");
+    }
+
+    /**
+     * decodes the escape following a backslash, the char buffer has room for 2 chars
+     * @return the new number of chars
+     */
+    private int decodeEscape(int count) throws JSONException {
+        if (mPos >= mEnd) {
+            throw new JSONException("Unterminated escape");
+        }
+
+        int c = mData[mPos++];
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/': mChars[count++] = (char)c; break;
+            case 'b': mChars[count++] = '\b'; break;
+            case 'f': mChars[count++] = '\f'; break;
+            case 'n': mChars[count++] = '\n'; break;
+            case 'r': mChars[count++] = '\r'; break;
+            case 't': mChars[count++] = '\t'; break;
+            case 'u':
+                if (mPos + 4 > mEnd) {
+                    throw new JSONException("Unterminated unicode escape");
+                }
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(mData[mPos++], 16);
+                    if (digit < 0) {
+                        throw new JSONException("Invalid unicode escape at " + mPos);
+                    }
+                    value = (value << 4) | digit;
+                }
+                mChars[count++] = (char)value;
+                break;
+            default:
+                throw new JSONException("Invalid escape at " + mPos);
+        }
+        return count;
+    }
+
+    /**
+     * decodes a UTF-8 sequence starting with the byte b, the char buffer has room for 2 chars.
+     * An invalid sequence is decoded as U+FFFD.
+     * @return the new number of chars
+     */
+    private int decodeUtf8(int b, int count) {
+        int extra;
+        int codePoint;
+        if (b >= 0xf0 && b <= 0xf4) {
+            extra = 3;
+            codePoint = b & 0x07;
+        }
+        else if (b >= 0xe0) {
+            extra = 2;
+            codePoint = b & 0x0f;
+        }
+        else if (b >= 0xc2) {
+            extra = 1;
+            codePoint = b & 0x1f;
+        }
+        else {
+            mChars[count++] = '\uFFFD';
+            return count;
+        }
+
+        for (int i = 0; i < extra; i++) {
+            if (mPos >= mEnd || (mData[mPos] & 0xc0) != 0x80) {
+                mChars[count++] = '\uFFFD';
+                return count;
+            }
+            codePoint = (codePoint << 6) | (mData[mPos++] & 0x3f);
+        }
+
+        if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            mChars[count++] = Character.highSurrogate(codePoint);
+            mChars[count++] = Character.lowSurrogate(codePoint);
+        }
+        else {
+            mChars[count++] = (char)codePoint;
+        }
+        return count;
+    }
+
+    private void skipNumberRest() {
+        while (mPos < mEnd && (mData[mPos] == '.' || mData[mPos] == 'e' || mData[mPos] == 'E'
+                || mData[mPos] == '+' || mData[mPos] == '-' || (mData[mPos] >= '0' && mData[mPos] <= '9'))) {
+            mPos++;
+        }
+    }
+
+    /**
+     * Skips the whitespace and returns the next byte without consuming it
+     */
+    private int peek() throws JSONException {
+        while (mPos < mEnd && isWhitespace(mData[mPos])) {
+            mPos++;
+        }
+        if (mPos >= mEnd) {
+            throw new JSONException("Unexpected end of item");
+        }
+        return mData[mPos];
+    }
+
+    private void expect(char c) throws JSONException {
+        if (peek() != c) {
+            throw new JSONException("'" + c + "' expected at " + mPos);
+        }
+        mPos++;
+    }
+
+    private boolean regionMatches(int start, int length, byte[] key) {
+        if (length != key.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (mData[start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte)s.charAt(i);
+        }
+        return bytes;
+    }
+}
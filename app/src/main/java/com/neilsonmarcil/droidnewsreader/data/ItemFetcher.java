@@ -0,0 +1,189 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import android.util.Log;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches a batch of items concurrently on the worker threads of a FetchScheduler. The scheduler
+ * can be shared by several fetchers, the number of requests in flight is then capped for the
+ * whole application and the batches are served in the order of their priority, so two screens
+ * loading at once cannot flood the host.
+ * The number of worker threads is the cap on the requests in flight: a load holds its thread
+ * until it is done and the others wait in the queue of the scheduler, there is no other limit.
+ * FetchScheduler.setConcurrency(int) changes it while running.
+ */
+public class ItemFetcher {
+
+    private static final String TAG = "droidnewsreader";
+
+    /**
+     * the handle used by the batches that do not give one, it is never cancelled
+     */
+    private static final FetchHandle DEFAULT_HANDLE = new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+
+    /**
+     * runs the requests
+     */
+    private final FetchScheduler mScheduler;
+
+    /**
+     * Creates a fetcher with its own FetchScheduler
+     */
+    public ItemFetcher() {
+        this(new FetchScheduler());
+    }
+
+    /**
+     * Creates a fetcher
+     * @param scheduler runs the requests
+     */
+    public ItemFetcher(FetchScheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+    /**
+     * @return the scheduler running the requests
+     */
+    public FetchScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * Loads every id with the user visible priority, see fetch(int[], FetchHandle, Loader, Callback)
+     */
+    public <T> int fetch(int[] ids, Loader<T> loader, Callback<T> callback) {
+        return fetch(ids, DEFAULT_HANDLE, loader, callback);
+    }
+
+    /**
+     * Loads every id with the Loader and reports each result to the Callback. This call blocks
+     * until every item is either loaded or failed. The Callback is called from the worker threads,
+     * in completion order, the index received is the position of the id in the array.
+     * When the handle is cancelled the items not started yet fail with a CancellationException,
+     * the ones already started are still reported. If the calling thread is interrupted the
+     * function returns right away.
+     * @param ids the ids to load
+     * @param handle the priority of the requests and the flag to cancel them
+     * @param loader loads a single item, called on a worker thread
+     * @param callback receives the result for every id
+     * @return the number of items that failed to load, including the cancelled ones
+     */
+    public <T> int fetch(int[] ids, FetchHandle handle, Loader<T> loader, Callback<T> callback) {
+        final AtomicInteger failures = new AtomicInteger();
+        fetch(ids, handle, loader, callback, failures, 0);
+        return failures.get();
+    }
+
+    /**
+     * Same as fetch(int[], FetchHandle, Loader, Callback) but stops waiting after a timeout. The
+     * items still loading are reported to the Callback when they are done, after this call
+     * returned, the caller decides what to do with them.
+     * @param ids the ids to load
+     * @param handle the priority of the requests and the flag to cancel them
+     * @param loader loads a single item, called on a worker thread
+     * @param callback receives the result for every id
+     * @param timeoutMillis the time to wait for the whole batch, in milliseconds
+     * @return true if every item was reported before the timeout
+     */
+    public <T> boolean fetch(int[] ids, FetchHandle handle, Loader<T> loader, Callback<T> callback,
+                             long timeoutMillis) {
+        return fetch(ids, handle, loader, callback, new AtomicInteger(), timeoutMillis);
+    }
+
+    /**
+     * queues every id and waits for the results
+     * @param timeoutMillis the time to wait, 0 to wait until every item is reported
+     * @return true if every item was reported
+     */
+    private <T> boolean fetch(int[] ids, FetchHandle handle, final Loader<T> loader, final Callback<T> callback,
+                              final AtomicInteger failures, long timeoutMillis) {
+
+        final CountDownLatch done = new CountDownLatch(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            final int index = i;
+            final int id = ids[i];
+            mScheduler.execute(handle, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        T item = loader.load(id);
+                        callback.onItem(index, id, item);
+                    }
+                    catch (Exception ex) {
+                        failures.incrementAndGet();
+                        callback.onFailure(index, id, ex);
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    failures.incrementAndGet();
+                    callback.onFailure(index, id, new CancellationException("Request cancelled"));
+                    done.countDown();
+                }
+            });
+        }
+
+        try {
+            if (timeoutMillis <= 0) {
+                done.await();
+                return true;
+            }
+            return done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ex) {
+            Log.w(TAG, "ItemFetcher.fetch(...) interrupted while waiting for the results");
+            Thread.currentThread().interrupt();
+        }
+
+        return false;
+    }
+
+    /**
+     * Stops the worker threads of the scheduler, the requests already queued are completed.
+     */
+    public void shutdown() {
+        mScheduler.shutdown();
+    }
+
+    /**
+     * Loads a single item, can throw to report a failure for that item only.
+     */
+    public interface Loader<T> {
+        /**
+         * load the item
+         * @param id the unique id
+         * @return the item, never null
+         * @throws Exception if the item cannot be loaded
+         */
+        T load(int id) throws Exception;
+    }
+
+    /**
+     * Receives the result of every item in a batch.
+     */
+    public interface Callback<T> {
+        /**
+         * called when an item is loaded
+         * @param index the position of the id in the batch
+         * @param id the unique id
+         * @param item the loaded item
+         */
+        void onItem(int index, int id, T item);
+
+        /**
+         * called when an item could not be loaded, the rest of the batch is not affected
+         * @param index the position of the id in the batch
+         * @param id the unique id
+         * @param ex the reason
+         */
+        void onFailure(int index, int id, Exception ex);
+    }
+}
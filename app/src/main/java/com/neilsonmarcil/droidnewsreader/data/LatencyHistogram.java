@@ -0,0 +1,158 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in buckets growing by powers of 2 of microseconds: the first bucket is under
+ * 1 microsecond, the last one holds everything above 2^30 microseconds. Recording is a few atomic
+ * increments and never allocates, the percentiles are the upper bound of their bucket so they are
+ * accurate within a factor of 2, enough to tell a slow stage from a fast one.
+ * All the functions are thread-safe, a copy taken while durations are recorded can miss the last
+ * ones.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Represents the number of buckets
+     */
+    private static final int BUCKETS = 32;
+
+    /**
+     * the number of durations in each bucket
+     */
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * the number of durations, their sum and the longest one, in nanoseconds
+     */
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Records a duration
+     * @param nanos the duration in nanoseconds, a negative one is counted as 0
+     */
+    public void record(long nanos) {
+        long duration = Math.max(0, nanos);
+        mBuckets.incrementAndGet(bucketOf(duration));
+        mCount.incrementAndGet();
+        mSum.addAndGet(duration);
+
+        long max = mMax.get();
+        while (duration > max && !mMax.compareAndSet(max, duration)) {
+            max = mMax.get();
+        }
+    }
+
+    /**
+     * @return the number of durations recorded
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * @return the sum of the durations, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return mSum.get();
+    }
+
+    /**
+     * @return the average duration in nanoseconds, 0 if there is none
+     */
+    public long getMeanNanos() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mSum.get() / count;
+    }
+
+    /**
+     * @return the longest duration in nanoseconds
+     */
+    public long getMaxNanos() {
+        return mMax.get();
+    }
+
+    /**
+     * Returns the duration under which a share of the durations fall
+     * @param percentile the share, between 0 and 100
+     * @return the upper bound of the bucket holding the percentile in nanoseconds, never more than
+     * the longest duration, 0 if there is none
+     */
+    public long getPercentileNanos(double percentile) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += mBuckets.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long)Math.ceil(count * Math.max(0, Math.min(100, percentile)) / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mBuckets.get(i);
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(upperBoundOf(i), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    /**
+     * @return a copy of the durations recorded so far
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        for (int i = 0; i < BUCKETS; i++) {
+            copy.mBuckets.set(i, mBuckets.get(i));
+        }
+        copy.mCount.set(mCount.get());
+        copy.mSum.set(mSum.get());
+        copy.mMax.set(mMax.get());
+        return copy;
+    }
+
+    /**
+     * forgets every duration recorded
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + " mean=" + format(getMeanNanos()) + " p50=" +
+               format(getPercentileNanos(50)) + " p90=" + format(getPercentileNanos(90)) + " p99=" +
+               format(getPercentileNanos(99)) + " max=" + format(getMaxNanos());
+    }
+
+    /**
+     * @return the bucket of a duration: the number of bits of its microseconds
+     */
+    private static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * @return the longest duration of a bucket in nanoseconds
+     */
+    private static long upperBoundOf(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : ((1L << bucket) * 1000) - 1;
+    }
+
+    /**
+     * @return a duration in microseconds or milliseconds, whatever is the most readable
+     */
+    private static String format(long nanos) {
+        return nanos < 1000000 ? nanos / 1000 + "us" : nanos / 1000000 + "ms";
+    }
+}
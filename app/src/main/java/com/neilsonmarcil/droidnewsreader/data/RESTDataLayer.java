@@ -3,129 +3,316 @@ package com.neilsonmarcil.droidnewsreader.data;
 import android.util.Log;
 import com.neilsonmarcil.droidnewsreader.dto.NewsComment;
 import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+import com.neilsonmarcil.droidnewsreader.dto.TopStoriesUpdate;
 import org.json.JSONException;
-import org.json.JSONObject;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.concurrent.Callable;
 
 /**
  * This class specializes in getting content from a REST API. It is built to be a Singleton to
  * be able to cache data and do optimizing work later.
+ * The instance is thread-safe: it is used from the UI thread, the AsyncTasks and the fetcher
+ * threads at the same time. The memory caches are striped, the loads of an id are shared with a
+ * SingleFlight and the settings are volatile, no function holds a lock while downloading.
  */
 public class RESTDataLayer implements DataLayer {
 
     private static final String TAG = "droidnewsreader";
 
     /**
-     * the unique instance.
+     * Holds the unique instance, the class loader creates it once on the first call to
+     * getInstance() whatever the calling thread.
      */
-    private static RESTDataLayer mInstance;
+    private static class InstanceHolder {
+        static final RESTDataLayer INSTANCE = new RESTDataLayer();
+    }
 
     /**
-     * Returns a new RESTDataLayer instance.
-     * @return
+     * Returns the unique RESTDataLayer instance, can be called from any thread.
+     * @return the RESTDataLayer
      */
     public static RESTDataLayer getInstance() {
-        if (mInstance == null) {
-            mInstance = new RESTDataLayer();
-        }
-        return mInstance;
+        return InstanceHolder.INSTANCE;
     }
 
     /**
-     * Represents the Top Stories Endpoint URL
+     * Represents the base URL of the REST API
      */
-    private static final String TOP_STORIES_ENDPOINT = "https://hacker-news.firebaseio.com/v0/topstories.json";
+    private static final String API_BASE_URL = "https://hacker-news.firebaseio.com/v0/";
 
     /**
-     * Represents the Item Endpoint URL
+     * Represents the Top Stories Endpoint path
      */
-    private static final String ITEMS_ENDPOINT = "https://hacker-news.firebaseio.com/v0/item/%d.json";
+    private static final String TOP_STORIES_ENDPOINT = "topstories.json";
 
     /**
-     * Represents the default buffer size to read the response from the REST resource
+     * Represents the Item Endpoint path
      */
-    private static final int BUFFER_SIZE = 1024;
+    private static final String ITEMS_ENDPOINT = "item/%d.json";
 
     /**
-     * Represents the byte value of the beginning of an Array
+     * Represents the number of comments to retreive
      */
-    private static final int BEGINNING_ARRAY = 91;
+    private static final int MAX_COMMENTS = 10;
 
     /**
-     * Represents the byte value of the end of an Array
+     * Represents the number of replies to retreive for each comment
      */
-    private static final int END_ARRAY = 93;
+    private static final int MAX_REPLIES = 1;
 
     /**
-     * Represents the text representation for the beginning of an array in JSON
+     * Represents the number of levels of comments to retreive, the comments and their replies
      */
-    private static final String STR_BEGINNING_ARRAY = new String(new byte[] { BEGINNING_ARRAY });
+    private static final int MAX_COMMENTS_DEPTH = 2;
 
     /**
-     * Represents the text representation for the end of an array in JSON
+     * Represents the share of the max heap size the stories can use in memory
      */
-    private static final String STR_END_ARRAY = new String(new byte[] { END_ARRAY });
+    private static final int STORIES_MEMORY_DIVIDER = 32;
 
     /**
-     * Represents the byte value of an element separator
+     * Represents the share of the max heap size the comments can use in memory, the comments
+     * body are much bigger than the stories
      */
-    private static final int ELEMENT_SEPARATOR = 44;
+    private static final int COMMENTS_MEMORY_DIVIDER = 16;
 
     /**
-     * Represents the number of max stories to load by default
+     * Represents the approximate memory used by a SingleNews, excluding the strings and arrays
      */
-    private static final int MAX_STORIES = 500;
+    private static final int STORY_OVERHEAD = 64;
 
     /**
-     * Represents the number of comments to retreive
+     * Represents the approximate memory used by a NewsComment, excluding the strings and arrays
      */
-    private static final int MAX_COMMENTS = 10;
+    private static final int COMMENT_OVERHEAD = 56;
+
+    /**
+     * Hold the stories already downloaded, the least recently used are evicted
+     */
+    private final StripedItemCache<SingleNews> mStories;
+
+    /**
+     * Hold the comments already downloaded, the least recently used are evicted
+     */
+    private final StripedItemCache<NewsComment> mComments;
+
+    /**
+     * the ranking of the Top Stories last downloaded, null until the first download
+     */
+    private volatile int[] mTopStoriesIds;
+
+    /**
+     * downloads the items in parallel
+     */
+    private final ItemFetcher mFetcher;
+
+    /**
+     * retrieve the batches of items, the ones in memory without a request
+     */
+    private final BatchFetcher<SingleNews> mNewsBatch;
+    private final BatchFetcher<NewsComment> mCommentBatch;
+
+    /**
+     * shares the download of an item between the threads asking for it at the same time
+     */
+    private final SingleFlight<SingleNews> mNewsFlight = new SingleFlight<>();
+    private final SingleFlight<NewsComment> mCommentFlight = new SingleFlight<>();
+
+    /**
+     * keeps the items between launches, null when there is no disk cache
+     */
+    private volatile DiskItemCache mDiskCache;
+
+    /**
+     * performs the HTTP requests
+     */
+    private final HttpTransport mTransport;
+
+    /**
+     * receives the timing of every request, null when nobody listens
+     */
+    private volatile RequestListener mRequestListener;
 
     /**
-     * Hold all the stories already downloaded
+     * sizes the worker threads of the fetcher from the latency and the failures of the requests
      */
-    private HashMap<Integer, SingleNews> mStories;
+    private final AdaptiveConcurrencyLimit mConcurrencyLimit;
 
     /**
-     * Hold all the comments already downloaded
+     * decides which failed requests are attempted again
      */
-    private HashMap<Integer, NewsComment> mComments;
+    private volatile RetryPolicy mRetryPolicy = new RetryPolicy();
+
+    /**
+     * records the time of each stage of the loads and counts the events, off by default
+     */
+    private final FetchMetrics mMetrics = new FetchMetrics();
 
     /**
      * protecting the constructor, usage of getInstance() is mandatory
      */
     protected RESTDataLayer() {
-        mStories = new HashMap<>();
-        mComments = new HashMap<>();
+        this(new UrlConnectionTransport(API_BASE_URL));
+
+        // the single instance of the process, the connection pool is configured once
+        UrlConnectionTransport.configurePool(AdaptiveConcurrencyLimit.DEFAULT_MAX_LIMIT);
+    }
+
+    /**
+     * Creates a data layer using a specific transport, the tests use it with a stub
+     * @param transport performs the HTTP requests, the paths are relative to the API base URL
+     */
+    protected RESTDataLayer(HttpTransport transport) {
+        mTransport = transport;
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        mStories = new StripedItemCache<>(maxMemory / STORIES_MEMORY_DIVIDER, new ItemCache.Sizer<SingleNews>() {
+            @Override
+            public int sizeOf(SingleNews news) {
+                return STORY_OVERHEAD + approximateSize(news.Title) + approximateSize(news.Author) +
+                       approximateSize(news.Url) + approximateSize(news.Comments);
+            }
+        });
+        mComments = new StripedItemCache<>(maxMemory / COMMENTS_MEMORY_DIVIDER, new ItemCache.Sizer<NewsComment>() {
+            @Override
+            public int sizeOf(NewsComment comment) {
+                return COMMENT_OVERHEAD + approximateSize(comment.Author) +
+                       approximateSize(comment.Body) + approximateSize(comment.CommentsIds);
+            }
+        });
+        mFetcher = new ItemFetcher();
+        mConcurrencyLimit = new AdaptiveConcurrencyLimit(FetchScheduler.DEFAULT_THREADS, new AdaptiveConcurrencyLimit.Listener() {
+            @Override
+            public void onLimitChanged(int limit) {
+                mFetcher.getScheduler().setConcurrency(limit);
+            }
+        });
+        mNewsBatch = new BatchFetcher<>(mFetcher, mStories, new ItemFetcher.Loader<SingleNews>() {
+            @Override
+            public SingleNews load(int id) throws Exception {
+                return loadNews(id, false, false);
+            }
+        }, mMetrics);
+        mCommentBatch = new BatchFetcher<>(mFetcher, mComments, new ItemFetcher.Loader<NewsComment>() {
+            @Override
+            public NewsComment load(int id) throws Exception {
+                return loadComment(id, false);
+            }
+        }, mMetrics);
+    }
+
+    /**
+     * Sets the listener receiving the time spent in each stage of every request. It is called on
+     * the thread doing the request, it takes effect for the requests started after this call.
+     * @param listener the RequestListener, null to stop timing the requests
+     */
+    public void setRequestListener(RequestListener listener) {
+        mRequestListener = listener;
+    }
+
+    /**
+     * Sets the policy deciding which failed requests are attempted again, it takes effect for the
+     * requests started after this call
+     * @param policy the RetryPolicy, new RetryPolicy(1, 0, 0) to never retry
+     */
+    public void setRetryPolicy(RetryPolicy policy) {
+        mRetryPolicy = policy;
+    }
+
+    /**
+     * Sets the disk cache used to keep the items between launches, it takes effect for the loads
+     * started after this call. The expired records are purged in the background when the first
+     * one is set.
+     * @param cache the DiskItemCache, null to use the memory only
+     */
+    public void setDiskCache(final DiskItemCache cache) {
+        DiskItemCache previous = mDiskCache;
+        mDiskCache = cache;
+        if (cache == null || previous != null) {
+            return;
+        }
+
+        // once per launch is enough to keep the disk cache small, away from the loads
+        mFetcher.getScheduler().execute(new FetchHandle(FetchScheduler.Priority.BACKGROUND), new Runnable() {
+            @Override
+            public void run() {
+                cache.purgeExpired();
+            }
+        }, null);
+    }
+
+    /**
+     * Releases the items in memory according to the level received by
+     * ComponentCallbacks2.onTrimMemory(int)
+     * @param level the level received by onTrimMemory(int)
+     */
+    public void onTrimMemory(int level) {
+        mStories.onTrimMemory(level);
+        mComments.onTrimMemory(level);
+    }
+
+    /**
+     * @return the scheduler running the requests of this data layer, to queue other requests
+     * with a priority
+     */
+    public FetchScheduler getScheduler() {
+        return mFetcher.getScheduler();
+    }
+
+    /**
+     * @return the metrics of the loads, to turn the recording on and read the values
+     */
+    public FetchMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * @return the limit sizing the worker threads, to read its counters
+     */
+    public AdaptiveConcurrencyLimit getConcurrencyLimit() {
+        return mConcurrencyLimit;
+    }
+
+    /**
+     * @return the memory cache of the stories, to read its counters
+     */
+    public StripedItemCache<SingleNews> getStoriesCache() {
+        return mStories;
+    }
+
+    /**
+     * @return the memory cache of the comments, to read its counters
+     */
+    public StripedItemCache<NewsComment> getCommentsCache() {
+        return mComments;
     }
 
     @Override
     public SingleNews[] getTopStories() {
+        return collectStories(0, MAX_STORIES, true);
+    }
 
-        SingleNews[] topStories = new SingleNews[0];
+    @Override
+    public void getTopStories(StoriesListener listener) {
+        getTopStoriesIds();
+        getTopStories(0, MAX_STORIES, listener);
+    }
+
+    @Override
+    public int[] getTopStoriesIds() {
 
         try {
             // call the URL over the internet
-            URL url = new URL(TOP_STORIES_ENDPOINT);
-            URLConnection conn = url.openConnection();
-
-            // reading the stream
-            byte[] content = getStreamContent(conn.getInputStream());
+            StreamBuffer content = request(TOP_STORIES_ENDPOINT);
 
             // getting the item id from the endpoint
-            int[] items = extractIntFromArray(content);
-            int limit = Math.min(items.length, MAX_STORIES);
-            topStories = new SingleNews[limit];
+            int[] items = IntArrayParser.parse(content.getData(), 0, content.getLength());
+            mTopStoriesIds = items;
 
-            for (int i = 0; i < limit; i++) {
-                topStories[i] = getSpecificNews(items[i]);
-            }
+            return items;
         }
         catch (MalformedURLException ex) {
             Log.e(TAG, "URL for Top Stories Endpoint malformed", ex);
@@ -133,85 +320,163 @@ public class RESTDataLayer implements DataLayer {
         catch (IOException ex) {
             Log.e(TAG, "Problem with the communication with the host", ex);
         }
+        catch (NumberFormatException ex) {
+            Log.e(TAG, "Top Stories received from host are not valid", ex);
+        }
 
-        return topStories;
+        return new int[0];
     }
 
     @Override
-    public SingleNews getSpecificNews(int id) {
+    public SingleNews[] getTopStories(int offset, int count) {
+        return collectStories(offset, count, false);
+    }
 
-        Log.d(TAG, "RESTDataLayer.getSpecificNews(" + id + "): call");
+    @Override
+    public void getTopStories(int offset, int count, StoriesListener listener) {
+        getTopStories(offset, count, listener, new FetchHandle(FetchScheduler.Priority.USER_VISIBLE));
+    }
 
-        if (mStories.containsKey(id)) {
-            return mStories.get(id);
+    @Override
+    public void getTopStories(int offset, int count, StoriesListener listener, FetchHandle handle) {
+
+        int[] ids = mTopStoriesIds;
+        if (ids == null) {
+            ids = getTopStoriesIds();
         }
-        else {
-            try {
-                // getting the specific id for
-                URL url = new URL(String.format(ITEMS_ENDPOINT, id));
-                URLConnection conn = url.openConnection();
-
-                // reading the content
-                byte[] content = getStreamContent(conn.getInputStream());
-
-                // using JSON stuff
-                JSONObject json = new JSONObject(new String(content));
-                SingleNews news = new SingleNews();
-                news.Id = id;
-                news.Comments = extractIntArrayFromKey("kids", content);
-                news.Url = getStringJsonValue("url", json);
-                news.Author = getStringJsonValue("by", json);
-                news.Score = getIntJsonValue("score", json);
-                news.Title = getStringJsonValue("title", json);
-                news.Date = getLongJsonValue("time", json);
-
-                // adding to the list
-                mStories.put(id, news);
-                return news;
+
+        int from = Math.max(0, Math.min(offset, Math.min(ids.length, MAX_STORIES)));
+        int to = Math.min(ids.length, Math.min(from + count, MAX_STORIES));
+        fetchStories(from, Arrays.copyOfRange(ids, from, to), listener, handle);
+    }
+
+    @Override
+    public TopStoriesUpdate refreshTopStories(int count, FetchHandle handle) {
+
+        TopStoriesUpdate update = new TopStoriesUpdate();
+        int[] previous = mTopStoriesIds;
+        int[] ids = getTopStoriesIds();
+        if (ids.length == 0) {
+            return update;
+        }
+        update.Ids = ids;
+
+        // the stories of the previous ranking still in memory, either revalidated or released
+        IntObjectMap<SingleNews> retained = new IntObjectMap<>();
+        if (previous != null) {
+            for (int id : previous) {
+                SingleNews news = mStories.get(id);
+                if (news != null) {
+                    retained.put(id, news);
+                }
+            }
+        }
+
+        // the stories displayed: the retained ones are revalidated, the others loaded without a
+        // stale record from the disk since the refresh returns what is displayed
+        int[] window = Arrays.copyOf(ids, Math.min(ids.length, Math.min(count, MAX_STORIES)));
+        final IntObjectMap<SingleNews> revalidated = new IntObjectMap<>();
+        for (int id : window) {
+            SingleNews news = retained.remove(id);
+            if (news != null) {
+                revalidated.put(id, news);
             }
-            catch (MalformedURLException ex) {
-                Log.e(TAG, "URL for Single Item Endpoint malformed", ex);
+        }
+        update.Revalidated = revalidated.size();
+        update.Added = window.length - update.Revalidated;
+
+        // the others are no longer displayed, the disk cache decides if they are still fresh
+        if (previous != null) {
+            for (int id : previous) {
+                if (retained.remove(id) != null) {
+                    mStories.remove(id);
+                    update.Dropped++;
+                }
             }
-            catch (IOException ex) {
-                Log.e(TAG, "Problem with the communication with the host", ex);
+        }
+
+        final ArrayList<SingleNews> stories = new ArrayList<>(window.length);
+        RankOrderPublisher publisher = new RankOrderPublisher(window.length, new StoriesListener() {
+            @Override
+            public void onStory(int rank, SingleNews news) {
+                stories.add(news);
+            }
+
+            @Override
+            public void onComplete(int total) {
             }
-            catch (JSONException jsonex) {
-                Log.e(TAG, "JSON received from host is not valid", jsonex);
+        });
+
+        // the new stories and the revalidation in a single batch
+        mFetcher.fetch(window, handle, new ItemFetcher.Loader<SingleNews>() {
+            @Override
+            public SingleNews load(int id) throws Exception {
+                SingleNews news = revalidated.get(id);
+                return news != null ? revalidateNews(news) : loadNews(id, true, true);
             }
+        }, publisher);
+        publisher.complete();
+
+        update.Stories = stories.toArray(new SingleNews[stories.size()]);
+        Log.i(TAG, "RESTDataLayer.refreshTopStories(" + count + "): " + update.Added + " added, " +
+                   update.Revalidated + " revalidated, " + update.Dropped + " dropped");
+        return update;
+    }
+
+    @Override
+    public SingleNews getSpecificNews(int id) {
+
+        try {
+            return loadNews(id, true, false);
+        }
+        catch (MalformedURLException ex) {
+            Log.e(TAG, "URL for Single Item Endpoint malformed", ex);
+        }
+        catch (IOException ex) {
+            Log.e(TAG, "Problem with the communication with the host", ex);
+        }
+        catch (JSONException jsonex) {
+            Log.e(TAG, "JSON received from host is not valid", jsonex);
         }
 
         return new SingleNews();
     }
 
     @Override
-    public NewsComment getSpecificComment(int id) {
+    public BatchResult<SingleNews> getNews(int[] ids) {
+        return getNews(ids, null, 0);
+    }
 
-        if (mComments.containsKey(id)) {
-            return mComments.get(id);
-        }
+    @Override
+    public BatchResult<SingleNews> getNews(int[] ids, FetchHandle handle, long timeoutMillis) {
+        return mNewsBatch.fetch(ids, handle, timeoutMillis, null);
+    }
 
-        try {
-            // connecting
-            URL url = new URL(String.format(ITEMS_ENDPOINT, id));
-            URLConnection conn = url.openConnection();
+    @Override
+    public BatchResult<NewsComment> getComments(int[] ids) {
+        return getComments(ids, null, 0);
+    }
 
-            // reading the bytes
-            byte[] content = getStreamContent(conn.getInputStream());
+    @Override
+    public BatchResult<NewsComment> getComments(int[] ids, FetchHandle handle, long timeoutMillis) {
+        return mCommentBatch.fetch(ids, handle, timeoutMillis, null);
+    }
 
-            // creating a JSON
-            JSONObject json = new JSONObject(new String(content));
-            NewsComment comment = new NewsComment();
-            comment.Id = id;
-            comment.CommentsIds = extractIntArrayFromKey("kids", content);
-            comment.ParentId = getIntJsonValue("parent", json);
-            comment.Author = getStringJsonValue("by", json);
-            comment.Body = getStringJsonValue("text", json);
-            comment.Date = getLongJsonValue("time", json);
+    @Override
+    public SingleNews getCachedNews(int id) {
+        return mStories.get(id);
+    }
 
-            // keeping it in memory
-            mComments.put(id, comment);
-            return comment;
+    @Override
+    public NewsComment getCachedComment(int id) {
+        return mComments.get(id);
+    }
 
+    @Override
+    public NewsComment getSpecificComment(int id) {
+
+        try {
+            return loadComment(id, true);
         }
         catch (MalformedURLException mfex) {
             Log.e(TAG, "URL for Items Endpoint not valid", mfex);
@@ -228,172 +493,471 @@ public class RESTDataLayer implements DataLayer {
 
     @Override
     public NewsComment[] getCommentsFromNews(SingleNews news) {
+        return getCommentsFromNews(news, MAX_COMMENTS_DEPTH, new int[] { MAX_COMMENTS, MAX_REPLIES });
+    }
+
+    @Override
+    public NewsComment[] getCommentsFromNews(SingleNews news, int maxDepth, int[] maxChildren) {
+        return createCommentTree(maxDepth, maxChildren).load(commentIds(news));
+    }
 
+    @Override
+    public void getCommentsFromNews(SingleNews news, CommentsListener listener) {
+        getCommentsFromNews(news, listener, new FetchHandle(FetchScheduler.Priority.USER_VISIBLE));
+    }
 
-        int max = Math.min(news.Comments.length, MAX_COMMENTS);
-        NewsComment[] comments = new NewsComment[max];
+    @Override
+    public void getCommentsFromNews(SingleNews news, CommentsListener listener, FetchHandle handle) {
+        createCommentTree(MAX_COMMENTS_DEPTH, new int[] { MAX_COMMENTS, MAX_REPLIES }).load(commentIds(news), listener, handle);
+    }
 
-        for (int i = 0; i < max; i++) {
-            comments[i] = getSpecificComment(news.Comments[i]);
+    /**
+     * @return the ids of the comments of the story, empty when the story could not be loaded
+     */
+    private static int[] commentIds(SingleNews news) {
+        return news.Comments != null ? news.Comments : new int[0];
+    }
 
-            // need to retreive the latest reply only
-            if (comments[i].CommentsIds.length > 0) {
-                comments[i].Replies = new NewsComment[1];
-                comments[i].Replies[0] = getSpecificComment(comments[i].CommentsIds[0]);
-            }
+    /**
+     * @return a CommentTreeLoader retrieving each level like getComments(int[])
+     */
+    private CommentTreeLoader createCommentTree(int maxDepth, int[] maxChildren) {
+        return new CommentTreeLoader(mCommentBatch, maxDepth, maxChildren);
+    }
+
+    /**
+     * Retrieves a page of stories in an array
+     * @param offset the rank of the first story
+     * @param count the max number of stories
+     * @param refresh true to download the ranking again first
+     * @return the stories, in rank order
+     */
+    private SingleNews[] collectStories(int offset, int count, boolean refresh) {
+
+        final ArrayList<SingleNews> stories = new ArrayList<>();
+
+        if (refresh) {
+            getTopStoriesIds();
         }
 
-        return comments;
+        getTopStories(offset, count, new StoriesListener() {
+            @Override
+            public void onStory(int rank, SingleNews news) {
+                stories.add(news);
+            }
+
+            @Override
+            public void onComplete(int total) {
+            }
+        });
 
+        return stories.toArray(new SingleNews[stories.size()]);
     }
 
     /**
-     * Return the string value from the JSONObject
-     * @param key the key from the object
-     * @param json the JSON Object
-     * @return the string value, if not found, return new String()
+     * Retrieves the stories like getNews(int[]) and delivers them in the order of the ids as soon
+     * as they are ready. The stories that could not be retrieved are skipped.
+     * @param offset the rank of the first id in the ranking
+     * @param ids the stories id, in the order to be displayed
+     * @param listener receives the stories
      */
-    private String getStringJsonValue(String key, JSONObject json) {
-        try {
-            return json.getString(key);
-        }
-        catch (JSONException ex) {
-            Log.w(TAG, "Json object does not contain key: " + key, ex);
-        }
-        return new String();
+    private void fetchStories(int offset, int[] ids, StoriesListener listener, FetchHandle handle) {
+
+        RankOrderPublisher publisher = new RankOrderPublisher(offset, ids.length, listener);
+        BatchResult<SingleNews> result = mNewsBatch.fetch(ids, handle, 0, publisher);
+        publisher.complete();
+
+        Log.d(TAG, "RESTDataLayer.fetchStories(...): " + result);
     }
 
     /**
-     * Returns a int value from the JSONObject
-     * @param key the key from the object
-     * @param json the JSON object
-     * @return the int value, if not found, returns 0;
+     * Downloads a story again to revalidate its score and comments. The new instance replaces the
+     * one in memory, which is never changed since other threads may be reading it. If the host
+     * cannot be reached the instance in memory is returned as is.
+     * @param news the story in memory
+     * @return the new instance, or the one in memory if the download failed
+     * @throws JSONException if the content received is not valid
      */
-    private int getIntJsonValue(String key, JSONObject json) {
+    private SingleNews revalidateNews(SingleNews news) throws JSONException {
+        SingleNews fresh;
         try {
-            return json.getInt(key);
+            fresh = downloadNews(news.Id);
+        }
+        catch (IOException ex) {
+            Log.w(TAG, "Could not revalidate story " + news.Id + ", keeping the one in memory", ex);
+            return news;
         }
-        catch (JSONException ex) {
-            Log.w(TAG, "Json object does not contain key: " + key, ex);
+
+        mStories.put(fresh.Id, fresh);
+        DiskItemCache disk = mDiskCache;
+        if (disk != null) {
+            disk.writeNews(fresh);
         }
-        return 0;
+        return fresh;
     }
 
     /**
-     * Returns a long value from the JSONObject
-     * @param key the key from the object
-     * @param json the JSON object
-     * @return the value for the long key, if not found, return 0;
+     * Returns the story from memory, from the disk or download it from the host. A record on disk
+     * older than its TTL is returned at once and downloaded again in the background to revalidate
+     * the score and kids, unless the caller needs a fresh story. The threads asking for the same
+     * story at the same time share a single load.
+     * @param id the unique id
+     * @param record true to record the lookup in memory, false when the BatchFetcher did it
+     * @param fresh true to download a stale record on disk at once instead of in the background
+     * @return the SingleNews
+     * @throws IOException if the communication with the host failed
+     * @throws JSONException if the content received is not valid
      */
-    private long getLongJsonValue(String key, JSONObject json) {
+    private SingleNews loadNews(final int id, boolean record, final boolean fresh)
+            throws IOException, JSONException {
+
+        long start = mMetrics.start();
+        SingleNews cached = mStories.get(id);
+        if (record) {
+            recordLookup(start, cached != null);
+        }
+        if (cached != null) {
+            return cached;
+        }
+
         try {
-            return json.getLong(key);
+            return mNewsFlight.execute(id, new Callable<SingleNews>() {
+                @Override
+                public SingleNews call() throws Exception {
+                    return fetchNews(id, fresh);
+                }
+            });
+        }
+        catch (IOException | JSONException | RuntimeException ex) {
+            throw ex;
         }
         catch (Exception ex) {
-            Log.w(TAG, "Json object does not contain key: " + key, ex);
+            throw new IOException("Could not load item " + id, ex);
         }
-        return 0;
     }
 
     /**
-     * extract an array of int from the byte array. Once the substrings are applied to the raw bytes.
-     * this function will call extractIntFromArray(byte[]) to complete the operation.
-     * @param key the key to start extraction
-     * @param raw the byte content
-     * @return an array on int
+     * Loads an item missing from memory, only one thread runs it at a time for an id
      */
-    private int[] extractIntArrayFromKey(String key, byte[] raw) {
-        // transforming the raw bytes to a string
-        String content = new String(raw);
-
-        // getting substring function do the magic
-        int indexOfKey = content.indexOf(key);
+    private SingleNews fetchNews(int id, boolean fresh) throws IOException, JSONException {
 
-        if (indexOfKey != -1) {
-            String sub = content.substring(indexOfKey);
+        // it may have been added by a load that finished just before this one started
+        SingleNews cached = mStories.get(id);
+        if (cached != null) {
+            return cached;
+        }
 
-            int indexOfBeginning = sub.indexOf(STR_BEGINNING_ARRAY);
-            int indexOfLast = sub.indexOf(STR_END_ARRAY);
+        DiskItemCache disk = mDiskCache;
+        DiskItemCache.Record<SingleNews> record = disk != null ? disk.readNews(id) : null;
+        if (record != null && (!fresh || record.isFresh())) {
+            mMetrics.increment(FetchMetrics.Counter.DISK_HITS);
+            mStories.put(id, record.Item);
+            if (!record.isFresh()) {
+                revalidateNewsLater(id);
+            }
+            return record.Item;
+        }
 
-            // call the byte functions to retreive the int array
-            return extractIntFromArray(sub.substring(indexOfBeginning, indexOfLast + 1).getBytes());
+        SingleNews news;
+        try {
+            news = downloadNews(id);
         }
+        catch (IOException ex) {
+            if (record == null) {
+                throw ex;
+            }
 
-        return new int[0];
+            // the stale record is better than nothing
+            Log.w(TAG, "Could not download story " + id + ", keeping the disk record", ex);
+            mMetrics.increment(FetchMetrics.Counter.DISK_HITS);
+            mStories.put(id, record.Item);
+            return record.Item;
+        }
 
+        // keeping it in memory
+        mStories.put(id, news);
+        if (disk != null) {
+            disk.writeNews(news);
+        }
+        return news;
     }
 
     /**
-     * Read the byte[] from the InputStream and closes it when done.
-     * @param in the InputStream
-     * @return a array of byte[] read from the InputStream
+     * Downloads a story again in the background, the new instance replaces the stale one in
+     * memory and on disk. If the host cannot be reached the stale one is kept.
+     * @param id the unique id
      */
-    private byte[] getStreamContent(InputStream in) {
-        try {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            byte[] content = new byte[0];
-            int read = 0;
-            while ((read = in.read(buffer, 0, BUFFER_SIZE)) > 0) {
-                content = accumulateBytes(content, buffer, read);
+    private void revalidateNewsLater(final int id) {
+        mFetcher.getScheduler().execute(new FetchHandle(FetchScheduler.Priority.BACKGROUND), new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SingleNews news = downloadNews(id);
+                    mStories.put(id, news);
+                    DiskItemCache disk = mDiskCache;
+                    if (disk != null) {
+                        disk.writeNews(news);
+                    }
+                }
+                catch (IOException | JSONException ex) {
+                    Log.w(TAG, "Could not revalidate story " + id + ", keeping the disk record", ex);
+                }
             }
+        }, null);
+    }
+
+    /**
+     * Downloads a story from the host
+     * @param id the unique id
+     * @return the SingleNews
+     * @throws IOException if the communication with the host failed
+     * @throws JSONException if the content received is not valid
+     */
+    private SingleNews downloadNews(int id) throws IOException, JSONException {
+
+        // getting the specific id, decoding the item straight from the bytes
+        StreamBuffer content = request(String.format(ITEMS_ENDPOINT, id));
+        long start = mMetrics.start();
+        SingleNews news = ItemDecoder.decodeNews(content.getData(), 0, content.getLength());
+        mMetrics.record(FetchMetrics.Stage.PARSE, start);
+        news.Id = id;
+        return news;
+    }
 
-            in.close();
-            return content;
+    /**
+     * Returns the comment from memory, from the disk or download it from the host, following the
+     * same rules as loadNews(int, boolean, boolean).
+     * @param id the unique id
+     * @param record true to record the lookup in memory, false when the BatchFetcher did it
+     * @return the NewsComment
+     * @throws IOException if the communication with the host failed
+     * @throws JSONException if the content received is not valid
+     */
+    private NewsComment loadComment(final int id, boolean record) throws IOException, JSONException {
+
+        long start = mMetrics.start();
+        NewsComment cached = mComments.get(id);
+        if (record) {
+            recordLookup(start, cached != null);
         }
-        catch (IOException ex) {
-            Log.e(TAG, "Could not read InputStream", ex);
+        if (cached != null) {
+            return cached;
         }
 
-        return new byte[0];
+        try {
+            return mCommentFlight.execute(id, new Callable<NewsComment>() {
+                @Override
+                public NewsComment call() throws Exception {
+                    return fetchComment(id);
+                }
+            });
+        }
+        catch (IOException | JSONException | RuntimeException ex) {
+            throw ex;
+        }
+        catch (Exception ex) {
+            throw new IOException("Could not load item " + id, ex);
+        }
     }
 
     /**
-     * Read the content of a byte array and append it to the content array
-     * @param content the content array that receive appended bytes
-     * @param arr the bytes to append to content
-     * @param read the number of bytes actually read. It can be different than the arr.length.
-     * @return a new byte array containing the appended bytes (content + arr)
+     * Loads an item missing from memory, only one thread runs it at a time for an id
      */
-    private byte[] accumulateBytes(byte[] content, byte[] arr, int read) {
+    private NewsComment fetchComment(int id) throws IOException, JSONException {
 
-        byte[] expended = Arrays.copyOf(content, content.length + read);
+        // it may have been added by a load that finished just before this one started
+        NewsComment cached = mComments.get(id);
+        if (cached != null) {
+            return cached;
+        }
 
-        for (int i = content.length, j = 0; i < expended.length && j < read; i++, j++) {
-            expended[i] = arr[j];
+        DiskItemCache disk = mDiskCache;
+        DiskItemCache.Record<NewsComment> record = disk != null ? disk.readComment(id) : null;
+        if (record != null) {
+            mMetrics.increment(FetchMetrics.Counter.DISK_HITS);
+            mComments.put(id, record.Item);
+            if (!record.isFresh()) {
+                revalidateCommentLater(id);
+            }
+            return record.Item;
         }
 
-        return expended;
+        NewsComment comment = downloadComment(id);
+
+        // keeping it in memory
+        mComments.put(id, comment);
+        if (disk != null) {
+            disk.writeComment(comment);
+        }
+        return comment;
     }
 
     /**
-     * This function reads the byte and extract the number from the represented array
-     * @param content the byte array representing an array of integer
-     * @return a int[] array, can be empty
+     * Downloads a comment again in the background, the new instance replaces the stale one in
+     * memory and on disk. If the host cannot be reached the stale one is kept.
+     * @param id the unique id
      */
-    private int[] extractIntFromArray(byte[] content) {
+    private void revalidateCommentLater(final int id) {
+        mFetcher.getScheduler().execute(new FetchHandle(FetchScheduler.Priority.BACKGROUND), new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    NewsComment comment = downloadComment(id);
+                    mComments.put(id, comment);
+                    DiskItemCache disk = mDiskCache;
+                    if (disk != null) {
+                        disk.writeComment(comment);
+                    }
+                }
+                catch (IOException | JSONException ex) {
+                    Log.w(TAG, "Could not revalidate comment " + id + ", keeping the disk record", ex);
+                }
+            }
+        }, null);
+    }
 
-        // setting some control variables
-        byte[] arrayContent = new byte[0];
-        int[] items = new int[0];
+    /**
+     * Downloads a comment from the host
+     * @param id the unique id
+     * @return the NewsComment
+     * @throws IOException if the communication with the host failed
+     * @throws JSONException if the content received is not valid
+     */
+    private NewsComment downloadComment(int id) throws IOException, JSONException {
+
+        // getting the specific id, decoding the item straight from the bytes
+        StreamBuffer content = request(String.format(ITEMS_ENDPOINT, id));
+        long start = mMetrics.start();
+        NewsComment comment = ItemDecoder.decodeComment(content.getData(), 0, content.getLength());
+        mMetrics.record(FetchMetrics.Stage.PARSE, start);
+        comment.Id = id;
+        return comment;
+    }
 
-        for (int i = 0; i < content.length; i++) {
+    /**
+     * records a lookup in memory started at start, a value of FetchMetrics.start()
+     */
+    private void recordLookup(long start, boolean hit) {
+        mMetrics.record(FetchMetrics.Stage.CACHE_LOOKUP, start);
+        mMetrics.increment(hit ? FetchMetrics.Counter.CACHE_HITS : FetchMetrics.Counter.CACHE_MISSES);
+    }
 
-            // array building mode
-            if (content[i] != BEGINNING_ARRAY && content[i] != END_ARRAY) {
+    /**
+     * @return the approximate memory used by a String, 0 for null
+     */
+    private static int approximateSize(String s) {
+        return s == null ? 0 : 40 + 2 * s.length();
+    }
+
+    /**
+     * @return the approximate memory used by an int array, 0 for null
+     */
+    private static int approximateSize(int[] values) {
+        return values == null ? 0 : 16 + 4 * values.length;
+    }
+
+    /**
+     * Performs a request with the transport, attempting it again after a transient failure as
+     * long as the RetryPolicy allows it. Every attempt is reported to the AdaptiveConcurrencyLimit
+     * and the whole request to the FetchMetrics. On a worker thread of the FetchScheduler, no
+     * attempt is started once the handle of the request running is cancelled.
+     * The content is only valid until the next request on the same thread.
+     * @param path the path relative to the API base URL
+     * @return the StreamBuffer holding the content
+     * @throws IOException if the last attempt failed or the request was cancelled
+     */
+    private StreamBuffer request(String path) throws IOException {
+
+        RetryPolicy policy = mRetryPolicy;
+        FetchHandle handle = FetchScheduler.getCurrentHandle();
+        long requestStart = mMetrics.start();
+        for (int attempt = 1; ; attempt++) {
+            checkCancelled(handle, path);
+            long start = System.nanoTime();
+            try {
+                StreamBuffer content = requestOnce(path);
+                mConcurrencyLimit.onSuccess(System.nanoTime() - start);
+                mMetrics.record(FetchMetrics.Stage.REQUEST, requestStart);
+                return content;
+            }
+            catch (IOException ex) {
+                boolean isTransient = RetryPolicy.isTransient(ex);
 
-                // found a separator
-                if (content[i] == ELEMENT_SEPARATOR) {
-                    items = Arrays.copyOf(items, items.length + 1);
-                    items[items.length - 1] = Integer.parseInt(new String(arrayContent));
-                    arrayContent = new byte[0];
+                // the network or the host may be overloaded, fewer requests go out at once
+                if (isTransient) {
+                    mConcurrencyLimit.onDropped();
+                }
+                if (!isTransient || !policy.shouldRetry(attempt, ex)) {
+                    mMetrics.increment(FetchMetrics.Counter.FAILURES);
+                    mMetrics.record(FetchMetrics.Stage.REQUEST, requestStart);
+                    throw ex;
                 }
-                else {
-                    arrayContent = Arrays.copyOf(arrayContent, arrayContent.length + 1);
-                    arrayContent[arrayContent.length - 1] = content[i];
+                mMetrics.increment(FetchMetrics.Counter.RETRIES);
+
+                // nobody waits for the content anymore, no need to wait for the next attempt
+                checkCancelled(handle, path);
+                long delay = policy.getDelay(attempt);
+                Log.w(TAG, "RESTDataLayer.request(" + path + "): attempt " + attempt + " failed, " +
+                           "retrying in " + delay + "ms: " + ex);
+                try {
+                    Thread.sleep(delay);
+                }
+                catch (InterruptedException iex) {
+                    Thread.currentThread().interrupt();
+                    mMetrics.increment(FetchMetrics.Counter.FAILURES);
+                    throw new InterruptedIOException("Interrupted before retrying " + path);
                 }
             }
         }
+    }
+
+    /**
+     * Fails the request if its handle was cancelled
+     * @param handle the handle of the request, null if it cannot be cancelled
+     * @param path the path relative to the API base URL
+     * @throws InterruptedIOException if the handle is cancelled
+     */
+    private void checkCancelled(FetchHandle handle, String path) throws InterruptedIOException {
+        if (handle != null && handle.isCancelled()) {
+            mMetrics.increment(FetchMetrics.Counter.FAILURES);
+            throw new InterruptedIOException("Request cancelled: " + path);
+        }
+    }
+
+    /**
+     * Performs a single request with the transport and reports its timing to the RequestListener
+     * and the FetchMetrics, the request is not timed when nobody uses it
+     */
+    private StreamBuffer requestOnce(String path) throws IOException {
+
+        RequestListener listener = mRequestListener;
+        boolean recording = mMetrics.isEnabled();
+        if (listener == null && !recording) {
+            return mTransport.get(path, null);
+        }
+
+        RequestTiming timing = new RequestTiming();
+        StreamBuffer content = mTransport.get(path, timing);
+        if (recording) {
+            mMetrics.recordNanos(FetchMetrics.Stage.CONNECT, timing.DnsNanos + timing.ConnectNanos);
+            mMetrics.recordNanos(FetchMetrics.Stage.DOWNLOAD, timing.FirstByteNanos + timing.BodyNanos);
+            mMetrics.add(FetchMetrics.Counter.BYTES_READ, content.getLength());
+        }
+        if (listener != null) {
+            listener.onRequest(path, timing);
+        }
+        return content;
+    }
 
-        return items;
+    /**
+     * Receives the time spent in each stage of every request.
+     */
+    public interface RequestListener {
+        /**
+         * called from the thread that performed the request
+         * @param path the path requested
+         * @param timing the time spent in each stage
+         */
+        void onRequest(String path, RequestTiming timing);
     }
 }
@@ -0,0 +1,108 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import android.util.Log;
+
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+
+/**
+ * Receives the stories from the ItemFetcher in completion order and hands them to a
+ * StoriesListener in rank order. A story is held back only until every story ranked before it is
+ * either loaded or failed, the failed ones are skipped. The rank given to the listener is the
+ * rank of the story in the whole ranking: the position in the batch plus the rank of the first
+ * story of the batch, so the pages of a ranking do not all start at 0.
+ */
+public class RankOrderPublisher implements ItemFetcher.Callback<SingleNews> {
+
+    private static final String TAG = "droidnewsreader";
+
+    /**
+     * the listener receiving the stories in order
+     */
+    private final DataLayer.StoriesListener mListener;
+
+    /**
+     * the stories loaded but not delivered yet, indexed by their position in the batch
+     */
+    private final SingleNews[] mPending;
+
+    /**
+     * true when the story at that position is loaded or failed
+     */
+    private final boolean[] mSettled;
+
+    /**
+     * the position of the next story to deliver
+     */
+    private int mNext;
+
+    /**
+     * the rank of the first story of the batch
+     */
+    private final int mOffset;
+
+    /**
+     * the number of stories delivered
+     */
+    private int mDelivered;
+
+    /**
+     * Creates a publisher for a batch starting at the top of the ranking
+     * @param size the number of stories in the batch
+     * @param listener the listener receiving the stories
+     */
+    public RankOrderPublisher(int size, DataLayer.StoriesListener listener) {
+        this(0, size, listener);
+    }
+
+    /**
+     * Creates a publisher for a page of the ranking
+     * @param offset the rank of the first story of the batch
+     * @param size the number of stories in the batch
+     * @param listener the listener receiving the stories
+     */
+    public RankOrderPublisher(int offset, int size, DataLayer.StoriesListener listener) {
+        mListener = listener;
+        mOffset = offset;
+        mPending = new SingleNews[size];
+        mSettled = new boolean[size];
+    }
+
+    @Override
+    public synchronized void onItem(int index, int id, SingleNews item) {
+        mPending[index] = item;
+        mSettled[index] = true;
+        drain();
+    }
+
+    @Override
+    public synchronized void onFailure(int index, int id, Exception ex) {
+        Log.w(TAG, "Could not download story " + id, ex);
+        mSettled[index] = true;
+        drain();
+    }
+
+    /**
+     * Tells the listener the batch is done
+     * @return the number of stories delivered
+     */
+    public synchronized int complete() {
+        mListener.onComplete(mDelivered);
+        return mDelivered;
+    }
+
+    /**
+     * delivers every story that is not waiting on a story ranked before it
+     */
+    private void drain() {
+        while (mNext < mSettled.length && mSettled[mNext]) {
+            SingleNews news = mPending[mNext];
+            mPending[mNext] = null;
+            int rank = mOffset + mNext++;
+
+            if (news != null) {
+                mDelivered++;
+                mListener.onStory(rank, news);
+            }
+        }
+    }
+}
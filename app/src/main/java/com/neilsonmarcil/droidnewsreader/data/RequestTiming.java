@@ -0,0 +1,60 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+/**
+ * The time spent in each stage of a request, in nanoseconds. No get/set, access the data
+ * directly from the object. A stage that did not happen, like the connect on a reused
+ * connection, stays at 0.
+ */
+public class RequestTiming {
+
+    /**
+     * Represents the time to resolve the host name, 0 when the transport cannot measure it apart
+     * and counts it in ConnectNanos
+     */
+    public long DnsNanos;
+
+    /**
+     * Represents the time to open the connection, TCP and TLS handshakes
+     */
+    public long ConnectNanos;
+
+    /**
+     * Represents the time between the request sent and the first byte of the response
+     */
+    public long FirstByteNanos;
+
+    /**
+     * Represents the time to read the body
+     */
+    public long BodyNanos;
+
+    /**
+     * Represents the number of bytes of the body
+     */
+    public int Bytes;
+
+    /**
+     * sets every stage back to 0 to reuse the instance
+     */
+    public void reset() {
+        DnsNanos = 0;
+        ConnectNanos = 0;
+        FirstByteNanos = 0;
+        BodyNanos = 0;
+        Bytes = 0;
+    }
+
+    /**
+     * @return the time spent in every stage
+     */
+    public long getTotalNanos() {
+        return DnsNanos + ConnectNanos + FirstByteNanos + BodyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "dns=" + DnsNanos / 1000000 + "ms connect=" + ConnectNanos / 1000000 +
+               "ms ttfb=" + FirstByteNanos / 1000000 + "ms body=" + BodyNanos / 1000000 +
+               "ms bytes=" + Bytes;
+    }
+}
@@ -0,0 +1,129 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Random;
+
+/**
+ * Decides which failed requests are retried and how long to wait before each attempt. The delay
+ * grows exponentially with the attempts and is drawn at random below that bound (full jitter), so
+ * the requests that failed together do not come back to the host together.
+ * The instance is immutable and thread-safe.
+ */
+public class RetryPolicy {
+
+    /**
+     * Represents the default number of attempts of a request, the first one included
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * Represents the default bound of the delay before the first retry, in milliseconds
+     */
+    public static final long DEFAULT_BASE_DELAY = 250;
+
+    /**
+     * Represents the default max delay before a retry, in milliseconds
+     */
+    public static final long DEFAULT_MAX_DELAY = 4000;
+
+    /**
+     * Represents the HTTP status of a host asking to slow down
+     */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Represents the HTTP status of a host that did not receive the whole request in time
+     */
+    private static final int HTTP_REQUEST_TIMEOUT = 408;
+
+    private final int mMaxAttempts;
+    private final long mBaseDelay;
+    private final long mMaxDelay;
+
+    /**
+     * draws the delays, shared by the threads
+     */
+    private final Random mRandom = new Random();
+
+    /**
+     * Creates a policy with the default attempts and delays
+     */
+    public RetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Creates a policy
+     * @param maxAttempts the number of attempts of a request, the first one included, 1 to never
+     *                    retry
+     * @param baseDelay the bound of the delay before the first retry, in milliseconds, doubled for
+     *                  every following retry
+     * @param maxDelay the max delay before a retry, in milliseconds
+     */
+    public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be greater than 0");
+        }
+        mMaxAttempts = maxAttempts;
+        mBaseDelay = baseDelay;
+        mMaxDelay = maxDelay;
+    }
+
+    /**
+     * @return the number of attempts of a request, the first one included
+     */
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    /**
+     * Returns the time to wait before a retry
+     * @param attempt the number of attempts that failed, starting at 1
+     * @return a random delay between 0 and the bound of that attempt, in milliseconds
+     */
+    public long getDelay(int attempt) {
+        return (long)(mRandom.nextDouble() * getMaxDelay(attempt));
+    }
+
+    /**
+     * Returns the bound of the delay before a retry: the base delay doubled for every attempt
+     * that failed after the first one, up to the max delay
+     * @param attempt the number of attempts that failed, starting at 1
+     * @return the bound in milliseconds
+     */
+    public long getMaxDelay(int attempt) {
+        int shift = Math.min(attempt - 1, 30);
+        return Math.min(mMaxDelay, mBaseDelay << shift);
+    }
+
+    /**
+     * @param attempt the number of attempts that failed, starting at 1
+     * @param ex the failure of the last attempt
+     * @return true if the request should be attempted again
+     */
+    public boolean shouldRetry(int attempt, IOException ex) {
+        return attempt < mMaxAttempts && isTransient(ex);
+    }
+
+    /**
+     * Tells if a failure is likely to go away by itself: a timeout, a connection that could not be
+     * opened or was dropped, a host overloaded or failing. A status like 404 or a content that
+     * cannot be decoded would fail again the same way.
+     * @param ex the failure
+     * @return true if the request can succeed later
+     */
+    public static boolean isTransient(IOException ex) {
+        if (ex instanceof HttpStatusException) {
+            int status = ((HttpStatusException)ex).getStatus();
+            return status >= 500 || status == HTTP_TOO_MANY_REQUESTS || status == HTTP_REQUEST_TIMEOUT;
+        }
+
+        // a pooled connection closed by the host ends with an EOFException on the next request
+        return ex instanceof SocketTimeoutException || ex instanceof SocketException ||
+               ex instanceof UnknownHostException || ex instanceof EOFException;
+    }
+}
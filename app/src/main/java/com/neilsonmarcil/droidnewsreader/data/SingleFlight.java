@@ -0,0 +1,106 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Makes sure a single load runs at a time for an id. The first caller runs the load on its own
+ * thread, the callers asking for the same id while it runs wait for it and receive the same
+ * result or the same exception. Once the load is done the next call starts a new one.
+ * A load stopped because the FetchHandle of its caller was cancelled is not shared: a caller that
+ * joined it with a handle still live runs the load again.
+ */
+public class SingleFlight<V> {
+
+    /**
+     * the loads running, by id. Guarded by itself.
+     */
+    private final IntObjectMap<Flight<V>> mInFlight = new IntObjectMap<>();
+
+    /**
+     * Runs the load for the id or joins the one already running
+     * @param id the unique id
+     * @param load the load to run if none is running for this id
+     * @return the result of the load
+     * @throws Exception the exception thrown by the load
+     */
+    public V execute(int id, Callable<V> load) throws Exception {
+
+        FetchHandle handle = FetchScheduler.getCurrentHandle();
+        while (true) {
+            Flight<V> flight;
+            boolean owner = false;
+
+            synchronized (mInFlight) {
+                flight = mInFlight.get(id);
+                if (flight == null) {
+                    flight = new Flight<>(load, handle);
+                    mInFlight.put(id, flight);
+                    owner = true;
+                }
+            }
+
+            if (owner) {
+                try {
+                    flight.mTask.run();
+                }
+                finally {
+                    synchronized (mInFlight) {
+                        mInFlight.remove(id);
+                    }
+                }
+            }
+
+            try {
+                return flight.mTask.get();
+            }
+            catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+
+                // the cancellation belongs to the owner, this caller still waits for the item
+                if (!owner && flight.isCancelled() && (handle == null || !handle.isCancelled())) {
+                    continue;
+                }
+                if (cause instanceof Exception) {
+                    throw (Exception)cause;
+                }
+                throw (Error)cause;
+            }
+        }
+    }
+
+    /**
+     * @return the number of loads running
+     */
+    public int getInFlightCount() {
+        synchronized (mInFlight) {
+            return mInFlight.size();
+        }
+    }
+
+    /**
+     * A load running and the FetchHandle of the caller running it
+     */
+    private static class Flight<V> {
+
+        private final FutureTask<V> mTask;
+
+        /**
+         * the handle of the owner, null when it runs outside of the FetchScheduler
+         */
+        private final FetchHandle mHandle;
+
+        Flight(Callable<V> load, FetchHandle handle) {
+            mTask = new FutureTask<>(load);
+            mHandle = handle;
+        }
+
+        /**
+         * @return true if the owner was cancelled, its failure may only be the cancellation
+         */
+        boolean isCancelled() {
+            return mHandle != null && mHandle.isCancelled();
+        }
+    }
+}
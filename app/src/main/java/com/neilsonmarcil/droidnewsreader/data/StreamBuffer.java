@@ -0,0 +1,136 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer that reads a whole response. Every thread owns one instance obtained
+ * with obtain(), it is reused from one response to the next so reading an item allocates nothing
+ * once the buffer is big enough. The content stays in the buffer and is parsed from there, it is
+ * only valid until the next read on the same thread.
+ */
+public class StreamBuffer {
+
+    /**
+     * Represents the capacity of a new buffer, big enough for most items
+     */
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    /**
+     * Represents the biggest buffer kept for the next read, a bigger one is released after use
+     */
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    /**
+     * Represents the UTF-8 Charset used by the REST API
+     */
+    public static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * one buffer per thread
+     */
+    private static final ThreadLocal<StreamBuffer> POOL = new ThreadLocal<StreamBuffer>() {
+        @Override
+        protected StreamBuffer initialValue() {
+            return new StreamBuffer(INITIAL_CAPACITY);
+        }
+    };
+
+    /**
+     * the bytes read
+     */
+    private byte[] mData;
+
+    /**
+     * the number of valid bytes in mData
+     */
+    private int mLength;
+
+    /**
+     * Returns the buffer of the current thread
+     * @return the StreamBuffer, never null
+     */
+    public static StreamBuffer obtain() {
+        StreamBuffer buffer = POOL.get();
+        if (buffer.mData.length > MAX_RETAINED_CAPACITY) {
+            buffer.mData = new byte[INITIAL_CAPACITY];
+        }
+        return buffer;
+    }
+
+    /**
+     * Creates a buffer that is not shared, obtain() should be used instead on the fetcher threads
+     * @param capacity the initial capacity
+     */
+    public StreamBuffer(int capacity) {
+        mData = new byte[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Reads the stream until its end and closes it, the previous content is discarded.
+     * @param in the stream
+     * @param contentLength the expected number of bytes from the Content-Length header, -1 if it
+     *                      is unknown. The buffer is sized once for it and grows if it was wrong.
+     * @return this buffer
+     * @throws IOException if the stream cannot be read
+     */
+    public StreamBuffer readFrom(InputStream in, int contentLength) throws IOException {
+        try {
+            mLength = 0;
+
+            // one more byte to detect the end of the stream without growing
+            if (contentLength >= 0) {
+                ensureCapacity(contentLength + 1);
+            }
+
+            int read;
+            while ((read = in.read(mData, mLength, mData.length - mLength)) != -1) {
+                mLength += read;
+                if (mLength == mData.length) {
+                    ensureCapacity(mData.length * 2);
+                }
+            }
+
+            return this;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the array holding the content, only the first getLength() bytes are valid
+     */
+    public byte[] getData() {
+        return mData;
+    }
+
+    /**
+     * @return the number of bytes read
+     */
+    public int getLength() {
+        return mLength;
+    }
+
+    /**
+     * @return a copy of the content in an array of the exact size
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(mData, mLength);
+    }
+
+    /**
+     * @return the content decoded as UTF-8
+     */
+    public String decode() {
+        return new String(mData, 0, mLength, UTF8);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mData.length) {
+            mData = Arrays.copyOf(mData, capacity);
+        }
+    }
+}
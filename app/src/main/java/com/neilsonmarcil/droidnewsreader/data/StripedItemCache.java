@@ -0,0 +1,181 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import android.util.Log;
+
+/**
+ * A memory cache split in several ItemCache stripes, an id always goes to the same stripe. Each
+ * stripe has its own lock and a share of the budget, so the fetcher threads working on different
+ * ids rarely wait for each other. The eviction is least recently used within a stripe, the ids
+ * are spread evenly so it is close to a global LRU.
+ * All the functions are thread-safe. get(int) and put(int, Object) lock a single stripe, the
+ * counters are the sum of the stripes and may be slightly out of date while items are added.
+ */
+public class StripedItemCache<V> {
+
+    private static final String TAG = "droidnewsreader";
+
+    /**
+     * Represents the default number of stripes, twice the number of fetcher threads
+     */
+    public static final int DEFAULT_STRIPES = 8;
+
+    /**
+     * the stripes, the length is a power of 2
+     */
+    private final ItemCache<V>[] mStripes;
+
+    /**
+     * Creates an empty cache with the default number of stripes
+     * @param maxSize the budget in bytes, shared between the stripes
+     * @param sizer returns the approximate size of an item
+     */
+    public StripedItemCache(long maxSize, ItemCache.Sizer<V> sizer) {
+        this(maxSize, sizer, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates an empty cache
+     * @param maxSize the budget in bytes, shared between the stripes
+     * @param sizer returns the approximate size of an item
+     * @param stripes the number of stripes, rounded up to a power of 2
+     */
+    @SuppressWarnings("unchecked")
+    public StripedItemCache(long maxSize, ItemCache.Sizer<V> sizer, int stripes) {
+        int count = 1;
+        while (count < stripes) {
+            count <<= 1;
+        }
+
+        mStripes = (ItemCache<V>[])new ItemCache<?>[count];
+        long stripeSize = Math.max(maxSize / count, 1);
+        for (int i = 0; i < count; i++) {
+            mStripes[i] = new ItemCache<>(stripeSize, sizer);
+        }
+    }
+
+    /**
+     * Returns an item and marks it as the most recently used in its stripe
+     * @param id the unique id
+     * @return the item, null if it is not in the cache
+     */
+    public V get(int id) {
+        return stripeOf(id).get(id);
+    }
+
+    /**
+     * Adds or replaces an item, the least recently used items of the same stripe are evicted if
+     * its budget is exceeded
+     * @param id the unique id
+     * @param value the item, cannot be null
+     */
+    public void put(int id, V value) {
+        stripeOf(id).put(id, value);
+    }
+
+    /**
+     * Removes an item, it is not counted as an eviction
+     * @param id the unique id
+     * @return the item removed, null if it was not in the cache
+     */
+    public V remove(int id) {
+        return stripeOf(id).remove(id);
+    }
+
+    /**
+     * Releases memory according to the level received by ComponentCallbacks2.onTrimMemory(int),
+     * following the same rules as ItemCache.onTrimMemory(int)
+     * @param level the level received by onTrimMemory(int)
+     */
+    public void onTrimMemory(int level) {
+        for (ItemCache<V> stripe : mStripes) {
+            stripe.trimToSize(ItemCache.trimTarget(level, stripe.getSize()));
+        }
+        Log.d(TAG, "StripedItemCache.onTrimMemory(" + level + "): " + this);
+    }
+
+    /**
+     * Evicts everything
+     */
+    public void clear() {
+        for (ItemCache<V> stripe : mStripes) {
+            stripe.trimToSize(0);
+        }
+    }
+
+    /**
+     * @return the number of stripes
+     */
+    public int getStripeCount() {
+        return mStripes.length;
+    }
+
+    /**
+     * @return the approximate size of the items in the cache, in bytes
+     */
+    public long getSize() {
+        long size = 0;
+        for (ItemCache<V> stripe : mStripes) {
+            size += stripe.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of items in the cache
+     */
+    public int getCount() {
+        int count = 0;
+        for (ItemCache<V> stripe : mStripes) {
+            count += stripe.getCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of get(int) that found the item
+     */
+    public long getHitCount() {
+        long count = 0;
+        for (ItemCache<V> stripe : mStripes) {
+            count += stripe.getHitCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of get(int) that did not find the item
+     */
+    public long getMissCount() {
+        long count = 0;
+        for (ItemCache<V> stripe : mStripes) {
+            count += stripe.getMissCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of items evicted to respect the budget or after a trim
+     */
+    public long getEvictionCount() {
+        long count = 0;
+        for (ItemCache<V> stripe : mStripes) {
+            count += stripe.getEvictionCount();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "StripedItemCache[stripes=" + mStripes.length + " count=" + getCount() +
+               " size=" + getSize() + " hits=" + getHitCount() + " misses=" + getMissCount() +
+               " evictions=" + getEvictionCount() + "]";
+    }
+
+    /**
+     * the consecutive ids are spread over the stripes with the same mix as IntObjectMap
+     */
+    private ItemCache<V> stripeOf(int id) {
+        int h = id * 0x9E3779B9;
+        return mStripes[(h ^ (h >>> 16)) & (mStripes.length - 1)];
+    }
+}
@@ -0,0 +1,319 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import android.util.Log;
+
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Keeps the stories last displayed in a single binary file so the list can be displayed at launch
+ * before the network answers. The file is memory-mapped and decoded in one pass, there is no
+ * parsing: a header, a table of the distinct strings, then one length-prefixed record per story
+ * referring to the strings by index. The authors and empty urls are stored once.
+ * The file is replaced atomically, a reader sees either the previous snapshot or the new one.
+ * A file that cannot be decoded is ignored.
+ */
+public class TopStoriesSnapshot {
+
+    private static final String TAG = "droidnewsreader";
+
+    /**
+     * Represents the first bytes of the file
+     */
+    private static final int MAGIC = 0x484E5353;
+
+    /**
+     * Represents the version of the file format, a snapshot with another version is ignored
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Represents the index of a null string
+     */
+    private static final int NULL_STRING = -1;
+
+    /**
+     * the strings are saved in UTF-8
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * the snapshot file
+     */
+    private final File mFile;
+
+    /**
+     * Creates a snapshot saved in a file, the file does not need to exist
+     * @param file the file, usually under Context.getCacheDir()
+     */
+    public TopStoriesSnapshot(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Reads the stories of the snapshot, meant to be fast enough to be called before the first
+     * frame
+     * @return the stories in display order, null if there is no snapshot, it is older than
+     * DiskItemCache.MAX_AGE or it cannot be read
+     */
+    public SingleNews[] read() {
+
+        FileInputStream in;
+        try {
+            in = new FileInputStream(mFile);
+        }
+        catch (FileNotFoundException ex) {
+            return null;
+        }
+
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            long savedAt = readHeader(buffer);
+            if (savedAt < 0 || System.currentTimeMillis() - savedAt > DiskItemCache.MAX_AGE) {
+                return null;
+            }
+            return decodeStories(buffer);
+        }
+        catch (IOException | RuntimeException ex) {
+            // a truncated or corrupted file throws a BufferUnderflowException or an index error
+            Log.w(TAG, "TopStoriesSnapshot could not read " + mFile, ex);
+        }
+        finally {
+            close(in);
+        }
+
+        return null;
+    }
+
+    /**
+     * Replaces the snapshot, the file is written next to the snapshot then renamed. Called on a
+     * worker thread.
+     * @param stories the stories in display order
+     * @return true if the snapshot was replaced
+     */
+    public boolean write(SingleNews[] stories) {
+
+        File tmp = null;
+        FileOutputStream out = null;
+
+        try {
+            byte[] data = encode(stories);
+            tmp = File.createTempFile(mFile.getName(), null, mFile.getParentFile());
+            out = new FileOutputStream(tmp);
+            out.write(data);
+            out.getFD().sync();
+            out.close();
+            out = null;
+
+            if (!tmp.renameTo(mFile)) {
+                throw new IOException("Could not rename " + tmp);
+            }
+            return true;
+        }
+        catch (IOException ex) {
+            Log.w(TAG, "TopStoriesSnapshot could not write " + mFile, ex);
+            close(out);
+            if (tmp != null && tmp.exists() && !tmp.delete()) {
+                Log.w(TAG, "TopStoriesSnapshot could not delete " + tmp);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the snapshot
+     */
+    public void delete() {
+        if (mFile.exists() && !mFile.delete()) {
+            Log.w(TAG, "TopStoriesSnapshot could not delete " + mFile);
+        }
+    }
+
+    /**
+     * Encodes stories in the snapshot format, the header included
+     * @param stories the stories in display order
+     * @return the bytes of the snapshot
+     */
+    public static byte[] encode(SingleNews[] stories) {
+
+        // the distinct strings, by order of appearance
+        HashMap<String, Integer> indexes = new HashMap<>();
+        ArrayList<String> strings = new ArrayList<>();
+        for (SingleNews news : stories) {
+            indexOf(news.Title, indexes, strings);
+            indexOf(news.Author, indexes, strings);
+            indexOf(news.Url, indexes, strings);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(stories.length * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(64);
+        DataOutputStream record = new DataOutputStream(recordBytes);
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            out.writeInt(strings.size());
+            for (String s : strings) {
+                byte[] utf8 = s.getBytes(UTF8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+
+            out.writeInt(stories.length);
+            for (SingleNews news : stories) {
+                recordBytes.reset();
+                record.writeInt(news.Id);
+                record.writeInt(indexOf(news.Title, indexes, strings));
+                record.writeInt(indexOf(news.Author, indexes, strings));
+                record.writeInt(indexOf(news.Url, indexes, strings));
+                record.writeLong(news.Date);
+                record.writeInt(news.Score);
+                int[] comments = news.Comments != null ? news.Comments : new int[0];
+                record.writeInt(comments.length);
+                for (int id : comments) {
+                    record.writeInt(id);
+                }
+                record.flush();
+
+                // the length lets a newer version append fields to the records
+                out.writeInt(recordBytes.size());
+                recordBytes.writeTo(out);
+            }
+            out.flush();
+        }
+        catch (IOException ex) {
+            // a ByteArrayOutputStream does not throw
+            throw new IllegalStateException(ex);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes the stories of a snapshot
+     * @param buffer the bytes of the snapshot, the header included, from the current position
+     * @return the stories in display order
+     * @throws IOException if the bytes are not a snapshot of this version
+     */
+    public static SingleNews[] decode(ByteBuffer buffer) throws IOException {
+        if (readHeader(buffer) < 0) {
+            throw new IOException("Unsupported snapshot version");
+        }
+        return decodeStories(buffer);
+    }
+
+    /**
+     * Reads the header of a snapshot
+     * @return the time the snapshot was saved, -1 if the version is not supported
+     */
+    private static long readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 16 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a snapshot");
+        }
+        if (buffer.getInt() != VERSION) {
+            return -1;
+        }
+        return buffer.getLong();
+    }
+
+    /**
+     * decodes the string table then the records, the buffer is after the header
+     */
+    private static SingleNews[] decodeStories(ByteBuffer buffer) {
+
+        // the strings are copied in a single scratch array before being decoded
+        String[] strings = new String[checkCount(buffer.getInt(), buffer)];
+        byte[] scratch = new byte[256];
+        for (int i = 0; i < strings.length; i++) {
+            int length = checkCount(buffer.getInt(), buffer);
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            strings[i] = new String(scratch, 0, length, UTF8);
+        }
+
+        SingleNews[] stories = new SingleNews[checkCount(buffer.getInt(), buffer)];
+        for (int i = 0; i < stories.length; i++) {
+            int length = checkCount(buffer.getInt(), buffer);
+            int end = buffer.position() + length;
+
+            SingleNews news = new SingleNews();
+            news.Id = buffer.getInt();
+            news.Title = stringAt(strings, buffer.getInt());
+            news.Author = stringAt(strings, buffer.getInt());
+            news.Url = stringAt(strings, buffer.getInt());
+            news.Date = buffer.getLong();
+            news.Score = buffer.getInt();
+            news.Comments = new int[checkCount(buffer.getInt(), buffer)];
+            for (int c = 0; c < news.Comments.length; c++) {
+                news.Comments[c] = buffer.getInt();
+            }
+            stories[i] = news;
+
+            // skipping the fields of a newer version
+            buffer.position(end);
+        }
+        return stories;
+    }
+
+    /**
+     * @return the index of the string in the table, the string is added if needed
+     */
+    private static int indexOf(String s, HashMap<String, Integer> indexes, ArrayList<String> strings) {
+        if (s == null) {
+            return NULL_STRING;
+        }
+        Integer index = indexes.get(s);
+        if (index == null) {
+            index = strings.size();
+            indexes.put(s, index);
+            strings.add(s);
+        }
+        return index;
+    }
+
+    private static String stringAt(String[] strings, int index) {
+        return index == NULL_STRING ? null : strings[index];
+    }
+
+    /**
+     * a count cannot be larger than the bytes left, a corrupted one would allocate a huge array
+     */
+    private static int checkCount(int count, ByteBuffer buffer) {
+        if (count < 0 || count > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    private static void close(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            }
+            catch (IOException ex) {
+                Log.w(TAG, "TopStoriesSnapshot could not close " + c, ex);
+            }
+        }
+    }
+}
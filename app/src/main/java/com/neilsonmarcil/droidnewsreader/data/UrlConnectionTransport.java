@@ -0,0 +1,126 @@
+package com.neilsonmarcil.droidnewsreader.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * HttpTransport built on HttpURLConnection. All the requests go to a single host: the response
+ * body is always read to the end and closed so the connection goes back to the keep-alive pool
+ * of HttpURLConnection and the next request skips the TCP and TLS handshakes. A connection that
+ * failed is disconnected so it is never reused. The size of the pool is a setting of the whole
+ * process, see configurePool(int). HttpURLConnection resolves the host name itself, the time it
+ * takes is part of the time to connect.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+    /**
+     * Represents the default time to open a connection, in milliseconds
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+    /**
+     * Represents the default time to wait for data on an opened connection, in milliseconds
+     */
+    public static final int DEFAULT_READ_TIMEOUT = 15000;
+
+    /**
+     * the URL every path is relative to, ends with a /
+     */
+    private final String mBaseUrl;
+
+    private final int mConnectTimeout;
+    private final int mReadTimeout;
+
+    /**
+     * Creates a transport with the default timeouts
+     * @param baseUrl the URL every path is relative to
+     */
+    public UrlConnectionTransport(String baseUrl) {
+        this(baseUrl, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Creates a transport
+     * @param baseUrl the URL every path is relative to
+     * @param connectTimeout the time to open a connection, in milliseconds
+     * @param readTimeout the time to wait for data on an opened connection, in milliseconds
+     */
+    public UrlConnectionTransport(String baseUrl, int connectTimeout, int readTimeout) {
+        mBaseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        mConnectTimeout = connectTimeout;
+        mReadTimeout = readTimeout;
+    }
+
+    /**
+     * Configures the keep-alive pool of HttpURLConnection. The pool is configured with the system
+     * properties http.keepAlive and http.maxConnections, this changes them for every
+     * HttpURLConnection of the process: call it once at startup, before the first request.
+     * @param maxConnections the number of idle connections to keep alive, usually the number of
+     *                       fetcher threads
+     */
+    public static void configurePool(int maxConnections) {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(maxConnections));
+    }
+
+    @Override
+    public StreamBuffer get(String path, RequestTiming timing) throws IOException {
+
+        HttpURLConnection conn = (HttpURLConnection)new URL(mBaseUrl + path).openConnection();
+        conn.setConnectTimeout(mConnectTimeout);
+        conn.setReadTimeout(mReadTimeout);
+        conn.setUseCaches(false);
+
+        try {
+            // resolving the host and opening the connection, immediate when a pooled one is reused
+            long start = System.nanoTime();
+            conn.connect();
+            long connected = System.nanoTime();
+
+            // waiting for the status line
+            int status = conn.getResponseCode();
+            long firstByte = System.nanoTime();
+
+            if (status != HttpURLConnection.HTTP_OK) {
+                drain(conn.getErrorStream());
+                throw new HttpStatusException(status, path);
+            }
+
+            StreamBuffer buffer = StreamBuffer.obtain().readFrom(conn.getInputStream(), conn.getContentLength());
+
+            if (timing != null) {
+                timing.ConnectNanos = connected - start;
+                timing.FirstByteNanos = firstByte - connected;
+                timing.BodyNanos = System.nanoTime() - firstByte;
+                timing.Bytes = buffer.getLength();
+            }
+
+            return buffer;
+        }
+        catch (HttpStatusException ex) {
+            // the error body was read to the end, the connection can go back to the pool
+            throw ex;
+        }
+        catch (IOException ex) {
+            // a broken connection must not go back to the pool
+            conn.disconnect();
+            throw ex;
+        }
+    }
+
+    /**
+     * reads and closes an error body so the connection can be reused
+     */
+    private static void drain(InputStream in) {
+        if (in != null) {
+            try {
+                StreamBuffer.obtain().readFrom(in, -1);
+            }
+            catch (IOException ex) {
+                // the connection is disconnected by the caller
+            }
+        }
+    }
+}
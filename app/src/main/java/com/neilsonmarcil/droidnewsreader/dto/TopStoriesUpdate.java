@@ -0,0 +1,35 @@
+package com.neilsonmarcil.droidnewsreader.dto;
+
+/**
+ * Represents the result of a refresh of the Top Stories. No get/set, access the data directly
+ * from the object.
+ */
+public class TopStoriesUpdate {
+
+    /**
+     * Represents the whole ranking downloaded, used to load the next pages
+     */
+    public int[] Ids = new int[0];
+
+    /**
+     * Represents the first stories of the ranking, in rank order. The stories that were already
+     * in memory are new instances with their score and comments revalidated, the previous ones are
+     * not changed.
+     */
+    public SingleNews[] Stories = new SingleNews[0];
+
+    /**
+     * Represents the number of stories that were not in the previous ranking
+     */
+    public int Added;
+
+    /**
+     * Represents the number of stories kept from the previous ranking and downloaded again
+     */
+    public int Revalidated;
+
+    /**
+     * Represents the number of stories of the previous ranking released from memory
+     */
+    public int Dropped;
+}
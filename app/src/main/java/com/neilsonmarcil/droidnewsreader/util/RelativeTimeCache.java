@@ -0,0 +1,145 @@
+package com.neilsonmarcil.droidnewsreader.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Renders dates as "X time ago" like TimeFormatUtil.formatTimespanAgoFirstUnit for the rows of
+ * the lists. A label only depends on its unit and value, "5 hours ago" is the same text for every
+ * row, so each label is rendered once and kept. Binding a row then costs a few divisions and no
+ * allocation.
+ * The current time is read once per frame with now(), every row bound in the same layout pass
+ * uses the same time. getNextChange(...) tells when the label of a date changes so a row can skip
+ * setting the same text again.
+ * This class is not thread-safe, it is meant to be used on the UI thread.
+ */
+public class RelativeTimeCache {
+
+    private static final String TAG = "droidnewsreader";
+
+    /**
+     * Represents the number of values of each unit before the next unit is used, the number of
+     * labels kept for that unit. The centuries have no limit, only the first ones are kept.
+     */
+    private static final int[] UNIT_VALUES = { 10, 10, 10, 12, 30, 24, 60, 60, 1000 };
+
+    /**
+     * the labels rendered, by unit then by value. The arrays are created on first use.
+     */
+    private final String[][] mLabels = new String[UNIT_VALUES.length][];
+
+    /**
+     * renders the labels missing
+     */
+    private final StringBuilder mBuilder = new StringBuilder(24);
+
+    /**
+     * the time of the current frame, valid while mFrameStarted is true
+     */
+    private long mNow;
+
+    /**
+     * true from the first call to now() until the end of the current message of the UI thread
+     */
+    private boolean mFrameStarted;
+
+    /**
+     * ends the frame once the current layout pass is done, created on first use
+     */
+    private Handler mHandler;
+
+    private final Runnable mEndFrame = new Runnable() {
+        @Override
+        public void run() {
+            mFrameStarted = false;
+        }
+    };
+
+    /**
+     * Returns the current time of the frame. The first call reads the clock, the next calls in
+     * the same message of the UI thread return the same time. Must be called on the UI thread.
+     * @return the current time in milliseconds
+     */
+    public long now() {
+        if (!mFrameStarted) {
+            if (mHandler == null) {
+                mHandler = new Handler(Looper.getMainLooper());
+            }
+            mNow = System.currentTimeMillis();
+            mFrameStarted = true;
+            mHandler.post(mEndFrame);
+        }
+        return mNow;
+    }
+
+    /**
+     * Formats the time elapsed since a date with the current time of the frame
+     * @param date the date in milliseconds
+     * @return the same text as TimeFormatUtil.formatTimespanAgoFirstUnit(...)
+     */
+    public String format(long date) {
+        return format(date, now());
+    }
+
+    /**
+     * Formats the time elapsed since a date
+     * @param date the date in milliseconds
+     * @param now the current time in milliseconds
+     * @return the same text as TimeFormatUtil.formatTimespanAgoFirstUnit(now - date)
+     */
+    public String format(long date, long now) {
+        long elapsed = now - date;
+        if (elapsed <= 0) {
+            return "";
+        }
+
+        int unit = unitOf(elapsed);
+        long value = elapsed / TimeFormatUtil.UNIT_DIVIDERS[unit];
+        if (value >= UNIT_VALUES[unit]) {
+            // a date older than the oldest century kept, not worth keeping
+            return TimeFormatUtil.formatTimespanAgoFirstUnit(elapsed);
+        }
+
+        String[] labels = mLabels[unit];
+        if (labels == null) {
+            labels = new String[UNIT_VALUES[unit]];
+            mLabels[unit] = labels;
+        }
+
+        String label = labels[(int)value];
+        if (label == null) {
+            mBuilder.setLength(0);
+            label = TimeFormatUtil.appendTimespanAgoFirstUnit(value * TimeFormatUtil.UNIT_DIVIDERS[unit], mBuilder).toString();
+            labels[(int)value] = label;
+        }
+        return label;
+    }
+
+    /**
+     * Tells when the label of a date changes, either because its value or its unit changes.
+     * The label stays the same while the current time is before the returned time.
+     * @param date the date in milliseconds
+     * @param now the current time in milliseconds
+     * @return the time in milliseconds where format(date, time) returns another label
+     */
+    public long getNextChange(long date, long now) {
+        long elapsed = now - date;
+        if (elapsed <= 0) {
+            return date + 1;
+        }
+
+        long divider = TimeFormatUtil.UNIT_DIVIDERS[unitOf(elapsed)];
+        return date + (elapsed / divider + 1) * divider;
+    }
+
+    /**
+     * @return the largest unit shorter than the time elapsed, the unit displayed
+     */
+    private static int unitOf(long elapsed) {
+        int unit = 0;
+        while (elapsed < TimeFormatUtil.UNIT_DIVIDERS[unit]) {
+            unit++;
+        }
+        return unit;
+    }
+}
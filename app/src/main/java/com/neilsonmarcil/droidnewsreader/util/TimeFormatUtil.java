@@ -1,5 +1,8 @@
 package com.neilsonmarcil.droidnewsreader.util;
 
+import java.io.IOException;
+import java.nio.CharBuffer;
+
 /**
  * utility class to format time stamp.
  */
@@ -25,26 +28,13 @@ public class TimeFormatUtil {
     private static final long DECADE_DIVIDER = (YEAR_DIVIDER * YEAR_IN_DECADE);
     private static final long CENTURY_DIVIDER = (DECADE_DIVIDER * DECADE_IN_CENTURY);
 
-    private static final TimeUnitDescriptor DEFAULT_TIME_DESCRIPTOR = new TimeUnitDescriptor() {
-
-        private final String[] SINGLE_UNIT = { "century", "decade", "year", "month", "day", "hour", "minute", "second", "millisecond" };
-        private final String[] PLURAL_UNIT = { "centuries", "decades", "years", "months", "days", "hours", "minutes", "seconds", "milliseconds" };
-
-        @Override
-        public String getSingle(int i) {
-            return SINGLE_UNIT[i];
-        }
-
-        @Override
-        public String getPural(int i) {
-            return PLURAL_UNIT[i];
-        }
+    /**
+     * the length of each unit in milliseconds, in the order of the TimeUnitDescriptor
+     */
+    static final long[] UNIT_DIVIDERS = { CENTURY_DIVIDER, DECADE_DIVIDER, YEAR_DIVIDER, MONTH_DIVIDER,
+            DAY_DIVIDER, HOUR_DIVIDER, MINUTE_DIVIDER, SECOND_DIVIDER, 1 };
 
-        @Override
-        public String formatResult(String s) {
-            return String.format("%sago", s);
-        }
-    };
+    private static final DefaultTimeUnitDescriptor DEFAULT_TIME_DESCRIPTOR = new DefaultTimeUnitDescriptor();
 
     /**
      * Format the elapsed time in the of X time ago. It will display only the higher unit found.
@@ -55,14 +45,12 @@ public class TimeFormatUtil {
      */
     public static String formatTimespanAgoFirstUnit(long time, TimeUnitDescriptor desc) {
 
-        long[] data = getTimeCalculated(time);
-        StringBuilder b = new StringBuilder();
-        for (int i = 0; i < data.length; i++) {
-            if (data[i] > 0) {
-                return desc.formatResult(formatTimeWithUnit(b, data[i], i, desc).toString());
-            }
+        int unit = firstUnit(time);
+        if (unit < 0) {
+            return "";
         }
-        return "";
+        StringBuilder b = new StringBuilder();
+        return desc.formatResult(formatTimeWithUnit(b, unitValue(time, unit), unit, desc).toString());
     }
 
     /**
@@ -72,7 +60,7 @@ public class TimeFormatUtil {
      * @return a formatted timespan like X time ago.
      */
     public static String formatTimespanAgoFirstUnit(long time) {
-        return formatTimespanAgoFirstUnit(time, DEFAULT_TIME_DESCRIPTOR);
+        return appendTimespanAgoFirstUnit(time, new StringBuilder(24)).toString();
     }
 
     /**
@@ -84,11 +72,10 @@ public class TimeFormatUtil {
      */
     public static String formatTimespanAgo(long time, TimeUnitDescriptor desc) {
 
-        long[] data = getTimeCalculated(time);
         StringBuilder b = new StringBuilder();
 
-        for (int i = 0; i < data.length; i++) {
-            formatTimeWithUnit(b, data[i], i, desc);
+        for (int i = 0; i < UNIT_DIVIDERS.length; i++) {
+            formatTimeWithUnit(b, unitValue(time, i), i, desc);
         }
 
         return desc.formatResult(b.toString());
@@ -101,26 +88,185 @@ public class TimeFormatUtil {
      * @return the formatted time like X time ago
      */
     public static String formatTimespanAgo(long time) {
-        return formatTimespanAgo(time, DEFAULT_TIME_DESCRIPTOR);
+        return appendTimespanAgo(time, new StringBuilder(64)).toString();
+    }
+
+    /**
+     * Appends the elapsed time as X time ago with only the higher unit found, like
+     * formatTimespanAgoFirstUnit(long). Nothing is allocated once the builder is large enough.
+     * @param time the time in milliseconds
+     * @param b the StringBuilder to append to
+     * @return the StringBuilder passed as an argument
+     */
+    public static StringBuilder appendTimespanAgoFirstUnit(long time, StringBuilder b) {
+        return appendTimespanAgoFirstUnit(time, b, DEFAULT_TIME_DESCRIPTOR);
+    }
+
+    /**
+     * Appends the elapsed time as X time ago with only the higher unit found. Nothing is allocated
+     * once the builder is large enough.
+     * @param time the time in milliseconds
+     * @param b the StringBuilder to append to
+     * @param desc the AppendingTimeUnitDescriptor to append the time units and the wording
+     * @return the StringBuilder passed as an argument
+     */
+    public static StringBuilder appendTimespanAgoFirstUnit(long time, StringBuilder b, AppendingTimeUnitDescriptor desc) {
+        try {
+            appendTimespanAgo(time, b, desc, true);
+        }
+        catch (IOException ex) {
+            // a StringBuilder does not throw
+            throw new IllegalStateException(ex);
+        }
+        return b;
+    }
+
+    /**
+     * Appends the elapsed time as X time ago with only the higher unit found, like
+     * formatTimespanAgoFirstUnit(long). Nothing is allocated.
+     * @param time the time in milliseconds
+     * @param buffer the CharBuffer to append to, at its position
+     * @return the CharBuffer passed as an argument
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public static CharBuffer appendTimespanAgoFirstUnit(long time, CharBuffer buffer) {
+        return appendTimespanAgoFirstUnit(time, buffer, DEFAULT_TIME_DESCRIPTOR);
+    }
+
+    /**
+     * Appends the elapsed time as X time ago with only the higher unit found. Nothing is allocated.
+     * @param time the time in milliseconds
+     * @param buffer the CharBuffer to append to, at its position
+     * @param desc the AppendingTimeUnitDescriptor to append the time units and the wording
+     * @return the CharBuffer passed as an argument
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public static CharBuffer appendTimespanAgoFirstUnit(long time, CharBuffer buffer, AppendingTimeUnitDescriptor desc) {
+        try {
+            appendTimespanAgo(time, buffer, desc, true);
+        }
+        catch (IOException ex) {
+            // a CharBuffer does not throw
+            throw new IllegalStateException(ex);
+        }
+        return buffer;
+    }
+
+    /**
+     * Appends the elapsed time as X time ago with all the units greater than 0, like
+     * formatTimespanAgo(long). Nothing is allocated once the builder is large enough.
+     * @param time the elapsed time to display
+     * @param b the StringBuilder to append to
+     * @return the StringBuilder passed as an argument
+     */
+    public static StringBuilder appendTimespanAgo(long time, StringBuilder b) {
+        return appendTimespanAgo(time, b, DEFAULT_TIME_DESCRIPTOR);
+    }
+
+    /**
+     * Appends the elapsed time as X time ago with all the units greater than 0. Nothing is
+     * allocated once the builder is large enough.
+     * @param time the elapsed time to display
+     * @param b the StringBuilder to append to
+     * @param desc the AppendingTimeUnitDescriptor to append the time units and the wording
+     * @return the StringBuilder passed as an argument
+     */
+    public static StringBuilder appendTimespanAgo(long time, StringBuilder b, AppendingTimeUnitDescriptor desc) {
+        try {
+            appendTimespanAgo(time, b, desc, false);
+        }
+        catch (IOException ex) {
+            // a StringBuilder does not throw
+            throw new IllegalStateException(ex);
+        }
+        return b;
+    }
+
+    /**
+     * Appends the elapsed time as X time ago with all the units greater than 0, like
+     * formatTimespanAgo(long). Nothing is allocated.
+     * @param time the elapsed time to display
+     * @param buffer the CharBuffer to append to, at its position
+     * @return the CharBuffer passed as an argument
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public static CharBuffer appendTimespanAgo(long time, CharBuffer buffer) {
+        return appendTimespanAgo(time, buffer, DEFAULT_TIME_DESCRIPTOR);
+    }
+
+    /**
+     * Appends the elapsed time as X time ago with all the units greater than 0. Nothing is
+     * allocated.
+     * @param time the elapsed time to display
+     * @param buffer the CharBuffer to append to, at its position
+     * @param desc the AppendingTimeUnitDescriptor to append the time units and the wording
+     * @return the CharBuffer passed as an argument
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public static CharBuffer appendTimespanAgo(long time, CharBuffer buffer, AppendingTimeUnitDescriptor desc) {
+        try {
+            appendTimespanAgo(time, buffer, desc, false);
+        }
+        catch (IOException ex) {
+            // a CharBuffer does not throw
+            throw new IllegalStateException(ex);
+        }
+        return buffer;
+    }
+
+    /**
+     * Appends the elapsed time as X time ago to any Appendable, the StringBuilder and CharBuffer
+     * overloads are built on this one.
+     * @param time the elapsed time to display
+     * @param out the Appendable to append to
+     * @param desc the AppendingTimeUnitDescriptor to append the time units and the wording
+     * @param firstUnitOnly true to append only the higher unit found, like
+     *                      formatTimespanAgoFirstUnit(...), nothing is appended when the time is 0
+     * @throws IOException if the Appendable throws
+     */
+    public static void appendTimespanAgo(long time, Appendable out, AppendingTimeUnitDescriptor desc,
+                                         boolean firstUnitOnly) throws IOException {
+        if (firstUnitOnly) {
+            int unit = firstUnit(time);
+            if (unit < 0) {
+                return;
+            }
+            desc.appendPrefix(out);
+            appendTimeWithUnit(out, unitValue(time, unit), unit, desc);
+            desc.appendSuffix(out);
+            return;
+        }
+
+        desc.appendPrefix(out);
+        for (int i = 0; i < UNIT_DIVIDERS.length; i++) {
+            appendTimeWithUnit(out, unitValue(time, i), i, desc);
+        }
+        desc.appendSuffix(out);
     }
 
     /**
-     * calculate the time units according to the private static variables
+     * @return the index of the first unit with a value greater than 0, -1 if there is none
+     */
+    private static int firstUnit(long time) {
+        for (int i = 0; i < UNIT_DIVIDERS.length; i++) {
+            if (unitValue(time, i) > 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * calculate the value of a time unit according to the private static variables
      * @param time the time to calculated
-     * @return a array of long containing the value for each unit (century to millisecond)
+     * @param unit the index of the unit (century to millisecond)
+     * @return the value for the unit, without the higher units
      */
-    private static long[] getTimeCalculated(long time) {
-        long[] data = new long[9];
-        data[0] = time / CENTURY_DIVIDER;
-        data[1] = (time % CENTURY_DIVIDER) / DECADE_DIVIDER;
-        data[2] = (time % DECADE_DIVIDER) / YEAR_DIVIDER;
-        data[3] = (time % YEAR_DIVIDER) / MONTH_DIVIDER;
-        data[4] = (time % MONTH_DIVIDER) / DAY_DIVIDER;
-        data[5] = (time % DAY_DIVIDER) / HOUR_DIVIDER;
-        data[6] = (time % HOUR_DIVIDER) / MINUTE_DIVIDER;
-        data[7] = (time % MINUTE_DIVIDER) / (SECOND_DIVIDER);
-        data[8] = (time % SECOND_DIVIDER);
-        return data;
+    private static long unitValue(long time, int unit) {
+        if (unit == 0) {
+            return time / UNIT_DIVIDERS[0];
+        }
+        return (time % UNIT_DIVIDERS[unit - 1]) / UNIT_DIVIDERS[unit];
     }
 
     /**
@@ -142,6 +288,33 @@ public class TimeFormatUtil {
         return b;
     }
 
+    /**
+     * Same as formatTimeWithUnit(...) for any Appendable, the digits are appended one by one so
+     * nothing is allocated.
+     */
+    private static void appendTimeWithUnit(Appendable out, long t, int unit, AppendingTimeUnitDescriptor desc)
+            throws IOException {
+        if (t > 0) {
+            appendDigits(out, t);
+            out.append(' ');
+            desc.appendUnit(out, unit, t);
+            out.append(' ');
+        }
+    }
+
+    /**
+     * appends a positive number without creating a String
+     */
+    private static void appendDigits(Appendable out, long t) throws IOException {
+        long divider = 1;
+        while (t / divider >= 10) {
+            divider *= 10;
+        }
+        for (; divider > 0; divider /= 10) {
+            out.append((char)('0' + (t / divider) % 10));
+        }
+    }
+
     /**
      * This interface defines how to retreive language specific time unit and how to format the final
      * result. The names must stored in an array in that particular order Century, decades, year,
@@ -172,5 +345,74 @@ public class TimeFormatUtil {
         String formatResult(String s);
     }
 
+    /**
+     * Same role as the TimeUnitDescriptor for the append methods, the names and the wording are
+     * appended instead of being returned as Strings. The X time part is appended between
+     * appendPrefix(...) and appendSuffix(...), for example "5 hours 5 minutes " for English.
+     * Implementations should append constant Strings so nothing is allocated.
+     */
+    public interface AppendingTimeUnitDescriptor {
+        /**
+         * append the single or plural form of a time unit.
+         * @param out the Appendable to append to
+         * @param unit the index of the unit, century to millisecond
+         * @param value the value of the unit, always greater than 0
+         * @throws IOException if the Appendable throws
+         */
+        void appendUnit(Appendable out, int unit, long value) throws IOException;
+
+        /**
+         * append the wording before the X time (ex: nothing in English)
+         * @param out the Appendable to append to
+         * @throws IOException if the Appendable throws
+         */
+        void appendPrefix(Appendable out) throws IOException;
+
+        /**
+         * append the wording after the X time (ex: <b>ago</b> in English)
+         * @param out the Appendable to append to
+         * @throws IOException if the Appendable throws
+         */
+        void appendSuffix(Appendable out) throws IOException;
+    }
+
+    /**
+     * The English names, usable with both the format and the append methods.
+     */
+    private static class DefaultTimeUnitDescriptor implements TimeUnitDescriptor, AppendingTimeUnitDescriptor {
+
+        private final String[] SINGLE_UNIT = { "century", "decade", "year", "month", "day", "hour", "minute", "second", "millisecond" };
+        private final String[] PLURAL_UNIT = { "centuries", "decades", "years", "months", "days", "hours", "minutes", "seconds", "milliseconds" };
+
+        @Override
+        public String getSingle(int i) {
+            return SINGLE_UNIT[i];
+        }
+
+        @Override
+        public String getPural(int i) {
+            return PLURAL_UNIT[i];
+        }
+
+        @Override
+        public String formatResult(String s) {
+            return s + "ago";
+        }
+
+        @Override
+        public void appendUnit(Appendable out, int unit, long value) throws IOException {
+            out.append(value == 1 ? SINGLE_UNIT[unit] : PLURAL_UNIT[unit]);
+        }
+
+        @Override
+        public void appendPrefix(Appendable out) {
+        }
+
+        @Override
+        public void appendSuffix(Appendable out) throws IOException {
+            out.append("ago");
+        }
+    }
+
 
 }
\ No newline at end of file
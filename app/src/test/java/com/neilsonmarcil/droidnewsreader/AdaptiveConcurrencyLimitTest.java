@@ -0,0 +1,128 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.AdaptiveConcurrencyLimit;
+import com.neilsonmarcil.droidnewsreader.data.FetchHandle;
+import com.neilsonmarcil.droidnewsreader.data.FetchScheduler;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test how the AdaptiveConcurrencyLimit grows and shrinks, and the FetchScheduler following it.
+ */
+@RunWith(JUnit4.class)
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final List<Integer> mChanges = new ArrayList<>();
+
+    private final AdaptiveConcurrencyLimit mLimit = new AdaptiveConcurrencyLimit(2, 4, 8, new AdaptiveConcurrencyLimit.Listener() {
+        @Override
+        public void onLimitChanged(int limit) {
+            mChanges.add(limit);
+        }
+    });
+
+    @Test
+    public void growsByOneAfterAFullLimitOfSuccesses() {
+        success(3);
+        assertThat(mLimit.getLimit(), is(4));
+
+        success(1);
+        assertThat(mLimit.getLimit(), is(5));
+
+        success(5);
+        assertThat(mLimit.getLimit(), is(6));
+
+        // capped at the max
+        success(100);
+        assertThat(mLimit.getLimit(), is(8));
+        assertThat(mChanges.toString(), is("[5, 6, 7, 8]"));
+    }
+
+    @Test
+    public void aBurstOfFailuresCutsOnce() {
+        success(4 + 5 + 6);
+        assertThat(mLimit.getLimit(), is(7));
+
+        // the 7 requests in flight all fail together
+        for (int i = 0; i < 7; i++) {
+            mLimit.onDropped();
+        }
+        assertThat(mLimit.getLimit(), is(4));
+        assertThat(mLimit.getDecreaseCount(), is(1));
+
+        // a request started after the cut fails too
+        mLimit.onDropped();
+        assertThat(mLimit.getLimit(), is(2));
+
+        // never under the min
+        for (int i = 0; i < 10; i++) {
+            mLimit.onDropped();
+        }
+        assertThat(mLimit.getLimit(), is(2));
+        assertThat(mChanges.toString(), is("[5, 6, 7, 4, 2]"));
+    }
+
+    @Test
+    public void risingLatencyCutsTheLimit() {
+        success(4 + 5);
+        assertThat(mLimit.getLimit(), is(6));
+
+        // the link starts queuing, the smoothed latency climbs over twice the best one
+        for (int i = 0; i < 20 && mLimit.getLimit() == 6; i++) {
+            mLimit.onSuccess(LATENCY * 10);
+        }
+        assertThat(mLimit.getLimit(), is(4));
+        assertThat(mLimit.getDecreaseCount(), is(1));
+    }
+
+    @Test
+    public void schedulerFollowsTheLimit() throws Exception {
+        FetchScheduler scheduler = new FetchScheduler(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(3);
+        FetchHandle handle = new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+
+        for (int i = 0; i < 3; i++) {
+            scheduler.execute(handle, new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, null);
+        }
+
+        // the requests waiting start as soon as there are more threads
+        scheduler.setConcurrency(3);
+        assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(scheduler.getConcurrency(), is(3));
+
+        scheduler.setConcurrency(1);
+        assertThat(scheduler.getConcurrency(), is(1));
+        release.countDown();
+        scheduler.shutdown();
+    }
+
+    private void success(int count) {
+        for (int i = 0; i < count; i++) {
+            mLimit.onSuccess(LATENCY);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.BatchFetcher;
+import com.neilsonmarcil.droidnewsreader.data.BatchResult;
+import com.neilsonmarcil.droidnewsreader.data.FetchHandle;
+import com.neilsonmarcil.droidnewsreader.data.FetchScheduler;
+import com.neilsonmarcil.droidnewsreader.data.ItemCache;
+import com.neilsonmarcil.droidnewsreader.data.ItemFetcher;
+import com.neilsonmarcil.droidnewsreader.data.StripedItemCache;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test the BatchFetcher deduplicates the ids, serves the items in memory without loading them
+ * and reports the outcome of every id.
+ */
+@RunWith(JUnit4.class)
+public class BatchFetcherTest {
+
+    private final ItemFetcher mFetcher = new ItemFetcher(new FetchScheduler(2));
+
+    private final StripedItemCache<String> mCache = new StripedItemCache<>(10000, new ItemCache.Sizer<String>() {
+        @Override
+        public int sizeOf(String value) {
+            return value.length();
+        }
+    });
+
+    /**
+     * the ids loaded, the failing ones included
+     */
+    private final List<Integer> mLoaded = Collections.synchronizedList(new ArrayList<Integer>());
+
+    /**
+     * id 13 fails, id 14 times out on the network, id 15 waits for mRelease
+     */
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    private final ItemFetcher.Loader<String> mLoader = new ItemFetcher.Loader<String>() {
+        @Override
+        public String load(int id) throws Exception {
+            mLoaded.add(id);
+            if (id == 13) {
+                throw new IOException("HTTP 500");
+            }
+            if (id == 14) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+            if (id == 15) {
+                mRelease.await(5, TimeUnit.SECONDS);
+            }
+            return "item" + id;
+        }
+    };
+
+    @After
+    public void shutdown() {
+        mRelease.countDown();
+        mFetcher.shutdown();
+    }
+
+    @Test
+    public void cachedAndLoaded() {
+        mCache.put(2, "cached2");
+        BatchFetcher<String> batch = new BatchFetcher<>(mFetcher, mCache, mLoader);
+
+        BatchResult<String> result = batch.fetch(new int[] { 1, 2, 3, 1, 2 }, null, 0, null);
+
+        assertThat(result.size(), is(3));
+        assertThat(result.getAt(0).Id, is(1));
+        assertThat(result.get(1).Status, is(BatchResult.ItemStatus.OK));
+        assertThat(result.get(2).Status, is(BatchResult.ItemStatus.CACHED));
+        assertThat(result.getItem(2), is("cached2"));
+        assertThat(result.getItems(), is(Arrays.asList("item1", "cached2", "item3")));
+        assertThat(result.isComplete(), is(true));
+
+        // the duplicates and the item in memory are not loaded
+        Collections.sort(mLoaded);
+        assertThat(mLoaded, is(Arrays.asList(1, 3)));
+    }
+
+    @Test
+    public void partialFailure() {
+        BatchFetcher<String> batch = new BatchFetcher<>(mFetcher, mCache, mLoader);
+
+        BatchResult<String> result = batch.fetch(new int[] { 12, 13, 14 }, null, 0, null);
+
+        assertThat(result.get(12).Status, is(BatchResult.ItemStatus.OK));
+        assertThat(result.get(13).Status, is(BatchResult.ItemStatus.FAILED));
+        assertThat(result.get(13).Error.getMessage(), is("HTTP 500"));
+        assertThat(result.get(14).Status, is(BatchResult.ItemStatus.TIMEOUT));
+        assertThat(result.getItem(13), nullValue());
+        assertThat(result.getItems(), is(Collections.singletonList("item12")));
+        assertThat(result.isComplete(), is(false));
+    }
+
+    @Test
+    public void batchTimeout() throws InterruptedException {
+        BatchFetcher<String> batch = new BatchFetcher<>(mFetcher, mCache, mLoader);
+        final AtomicInteger reported = new AtomicInteger();
+
+        BatchResult<String> result = batch.fetch(new int[] { 15, 16 }, null, 200, new ItemFetcher.Callback<String>() {
+            @Override
+            public void onItem(int index, int id, String item) {
+                reported.incrementAndGet();
+            }
+
+            @Override
+            public void onFailure(int index, int id, Exception ex) {
+                reported.incrementAndGet();
+            }
+        });
+
+        assertThat(result.get(15).Status, is(BatchResult.ItemStatus.TIMEOUT));
+        assertThat(result.get(16).Status, is(BatchResult.ItemStatus.OK));
+
+        // the item arriving after the timeout changes nothing
+        mRelease.countDown();
+        Thread.sleep(100);
+        assertThat(result.get(15).Status, is(BatchResult.ItemStatus.TIMEOUT));
+        assertThat(reported.get(), is(1));
+    }
+
+    @Test
+    public void cancelled() {
+        BatchFetcher<String> batch = new BatchFetcher<>(mFetcher, mCache, mLoader);
+        FetchHandle handle = new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+        handle.cancel();
+        mCache.put(2, "cached2");
+
+        BatchResult<String> result = batch.fetch(new int[] { 1, 2 }, handle, 0, null);
+
+        assertThat(result.get(1).Status, is(BatchResult.ItemStatus.CANCELLED));
+        assertThat(result.get(2).Status, is(BatchResult.ItemStatus.CACHED));
+        assertThat(mLoaded.isEmpty(), is(true));
+    }
+
+    @Test
+    public void callbackReceivesEveryPosition() {
+        mCache.put(2, "cached2");
+        BatchFetcher<String> batch = new BatchFetcher<>(mFetcher, mCache, mLoader);
+        final String[] positions = new String[5];
+
+        batch.fetch(new int[] { 1, 2, 13, 1, 2 }, null, 0, new ItemFetcher.Callback<String>() {
+            @Override
+            public void onItem(int index, int id, String item) {
+                positions[index] = item;
+            }
+
+            @Override
+            public void onFailure(int index, int id, Exception ex) {
+                positions[index] = "failed" + id;
+            }
+        });
+
+        assertThat(Arrays.asList(positions), is(Arrays.asList("item1", "cached2", "failed13", "item1", "cached2")));
+    }
+}
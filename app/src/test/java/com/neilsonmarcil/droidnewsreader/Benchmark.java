@@ -0,0 +1,114 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Minimal harness for the micro benchmarks. An operation is warmed up then timed over several
+ * rounds, the fastest round is kept to leave out the pauses of the GC and the JIT. The bytes
+ * allocated by the current thread are read from the JVM when it supports it. The results are
+ * printed and not asserted, they depend on the machine running the tests.
+ * The classes named *Benchmark are left out of the unit tests, the build runs them when the
+ * benchmarks property is set: ./gradlew testDebugUnitTest -Pbenchmarks --tests '*Benchmark'
+ */
+public class Benchmark {
+
+    /**
+     * the number of warm up rounds before measuring
+     */
+    private static final int WARMUP_ROUNDS = 5;
+
+    /**
+     * the number of rounds measured, the fastest one is kept
+     */
+    private static final int MEASURE_ROUNDS = 5;
+
+    /**
+     * a result computed by the operations is kept here so the JIT cannot remove the work
+     */
+    public static volatile long sink;
+
+    /**
+     * Runs the operation and returns the cost of a single iteration
+     * @param name the name printed with the result
+     * @param iterations the number of iterations per round
+     * @param op the operation to measure
+     * @return the result, already printed
+     */
+    public static Result measure(String name, int iterations, Operation op) {
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += op.run(iterations);
+        }
+
+        long allocatedBefore = allocatedBytes();
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += op.run(iterations);
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+        long allocatedAfter = allocatedBytes();
+
+        Result result = new Result(name, (double)fastest / iterations,
+                allocatedBefore < 0 ? -1 : (double)(allocatedAfter - allocatedBefore) / MEASURE_ROUNDS / iterations);
+        report(result.toString());
+        return result;
+    }
+
+    /**
+     * Prints a line with the results, every benchmark reports through here
+     * @param line the line to print
+     */
+    public static void report(String line) {
+        System.out.println(line);
+    }
+
+    /**
+     * @return the bytes allocated by the current thread, -1 if the JVM does not tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        try {
+            // com.sun.management.ThreadMXBean is not available on every JVM
+            Class<?> c = Class.forName("com.sun.management.ThreadMXBean");
+            Method m = c.getMethod("getThreadAllocatedBytes", long.class);
+            return (Long)m.invoke(bean, Thread.currentThread().getId());
+        }
+        catch (Exception ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * The work to measure
+     */
+    public interface Operation {
+        /**
+         * @param iterations the number of iterations to run
+         * @return any value computed by the work
+         */
+        int run(int iterations);
+    }
+
+    /**
+     * The cost of a single iteration
+     */
+    public static class Result {
+        public final String name;
+        public final double nanosPerOp;
+        public final double bytesPerOp;
+
+        public Result(String name, double nanosPerOp, double bytesPerOp) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-45s %12.1f ns/op %12.1f B/op", name, nanosPerOp, bytesPerOp);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import android.content.ComponentCallbacks2;
+
+import com.neilsonmarcil.droidnewsreader.adapter.CommentHtmlCache;
+import com.neilsonmarcil.droidnewsreader.dto.NewsComment;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test that the CommentHtmlCache renders the bodies only through render(...), serves them to
+ * get(...) and falls back to plain text on a miss. The HTML is "rendered" by tagging it, the
+ * test does not depend on android.text.Html.
+ */
+@RunWith(JUnit4.class)
+public class CommentHtmlCacheTest {
+
+    private final List<String> mRendered = new ArrayList<>();
+
+    private final CommentHtmlCache mCache = new CommentHtmlCache(100000) {
+        @Override
+        protected CharSequence fromHtml(String html) {
+            mRendered.add(html);
+            return "rendered " + html;
+        }
+    };
+
+    @Test
+    public void getServesWhatRenderCached() {
+        NewsComment comment = comment(1, "<i>Hello</i>");
+        assertThat(mCache.render(comment).toString(), is("rendered <i>Hello</i>"));
+        assertThat(mCache.render(comment).toString(), is("rendered <i>Hello</i>"));
+
+        assertThat(mCache.get(comment).toString(), is("rendered <i>Hello</i>"));
+        assertThat(mRendered.size(), is(1));
+        assertThat(mCache.getCount(), is(1));
+    }
+
+    @Test
+    public void aMissIsPlainTextAndNotRendered() {
+        NewsComment comment = comment(1, "First<p>Second &amp; <a href=\"x\">third</a>");
+
+        assertThat(mCache.get(comment).toString(), is("First\n\nSecond & third"));
+        assertThat(mRendered.size(), is(0));
+        assertThat(mCache.getCount(), is(0));
+
+        // an edited body is not served from the previous rendering
+        mCache.render(comment);
+        comment.Body = "Edited";
+        assertThat(mCache.get(comment).toString(), is("Edited"));
+        assertThat(mRendered.size(), is(1));
+    }
+
+    @Test
+    public void evictedBodiesFallBackToPlainText() {
+        NewsComment comment = comment(1, "Hello");
+        mCache.render(comment);
+        mCache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+
+        assertThat(mCache.getCount(), is(0));
+        assertThat(mCache.get(comment).toString(), is("Hello"));
+
+        // a deleted comment has no body
+        assertThat(mCache.get(comment(2, null)).toString(), is(""));
+    }
+
+    @Test
+    public void plainTextDecodesTheEntities() {
+        assertThat(CommentHtmlCache.toPlainText("It&#x27;s &quot;fine&quot; &lt;3 &#47; &gt;"), is("It's \"fine\" <3 / >"));
+        assertThat(CommentHtmlCache.toPlainText("<p>Starts with a paragraph"), is("Starts with a paragraph"));
+        assertThat(CommentHtmlCache.toPlainText("<pre><code>a &&amp; b</code></pre>"), is("a && b"));
+        assertThat(CommentHtmlCache.toPlainText("Unknown &entity; and &#xZZ; stay"), is("Unknown &entity; and &#xZZ; stay"));
+        assertThat(CommentHtmlCache.toPlainText("Cut <a href"), is("Cut "));
+    }
+
+    private static NewsComment comment(int id, String body) {
+        NewsComment comment = new NewsComment();
+        comment.Id = id;
+        comment.Body = body;
+        return comment;
+    }
+}
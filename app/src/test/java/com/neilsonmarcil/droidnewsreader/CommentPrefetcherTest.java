@@ -0,0 +1,149 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.CommentPrefetcher;
+import com.neilsonmarcil.droidnewsreader.data.HttpStatusException;
+import com.neilsonmarcil.droidnewsreader.data.HttpTransport;
+import com.neilsonmarcil.droidnewsreader.data.RESTDataLayer;
+import com.neilsonmarcil.droidnewsreader.data.RequestTiming;
+import com.neilsonmarcil.droidnewsreader.data.StreamBuffer;
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test that the prefetcher warms the comments of the window within its budget. Comment n has
+ * the replies 10n+1 and 10n+2, the replies have none.
+ */
+@RunWith(JUnit4.class)
+public class CommentPrefetcherTest {
+
+    private final AtomicInteger mRequests = new AtomicInteger();
+
+    /**
+     * the comment the host does not return, 0 for none
+     */
+    private volatile int mFailing;
+
+    private final RESTDataLayer mDataLayer = new RESTDataLayer(new HttpTransport() {
+        @Override
+        public StreamBuffer get(String path, RequestTiming timing) throws IOException {
+            mRequests.incrementAndGet();
+            int id = Integer.parseInt(path.substring("item/".length(), path.length() - ".json".length()));
+            if (id == mFailing) {
+                throw new HttpStatusException(404, path);
+            }
+            String kids = id < 1000 ? "[" + (id * 10 + 1) + "," + (id * 10 + 2) + "]" : "[]";
+            byte[] json = ("{\"id\":" + id + ",\"by\":\"author\",\"time\":1460000000,\"parent\":1," +
+                           "\"text\":\"Comment\",\"kids\":" + kids + "}").getBytes(StreamBuffer.UTF8);
+            return StreamBuffer.obtain().readFrom(new ByteArrayInputStream(json), json.length);
+        }
+    }) { };
+
+    @Test
+    public void warmsCommentsAndFirstReply() throws Exception {
+        CommentPrefetcher prefetcher = new CommentPrefetcher(mDataLayer, mDataLayer.getScheduler(), allowed(true), 3, 100);
+        prefetcher.setWindow(Arrays.asList(story(1, 4), story(2, 5, 6)));
+
+        waitForRequests(2 + 4);
+        prefetcher.shutdown();
+
+        assertThat(prefetcher.getBudget(), is(100 - 6));
+        assertThat(mDataLayer.getCommentsCache().getCount(), is(6));
+        assertThat(mDataLayer.getCommentsCache().getHitCount(), is(0L));
+    }
+
+    @Test
+    public void stopsAtTheBudget() throws Exception {
+        CommentPrefetcher prefetcher = new CommentPrefetcher(mDataLayer, mDataLayer.getScheduler(), allowed(true), 10, 5);
+        prefetcher.setWindow(Collections.singletonList(story(1, 4, 5, 6, 7)));
+
+        waitForRequests(5);
+        Thread.sleep(50);
+        prefetcher.shutdown();
+
+        assertThat(mRequests.get(), is(5));
+        assertThat(prefetcher.getBudget(), is(0));
+    }
+
+    @Test
+    public void commentsInMemoryDoNotUseTheBudget() throws Exception {
+        mDataLayer.getSpecificComment(4);
+        mDataLayer.getSpecificComment(41);
+        mRequests.set(0);
+
+        CommentPrefetcher prefetcher = new CommentPrefetcher(mDataLayer, mDataLayer.getScheduler(), allowed(true), 3, 100);
+        prefetcher.setWindow(Collections.singletonList(story(1, 4, 5)));
+
+        waitForRequests(2);
+        Thread.sleep(50);
+        prefetcher.shutdown();
+
+        assertThat(mRequests.get(), is(2));
+        assertThat(prefetcher.getBudget(), is(100 - 2));
+    }
+
+    @Test
+    public void aStoryWithAFailureIsTriedAgain() throws Exception {
+        mFailing = 6;
+        CommentPrefetcher prefetcher = new CommentPrefetcher(mDataLayer, mDataLayer.getScheduler(), allowed(true), 3, 100);
+        prefetcher.setWindow(Collections.singletonList(story(1, 6)));
+        waitForRequests(1);
+        Thread.sleep(50);
+
+        // the host is back, the next window warms the story
+        mFailing = 0;
+        prefetcher.setWindow(Collections.singletonList(story(1, 6)));
+        waitForRequests(3);
+        prefetcher.shutdown();
+
+        assertThat(mDataLayer.getCachedComment(6).Id, is(6));
+        assertThat(mDataLayer.getCachedComment(61).Id, is(61));
+        assertThat(prefetcher.getBudget(), is(100 - 3));
+    }
+
+    @Test
+    public void nothingWhenNotAllowed() throws Exception {
+        CommentPrefetcher prefetcher = new CommentPrefetcher(mDataLayer, mDataLayer.getScheduler(), allowed(false), 10, 100);
+        prefetcher.setWindow(Collections.singletonList(story(1, 4, 5)));
+
+        Thread.sleep(50);
+        prefetcher.shutdown();
+
+        assertThat(mRequests.get(), is(0));
+    }
+
+    private void waitForRequests(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mRequests.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(mRequests.get(), is(count));
+    }
+
+    private static SingleNews story(int id, int... comments) {
+        SingleNews news = new SingleNews();
+        news.Id = id;
+        news.Comments = comments;
+        return news;
+    }
+
+    private static CommentPrefetcher.Policy allowed(final boolean allowed) {
+        return new CommentPrefetcher.Policy() {
+            @Override
+            public boolean isPrefetchAllowed() {
+                return allowed;
+            }
+        };
+    }
+}
@@ -0,0 +1,155 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.CommentTreeLoader;
+import com.neilsonmarcil.droidnewsreader.data.DataLayer;
+import com.neilsonmarcil.droidnewsreader.data.ItemFetcher;
+import com.neilsonmarcil.droidnewsreader.dto.NewsComment;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test the shape of the trees built by the CommentTreeLoader with an in memory thread of
+ * comments: id n has the replies 10n+1 to 10n+3, up to 4 levels.
+ */
+@RunWith(JUnit4.class)
+public class CommentTreeLoaderTest {
+
+    private final ItemFetcher mFetcher = new ItemFetcher();
+    private final HashMap<Integer, NewsComment> mThread = new HashMap<>();
+    private final Set<Integer> mFailing = new HashSet<>();
+
+    private final ItemFetcher.Loader<NewsComment> mLoader = new ItemFetcher.Loader<NewsComment>() {
+        @Override
+        public NewsComment load(int id) throws Exception {
+            if (mFailing.contains(id)) {
+                throw new IOException("offline");
+            }
+            return mThread.get(id);
+        }
+    };
+
+    public CommentTreeLoaderTest() {
+        for (int id = 1; id < 10000; id++) {
+            NewsComment comment = new NewsComment();
+            comment.Id = id;
+            comment.CommentsIds = id < 1000 ? new int[] { id * 10 + 1, id * 10 + 2, id * 10 + 3 } : new int[0];
+            mThread.put(id, comment);
+        }
+    }
+
+    @After
+    public void shutdown() {
+        mFetcher.shutdown();
+    }
+
+    @Test
+    public void defaultShape() {
+        NewsComment[] roots = new CommentTreeLoader(mFetcher, mLoader, 2, new int[] { 2, 1 }).load(new int[] { 1, 2, 3 });
+
+        assertThat(roots.length, is(2));
+        assertThat(roots[0].Id, is(1));
+        assertThat(roots[1].Id, is(2));
+        assertThat(roots[0].Replies.length, is(1));
+        assertThat(roots[0].Replies[0].Id, is(11));
+        assertThat(roots[1].Replies[0].Id, is(21));
+        assertThat(roots[0].Replies[0].Replies.length, is(0));
+    }
+
+    @Test
+    public void lastChildrenValueAppliesToDeeperLevels() {
+        NewsComment[] roots = new CommentTreeLoader(mFetcher, mLoader, 4, new int[] { 1, 3, 2 }).load(new int[] { 1 });
+
+        assertThat(countNodes(roots), is(1 + 3 + 3 * 2 + 3 * 2 * 2));
+        assertThat(roots[0].Replies[2].Id, is(13));
+        assertThat(roots[0].Replies[2].Replies[1].Id, is(132));
+        assertThat(roots[0].Replies[2].Replies[1].Replies[1].Id, is(1322));
+        assertThat(roots[0].Replies[2].Replies[1].Replies[1].Replies.length, is(0));
+    }
+
+    @Test
+    public void failedCommentsAreLeftOut() {
+        mFailing.add(2);
+        mFailing.add(12);
+
+        NewsComment[] roots = new CommentTreeLoader(mFetcher, mLoader, 3, new int[] { 3 }).load(new int[] { 1, 2, 3 });
+
+        assertThat(roots.length, is(2));
+        assertThat(roots[0].Id, is(1));
+        assertThat(roots[1].Id, is(3));
+        assertThat(roots[0].Replies.length, is(2));
+        assertThat(roots[0].Replies[0].Id, is(11));
+        assertThat(roots[0].Replies[1].Id, is(13));
+        assertThat(countNodes(roots), is(2 + 5 + 15));
+    }
+
+    @Test
+    public void shallowLoadResetsDeeperReplies() {
+        new CommentTreeLoader(mFetcher, mLoader, 3, new int[] { 1 }).load(new int[] { 1 });
+        NewsComment[] roots = new CommentTreeLoader(mFetcher, mLoader, 1, new int[] { 1 }).load(new int[] { 1 });
+
+        assertThat(roots.length, is(1));
+        assertThat(roots[0].Replies.length, is(0));
+    }
+
+    @Test
+    public void commentsInMemoryAreNotChanged() {
+        NewsComment[] deep = new CommentTreeLoader(mFetcher, mLoader, 3, new int[] { 2 }).load(new int[] { 1 });
+        NewsComment[] shallow = new CommentTreeLoader(mFetcher, mLoader, 1, new int[] { 1 }).load(new int[] { 1 });
+
+        // every tree links its own nodes
+        assertThat(mThread.get(1).Replies.length, is(0));
+        assertThat(mThread.get(11).Replies.length, is(0));
+        assertThat(deep[0].Replies[0].Replies.length, is(2));
+        assertThat(shallow[0].Replies.length, is(0));
+        assertThat(deep[0] == shallow[0], is(false));
+        assertThat(deep[0].CommentsIds, is(mThread.get(1).CommentsIds));
+    }
+
+    @Test
+    public void listenerReceivesCommentsInOrderThenReplies() {
+        mFailing.add(3);
+        final ArrayList<String> events = new ArrayList<>();
+
+        NewsComment[] roots = new CommentTreeLoader(mFetcher, mLoader, 2, new int[] { 5, 1 })
+                .load(new int[] { 1, 2, 3, 4, 5 }, new DataLayer.CommentsListener() {
+                    @Override
+                    public void onComment(int position, NewsComment comment) {
+                        events.add("comment " + position + ":" + comment.Id);
+                    }
+
+                    @Override
+                    public void onReplies(NewsComment comment) {
+                        events.add("replies " + comment.Id + ":" + comment.Replies[0].Id);
+                    }
+
+                    @Override
+                    public void onComplete(int count) {
+                        events.add("complete " + count);
+                    }
+                }, null);
+
+        assertThat(roots.length, is(4));
+        assertThat(events.toString(), is("[comment 0:1, comment 1:2, comment 2:4, comment 3:5, " +
+                "replies 1:11, replies 2:21, replies 4:41, replies 5:51, complete 4]"));
+    }
+
+    private static int countNodes(NewsComment[] comments) {
+        int count = comments.length;
+        for (NewsComment comment : comments) {
+            count += countNodes(comment.Replies);
+        }
+        return count;
+    }
+}
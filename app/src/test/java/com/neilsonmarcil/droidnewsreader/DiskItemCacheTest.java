@@ -0,0 +1,264 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.DiskItemCache;
+import com.neilsonmarcil.droidnewsreader.data.HttpTransport;
+import com.neilsonmarcil.droidnewsreader.data.RESTDataLayer;
+import com.neilsonmarcil.droidnewsreader.data.RequestTiming;
+import com.neilsonmarcil.droidnewsreader.data.StreamBuffer;
+import com.neilsonmarcil.droidnewsreader.dto.NewsComment;
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test the records of the DiskItemCache: the round trip, the TTLs, the versions, the purge and the
+ * replacement of a record, and the RESTDataLayer serving a stale record.
+ */
+@RunWith(JUnit4.class)
+public class DiskItemCacheTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private DiskItemCache mCache;
+
+    @Before
+    public void createCache() throws IOException {
+        mDirectory = new File(mFolder.getRoot(), "items");
+        mCache = new DiskItemCache(mDirectory);
+    }
+
+    @Test
+    public void storyRoundTrip() {
+        mCache.writeNews(story(1, "Story \u00e9t\u00e9", 42, 10, 11));
+
+        DiskItemCache.Record<SingleNews> record = mCache.readNews(1);
+        SingleNews news = record.Item;
+        assertThat(news.Id, is(1));
+        assertThat(news.Title, is("Story \u00e9t\u00e9"));
+        assertThat(news.Author, is("author"));
+        assertThat(news.Url, is(nullValue()));
+        assertThat(news.Date, is(1460000000000L));
+        assertThat(news.Score, is(42));
+        assertThat(Arrays.toString(news.Comments), is("[10, 11]"));
+        assertThat(record.isFresh(), is(true));
+
+        assertThat(mCache.readNews(2), is(nullValue()));
+    }
+
+    @Test
+    public void commentRoundTrip() {
+        NewsComment comment = new NewsComment();
+        comment.Id = 10;
+        comment.ParentId = 1;
+        comment.Author = "author";
+        comment.Body = "<p>Body</p>";
+        comment.Date = 1460000000000L;
+        comment.CommentsIds = new int[] { 100, 101 };
+        mCache.writeComment(comment);
+
+        NewsComment read = mCache.readComment(10).Item;
+        assertThat(read.Id, is(10));
+        assertThat(read.ParentId, is(1));
+        assertThat(read.Author, is("author"));
+        assertThat(read.Body, is("<p>Body</p>"));
+        assertThat(read.Date, is(1460000000000L));
+        assertThat(Arrays.toString(read.CommentsIds), is("[100, 101]"));
+
+        // the stories and comments do not share their files
+        assertThat(mCache.readNews(10), is(nullValue()));
+    }
+
+    @Test
+    public void freshnessFollowsTheTtlOfTheType() throws IOException {
+        mCache.writeNews(story(1, "Story", 1));
+        mCache.writeComment(new NewsComment());
+
+        // saved 10 minutes ago: over the TTL of a story, within the one of a comment
+        long tenMinutesAgo = System.currentTimeMillis() - 10 * 60 * 1000L;
+        setSavedAt(new File(mDirectory, "s1"), tenMinutesAgo);
+        setSavedAt(new File(mDirectory, "c0"), tenMinutesAgo);
+
+        DiskItemCache.Record<SingleNews> story = mCache.readNews(1);
+        assertThat(story.SavedAt, is(tenMinutesAgo));
+        assertThat(story.isFresh(), is(false));
+        assertThat(story.Item.Title, is("Story"));
+        assertThat(mCache.readComment(0).isFresh(), is(true));
+
+        long now = System.currentTimeMillis();
+        assertThat(new DiskItemCache.Record<>("a", now - DiskItemCache.STORY_TTL + 1000, DiskItemCache.STORY_TTL).isFresh(), is(true));
+        assertThat(new DiskItemCache.Record<>("a", now - DiskItemCache.STORY_TTL - 1, DiskItemCache.STORY_TTL).isFresh(), is(false));
+        assertThat(new DiskItemCache.Record<>("a", now - DiskItemCache.COMMENT_TTL - 1, DiskItemCache.COMMENT_TTL).isFresh(), is(false));
+    }
+
+    @Test
+    public void otherVersionsAreIgnored() throws IOException {
+        mCache.writeNews(story(1, "Story", 1));
+        File file = new File(mDirectory, "s1");
+        byte[] bytes = readAll(file);
+        bytes[3] = 2;
+        writeAll(file, bytes);
+        assertThat(mCache.readNews(1), is(nullValue()));
+
+        // a truncated record is ignored too
+        mCache.writeNews(story(2, "Story", 1));
+        file = new File(mDirectory, "s2");
+        writeAll(file, Arrays.copyOf(readAll(file), 20));
+        assertThat(mCache.readNews(2), is(nullValue()));
+    }
+
+    @Test
+    public void purgeDeletesTheOldFilesOnly() throws IOException {
+        mCache.writeNews(story(1, "Old", 1));
+        mCache.writeNews(story(2, "Recent", 1));
+        File leftover = new File(mDirectory, "tmp-s123.tmp");
+        writeAll(leftover, new byte[] { 1 });
+
+        long old = System.currentTimeMillis() - DiskItemCache.MAX_AGE - 60000;
+        assertThat(new File(mDirectory, "s1").setLastModified(old), is(true));
+        assertThat(leftover.setLastModified(old), is(true));
+
+        assertThat(mCache.purgeExpired(), is(2));
+        assertThat(mCache.readNews(1), is(nullValue()));
+        assertThat(mCache.readNews(2).Item.Title, is("Recent"));
+        assertThat(leftover.exists(), is(false));
+    }
+
+    @Test
+    public void purgeDeletesTheTemporaryFilesLeftBehind() throws IOException {
+        File orphan = new File(mDirectory, "tmp-s123.tmp");
+        writeAll(orphan, new byte[] { 1 });
+        File writing = new File(mDirectory, "tmp-s456.tmp");
+        writeAll(writing, new byte[] { 1 });
+
+        // a crash left the first one a few minutes ago, the second one is being written
+        long crash = System.currentTimeMillis() - DiskItemCache.TEMP_MAX_AGE - 60000;
+        assertThat(orphan.setLastModified(crash), is(true));
+
+        assertThat(mCache.purgeExpired(), is(1));
+        assertThat(orphan.exists(), is(false));
+        assertThat(writing.exists(), is(true));
+    }
+
+    @Test
+    public void writeReplacesTheRecordAtOnce() throws IOException {
+        mCache.writeNews(story(1, "First", 1));
+
+        // a reader that opened the previous record still reads it whole
+        DataInputStream reader = new DataInputStream(new FileInputStream(new File(mDirectory, "s1")));
+        mCache.writeNews(story(1, "Second", 2));
+
+        assertThat(mCache.readNews(1).Item.Title, is("Second"));
+        assertThat(mCache.readNews(1).Item.Score, is(2));
+        reader.readInt();
+        reader.readLong();
+        assertThat(reader.readInt(), is(1));
+        assertThat(reader.readInt(), is("First".length()));
+        reader.close();
+
+        // the temporary files were renamed, nothing is left behind
+        assertThat(Arrays.toString(mDirectory.list()), is("[s1]"));
+    }
+
+    @Test
+    public void dataLayerServesAStaleRecordAndRevalidatesIt() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        RESTDataLayer dataLayer = new RESTDataLayer(new HttpTransport() {
+            @Override
+            public StreamBuffer get(String path, RequestTiming timing) throws IOException {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                byte[] json = "{\"id\":1,\"title\":\"Story\",\"score\":50}".getBytes(StreamBuffer.UTF8);
+                return StreamBuffer.obtain().readFrom(new ByteArrayInputStream(json), json.length);
+            }
+        }) { };
+        dataLayer.setDiskCache(mCache);
+        mCache.writeNews(story(1, "Story", 1));
+        setSavedAt(new File(mDirectory, "s1"), System.currentTimeMillis() - DiskItemCache.STORY_TTL - 1000);
+
+        // the download is held, the stale record is returned without waiting for it
+        SingleNews stale = dataLayer.getSpecificNews(1);
+        assertThat(stale.Score, is(1));
+
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mCache.readNews(1).Item.Score != 50 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(dataLayer.getCachedNews(1).Score, is(50));
+        assertThat(mCache.readNews(1).Item.Score, is(50));
+        assertThat(mCache.readNews(1).isFresh(), is(true));
+
+        // the instance handed out is not changed
+        assertThat(stale.Score, is(1));
+    }
+
+    private static SingleNews story(int id, String title, int score, int... comments) {
+        SingleNews news = new SingleNews();
+        news.Id = id;
+        news.Title = title;
+        news.Author = "author";
+        news.Date = 1460000000000L;
+        news.Score = score;
+        news.Comments = comments;
+        return news;
+    }
+
+    /**
+     * rewrites the time a record was saved, it follows the version in the header
+     */
+    static void setSavedAt(File file, long savedAt) throws IOException {
+        byte[] bytes = readAll(file);
+        for (int i = 0; i < 8; i++) {
+            bytes[4 + i] = (byte)(savedAt >>> (56 - 8 * i));
+        }
+        writeAll(file, bytes);
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        byte[] bytes = new byte[(int)file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        }
+        finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private static void writeAll(File file, byte[] bytes) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.write(bytes);
+        }
+        finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.FetchMetrics;
+import com.neilsonmarcil.droidnewsreader.data.HttpStatusException;
+import com.neilsonmarcil.droidnewsreader.data.HttpTransport;
+import com.neilsonmarcil.droidnewsreader.data.LatencyHistogram;
+import com.neilsonmarcil.droidnewsreader.data.RESTDataLayer;
+import com.neilsonmarcil.droidnewsreader.data.RequestTiming;
+import com.neilsonmarcil.droidnewsreader.data.RetryPolicy;
+import com.neilsonmarcil.droidnewsreader.data.StreamBuffer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the LatencyHistogram percentiles and the FetchMetrics recorded by the RESTDataLayer.
+ */
+@RunWith(JUnit4.class)
+public class FetchMetricsTest {
+
+    @Test
+    public void percentilesAreWithinTheirBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getMaxNanos(), is(TimeUnit.MILLISECONDS.toNanos(100)));
+        assertThat(histogram.getMeanNanos(), is(TimeUnit.MICROSECONDS.toNanos(50500)));
+
+        // the upper bound of the bucket, less than twice the real value
+        long p50 = histogram.getPercentileNanos(50);
+        assertTrue(p50 >= TimeUnit.MILLISECONDS.toNanos(50) && p50 < TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(histogram.getPercentileNanos(100), is(histogram.getMaxNanos()));
+
+        histogram.reset();
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getPercentileNanos(50), is(0L));
+    }
+
+    @Test
+    public void nothingIsRecordedWhenOff() {
+        FetchMetrics metrics = new FetchMetrics();
+
+        long start = metrics.start();
+        metrics.record(FetchMetrics.Stage.PARSE, start);
+        metrics.increment(FetchMetrics.Counter.CACHE_HITS);
+        metrics.add(FetchMetrics.Counter.BYTES_READ, 100);
+
+        FetchMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(start, is(0L));
+        assertThat(snapshot.getHistogram(FetchMetrics.Stage.PARSE).getCount(), is(0L));
+        assertThat(snapshot.getCount(FetchMetrics.Counter.CACHE_HITS), is(0L));
+        assertThat(snapshot.getCount(FetchMetrics.Counter.BYTES_READ), is(0L));
+    }
+
+    @Test
+    public void dataLayerRecordsEveryStage() {
+        final byte[] json = "{\"id\":1,\"by\":\"author\",\"time\":1460000000,\"title\":\"Story\"}".getBytes(StreamBuffer.UTF8);
+        RESTDataLayer dataLayer = new RESTDataLayer(new HttpTransport() {
+            private int mRequests;
+
+            @Override
+            public StreamBuffer get(String path, RequestTiming timing) throws IOException {
+                if (++mRequests == 1) {
+                    throw new HttpStatusException(503, path);
+                }
+                if (path.equals("item/2.json")) {
+                    throw new HttpStatusException(404, path);
+                }
+                timing.ConnectNanos = TimeUnit.MILLISECONDS.toNanos(30);
+                timing.BodyNanos = TimeUnit.MILLISECONDS.toNanos(5);
+                return StreamBuffer.obtain().readFrom(new ByteArrayInputStream(json), json.length);
+            }
+        }) { };
+        dataLayer.setRetryPolicy(new RetryPolicy(2, 1, 1));
+        FetchMetrics metrics = dataLayer.getMetrics();
+        metrics.setEnabled(true);
+
+        // a retry then a download, a memory hit, a missing item
+        dataLayer.getSpecificNews(1);
+        dataLayer.getSpecificNews(1);
+        dataLayer.getSpecificNews(2);
+
+        FetchMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.getCount(FetchMetrics.Counter.CACHE_HITS), is(1L));
+        assertThat(snapshot.getCount(FetchMetrics.Counter.CACHE_MISSES), is(2L));
+        assertThat(snapshot.getCount(FetchMetrics.Counter.RETRIES), is(1L));
+        assertThat(snapshot.getCount(FetchMetrics.Counter.FAILURES), is(1L));
+        assertThat(snapshot.getCount(FetchMetrics.Counter.BYTES_READ), is((long)json.length));
+        assertThat(snapshot.getHistogram(FetchMetrics.Stage.CONNECT).getMaxNanos(), is(TimeUnit.MILLISECONDS.toNanos(30)));
+        assertThat(snapshot.getHistogram(FetchMetrics.Stage.DOWNLOAD).getMaxNanos(), is(TimeUnit.MILLISECONDS.toNanos(5)));
+        assertThat(snapshot.getHistogram(FetchMetrics.Stage.PARSE).getCount(), is(1L));
+        assertThat(snapshot.getHistogram(FetchMetrics.Stage.CACHE_LOOKUP).getCount(), is(3L));
+        assertThat(snapshot.getHistogram(FetchMetrics.Stage.REQUEST).getCount(), is(2L));
+        assertThat(snapshot.toString(), containsString("RETRIES: 1\n"));
+
+        // the snapshot does not change afterwards
+        metrics.reset();
+        assertThat(snapshot.getCount(FetchMetrics.Counter.CACHE_HITS), is(1L));
+        assertThat(metrics.snapshot().getCount(FetchMetrics.Counter.CACHE_HITS), is(0L));
+    }
+
+    @Test
+    public void aBatchRecordsEveryLookupOnce() {
+        RESTDataLayer dataLayer = new RESTDataLayer(new HttpTransport() {
+            @Override
+            public StreamBuffer get(String path, RequestTiming timing) throws IOException {
+                byte[] json = "{\"title\":\"Story\"}".getBytes(StreamBuffer.UTF8);
+                return StreamBuffer.obtain().readFrom(new ByteArrayInputStream(json), json.length);
+            }
+        }) { };
+        FetchMetrics metrics = dataLayer.getMetrics();
+        metrics.setEnabled(true);
+
+        // two misses downloaded, then two hits
+        dataLayer.getNews(new int[] { 1, 2 });
+        dataLayer.getNews(new int[] { 1, 2 });
+
+        FetchMetrics.Snapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.getHistogram(FetchMetrics.Stage.CACHE_LOOKUP).getCount(), is(4L));
+        assertThat(snapshot.getCount(FetchMetrics.Counter.CACHE_MISSES), is(2L));
+        assertThat(snapshot.getCount(FetchMetrics.Counter.CACHE_HITS), is(2L));
+        assertThat(snapshot.getHistogram(FetchMetrics.Stage.REQUEST).getCount(), is(2L));
+    }
+}
@@ -0,0 +1,159 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.FetchHandle;
+import com.neilsonmarcil.droidnewsreader.data.FetchScheduler;
+import com.neilsonmarcil.droidnewsreader.data.ItemFetcher;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test the order of the requests waiting in the FetchScheduler and the cancellation.
+ */
+@RunWith(JUnit4.class)
+public class FetchSchedulerTest {
+
+    private final FetchScheduler mScheduler = new FetchScheduler(1);
+    private final List<String> mRun = new ArrayList<>();
+
+    @After
+    public void shutdown() {
+        mScheduler.shutdown();
+    }
+
+    @Test
+    public void waitingRequestsRunByPriorityThenSubmission() throws Exception {
+        CountDownLatch release = blockWorker();
+
+        FetchHandle background = new FetchHandle(FetchScheduler.Priority.BACKGROUND);
+        FetchHandle prefetch = new FetchHandle(FetchScheduler.Priority.PREFETCH);
+        FetchHandle visible = new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+
+        submit(background, "background 1");
+        submit(prefetch, "prefetch 1");
+        submit(visible, "visible 1");
+        submit(background, "background 2");
+        submit(visible, "visible 2");
+        CountDownLatch done = submit(prefetch, "prefetch 2");
+
+        release.countDown();
+        waitIdle(background);
+
+        assertThat(mRun.toString(), is("[visible 1, visible 2, prefetch 1, prefetch 2, background 1, background 2]"));
+        assertThat(done.getCount(), is(0L));
+    }
+
+    @Test
+    public void cancelledRequestsAreSkipped() throws Exception {
+        CountDownLatch release = blockWorker();
+
+        FetchHandle screen = new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+        FetchHandle other = new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+        submit(screen, "screen 1");
+        submit(other, "other");
+        submit(screen, "screen 2");
+
+        screen.cancel();
+        release.countDown();
+        waitIdle(other);
+
+        assertThat(mRun.toString(), is("[skipped, other, skipped]"));
+    }
+
+    @Test
+    public void cancelledBatchFailsTheRest() throws Exception {
+        final FetchHandle handle = new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+        ItemFetcher fetcher = new ItemFetcher(mScheduler);
+
+        final List<Integer> loaded = new ArrayList<>();
+        int failures = fetcher.fetch(new int[] { 1, 2, 3, 4, 5 }, handle, new ItemFetcher.Loader<Integer>() {
+            @Override
+            public Integer load(int id) {
+                if (id == 2) {
+                    handle.cancel();
+                }
+                return id;
+            }
+        }, new ItemFetcher.Callback<Integer>() {
+            @Override
+            public void onItem(int index, int id, Integer item) {
+                loaded.add(item);
+            }
+
+            @Override
+            public void onFailure(int index, int id, Exception ex) {
+            }
+        });
+
+        assertThat(loaded.toString(), is("[1, 2]"));
+        assertThat(failures, is(3));
+    }
+
+    /**
+     * occupies the only worker thread until the latch is released
+     */
+    private CountDownLatch blockWorker() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        mScheduler.execute(new FetchHandle(FetchScheduler.Priority.USER_VISIBLE), new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, null);
+        started.await();
+        return release;
+    }
+
+    private CountDownLatch submit(FetchHandle handle, final String name) {
+        final CountDownLatch done = new CountDownLatch(1);
+        mScheduler.execute(handle, new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRun) {
+                    mRun.add(name);
+                }
+                done.countDown();
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mRun) {
+                    mRun.add("skipped");
+                }
+                done.countDown();
+            }
+        });
+        return done;
+    }
+
+    /**
+     * waits until every request queued before this call has run, the worker is single threaded
+     */
+    private void waitIdle(FetchHandle lowest) throws InterruptedException {
+        final CountDownLatch idle = new CountDownLatch(1);
+        mScheduler.execute(lowest, new Runnable() {
+            @Override
+            public void run() {
+                idle.countDown();
+            }
+        }, null);
+        assertThat(idle.await(5, TimeUnit.SECONDS), is(true));
+    }
+}
@@ -0,0 +1,73 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.IntArrayParser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+
+/**
+ * Compares parsing a 500 ids Top Stories response with the IntArrayParser and with the previous
+ * extractIntFromArray that grew its arrays by one element and parsed a String per id.
+ */
+@RunWith(JUnit4.class)
+public class IntArrayParserBenchmark {
+
+    private static final int IDS = 500;
+    private static final int FIRST_ID = 11000000;
+
+    @Test
+    public void topStories() {
+        StringBuilder b = new StringBuilder("[");
+        for (int i = 0; i < IDS; i++) {
+            b.append(i > 0 ? "," : "").append(FIRST_ID + i * 7);
+        }
+        final byte[] data = b.append("]").toString().getBytes();
+
+        Benchmark.measure("legacy extractIntFromArray, " + IDS + " ids", 200, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int total = 0;
+                for (int i = 0; i < iterations; i++) {
+                    total += extractIntFromArrayLegacy(data).length;
+                }
+                return total;
+            }
+        });
+
+        Benchmark.measure("IntArrayParser.parse, " + IDS + " ids", 200, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int total = 0;
+                for (int i = 0; i < iterations; i++) {
+                    total += IntArrayParser.parse(data, 0, data.length).length;
+                }
+                return total;
+            }
+        });
+    }
+
+    /**
+     * the parser RESTDataLayer used before the IntArrayParser, it drops the last id
+     */
+    private static int[] extractIntFromArrayLegacy(byte[] content) {
+        byte[] arrayContent = new byte[0];
+        int[] items = new int[0];
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] != '[' && content[i] != ']') {
+                if (content[i] == ',') {
+                    items = Arrays.copyOf(items, items.length + 1);
+                    items[items.length - 1] = Integer.parseInt(new String(arrayContent));
+                    arrayContent = new byte[0];
+                }
+                else {
+                    arrayContent = Arrays.copyOf(arrayContent, arrayContent.length + 1);
+                    arrayContent[arrayContent.length - 1] = content[i];
+                }
+            }
+        }
+        return items;
+    }
+}
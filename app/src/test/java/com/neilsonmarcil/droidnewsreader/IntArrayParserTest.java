@@ -0,0 +1,77 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.IntArrayParser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test the IntArrayParser with the arrays returned by the REST API and some invalid ones.
+ */
+@RunWith(JUnit4.class)
+public class IntArrayParserTest {
+
+    @Test
+    public void keepsLastElement() {
+        assertThat(parse("[11,22,33]"), is(new int[] { 11, 22, 33 }));
+        assertThat(parse("[8863]"), is(new int[] { 8863 }));
+    }
+
+    @Test
+    public void emptyArray() {
+        assertThat(parse("[]"), is(new int[0]));
+        assertThat(parse(" [ ] "), is(new int[0]));
+    }
+
+    @Test
+    public void whitespace() {
+        assertThat(parse(" [ 1 ,\n2,\t3\r\n] "), is(new int[] { 1, 2, 3 }));
+        assertThat(parse("[-5, 0]"), is(new int[] { -5, 0 }));
+    }
+
+    @Test
+    public void growsPastEstimate() {
+        StringBuilder b = new StringBuilder("[");
+        int[] expected = new int[500];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i;
+            b.append(i > 0 ? "," : "").append(i);
+        }
+        assertThat(parse(b.append("]").toString()), is(expected));
+    }
+
+    @Test
+    public void window() {
+        byte[] data = "{\"kids\":[4,5,6],\"id\":1}".getBytes();
+        assertThat(IntArrayParser.parse(data, 8, 7), is(new int[] { 4, 5, 6 }));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void notAnArray() {
+        parse("12,13");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void unterminated() {
+        parse("[12,13");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void notANumber() {
+        parse("[12,\"a\"]");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void overflow() {
+        parse("[99999999999]");
+    }
+
+    private static int[] parse(String json) {
+        byte[] data = json.getBytes();
+        return IntArrayParser.parse(data, 0, data.length);
+    }
+}
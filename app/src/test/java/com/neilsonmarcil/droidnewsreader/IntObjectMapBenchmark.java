@@ -0,0 +1,117 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.IntObjectMap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Compares the cost of the item cache lookups and inserts with a HashMap<Integer, ...> and with
+ * the IntObjectMap. The ids are in the range of real Hacker News ids with the gaps left by the
+ * items of other threads, the boxing cache of Integer does not apply.
+ * The lookups are measured in three orders: the ids in increasing order, which favours the
+ * HashMap since its keys were allocated one after the other, the ids in random order like the
+ * ranking and the comment trees ask for them, and half of the ids missing.
+ */
+@RunWith(JUnit4.class)
+public class IntObjectMapBenchmark {
+
+    private static final int ITEMS = 5000;
+    private static final int FIRST_ID = 11000000;
+    private static final Object VALUE = new Object();
+
+    private final int[] mIds = new int[ITEMS];
+    private final int[] mShuffled;
+    private final int[] mHalfMissing = new int[ITEMS];
+
+    public IntObjectMapBenchmark() {
+        Random random = new Random(1);
+        int id = FIRST_ID;
+        for (int i = 0; i < ITEMS; i++) {
+            id += 1 + random.nextInt(3);
+            mIds[i] = id;
+            mHalfMissing[i] = random.nextBoolean() ? id : id + 1;
+        }
+
+        mShuffled = mIds.clone();
+        for (int i = ITEMS - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = mShuffled[i];
+            mShuffled[i] = mShuffled[j];
+            mShuffled[j] = t;
+        }
+    }
+
+    @Test
+    public void lookup() {
+        HashMap<Integer, Object> hashMap = new HashMap<>();
+        IntObjectMap<Object> intMap = new IntObjectMap<>();
+        for (int id : mIds) {
+            hashMap.put(id, VALUE);
+            intMap.put(id, VALUE);
+        }
+
+        measureLookups("in id order", hashMap, intMap, mIds);
+        measureLookups("in random order", hashMap, intMap, mShuffled);
+        measureLookups("half missing", hashMap, intMap, mHalfMissing);
+    }
+
+    @Test
+    public void insert() {
+        Benchmark.measure("HashMap<Integer, Object>.put", ITEMS, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                HashMap<Integer, Object> map = new HashMap<>();
+                for (int i = 0; i < iterations; i++) {
+                    map.put(mIds[i], VALUE);
+                }
+                return map.size();
+            }
+        });
+
+        Benchmark.measure("IntObjectMap.put", ITEMS, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                IntObjectMap<Object> map = new IntObjectMap<>();
+                for (int i = 0; i < iterations; i++) {
+                    map.put(mIds[i], VALUE);
+                }
+                return map.size();
+            }
+        });
+    }
+
+    private static void measureLookups(String order, final HashMap<Integer, Object> hashMap,
+                                       final IntObjectMap<Object> intMap, final int[] ids) {
+
+        Benchmark.measure("HashMap<Integer, Object>.get, " + order, ITEMS * 20, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int found = 0;
+                for (int i = 0; i < iterations; i++) {
+                    if (hashMap.get(ids[i % ITEMS]) != null) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+        });
+
+        Benchmark.measure("IntObjectMap.get, " + order, ITEMS * 20, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int found = 0;
+                for (int i = 0; i < iterations; i++) {
+                    if (intMap.get(ids[i % ITEMS]) != null) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+        });
+    }
+}
@@ -0,0 +1,59 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.IntObjectMap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test the IntObjectMap against a HashMap with random operations, including removals in long
+ * probe sequences.
+ */
+@RunWith(JUnit4.class)
+public class IntObjectMapTest {
+
+    @Test
+    public void putGetRemove() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        assertThat(map.put(5, "five"), is(nullValue()));
+        assertThat(map.put(5, "cinq"), is("five"));
+        assertThat(map.get(5), is("cinq"));
+        assertThat(map.get(6), is(nullValue()));
+        assertThat(map.size(), is(1));
+
+        assertThat(map.remove(5), is("cinq"));
+        assertThat(map.remove(5), is(nullValue()));
+        assertThat(map.size(), is(0));
+    }
+
+    @Test
+    public void sameAsHashMap() {
+        IntObjectMap<Integer> map = new IntObjectMap<>(4);
+        HashMap<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100000; i++) {
+            // a small key range to get many collisions and removals
+            int key = random.nextInt(2000) - 1000;
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key), is(expected.remove(key)));
+            }
+            else {
+                assertThat(map.put(key, i), is(expected.put(key, i)));
+            }
+        }
+
+        assertThat(map.size(), is(expected.size()));
+        for (int key = -1000; key < 1000; key++) {
+            assertThat(map.get(key), is(expected.get(key)));
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import android.content.ComponentCallbacks2;
+
+import com.neilsonmarcil.droidnewsreader.data.ItemCache;
+import com.neilsonmarcil.droidnewsreader.data.StripedItemCache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test the LRU eviction and the size accounting of the ItemCache, and the StripedItemCache
+ * spreading the ids over its stripes.
+ */
+@RunWith(JUnit4.class)
+public class ItemCacheTest {
+
+    /**
+     * the size of an item is its length
+     */
+    private static final ItemCache.Sizer<String> LENGTH = new ItemCache.Sizer<String>() {
+        @Override
+        public int sizeOf(String value) {
+            return value.length();
+        }
+    };
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() {
+        ItemCache<String> cache = new ItemCache<>(30, LENGTH);
+        cache.put(1, "0123456789");
+        cache.put(2, "0123456789");
+        cache.put(3, "0123456789");
+
+        // 1 becomes the most recently used, 2 is evicted first
+        assertThat(cache.get(1), is("0123456789"));
+        cache.put(4, "0123456789");
+
+        assertThat(cache.get(2), nullValue());
+        assertThat(cache.get(1), is("0123456789"));
+        assertThat(cache.get(3), is("0123456789"));
+        assertThat(cache.get(4), is("0123456789"));
+        assertThat(cache.getSize(), is(30L));
+        assertThat(cache.getCount(), is(3));
+        assertThat(cache.getEvictionCount(), is(1L));
+    }
+
+    @Test
+    public void itemBiggerThanTheBudgetIsNotKept() {
+        ItemCache<String> cache = new ItemCache<>(10, LENGTH);
+        cache.put(1, "01234");
+        cache.put(2, "0123456789ABCDEF");
+
+        // everything is evicted to make room, the big item last
+        assertThat(cache.get(2), nullValue());
+        assertThat(cache.get(1), nullValue());
+        assertThat(cache.getSize(), is(0L));
+        assertThat(cache.getCount(), is(0));
+        assertThat(cache.getEvictionCount(), is(2L));
+    }
+
+    @Test
+    public void replacingAnItemUpdatesTheSize() {
+        ItemCache<String> cache = new ItemCache<>(100, LENGTH);
+        cache.put(1, "0123456789");
+        cache.put(2, "01234");
+        assertThat(cache.getSize(), is(15L));
+
+        cache.put(1, "012");
+        assertThat(cache.getSize(), is(8L));
+        assertThat(cache.getCount(), is(2));
+        assertThat(cache.get(1), is("012"));
+
+        // a replacement growing over the budget evicts the others, not itself
+        cache.put(1, repeat('x', 98));
+        assertThat(cache.get(2), nullValue());
+        assertThat(cache.getSize(), is(98L));
+
+        assertThat(cache.remove(1), is(repeat('x', 98)));
+        assertThat(cache.getSize(), is(0L));
+        assertThat(cache.getEvictionCount(), is(1L));
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        ItemCache<String> cache = new ItemCache<>(100, LENGTH);
+        cache.put(1, "a");
+
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+
+        assertThat(cache.getHitCount(), is(2L));
+        assertThat(cache.getMissCount(), is(1L));
+        assertThat(cache.getEvictionCount(), is(0L));
+    }
+
+    @Test
+    public void trimsAccordingToTheLevel() {
+        assertThat(sizeAfterTrim(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE), is(40L));
+        assertThat(sizeAfterTrim(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN), is(40L));
+        assertThat(sizeAfterTrim(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW), is(20L));
+        assertThat(sizeAfterTrim(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND), is(20L));
+        assertThat(sizeAfterTrim(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL), is(0L));
+        assertThat(sizeAfterTrim(ComponentCallbacks2.TRIM_MEMORY_MODERATE), is(0L));
+        assertThat(sizeAfterTrim(ComponentCallbacks2.TRIM_MEMORY_COMPLETE), is(0L));
+    }
+
+    @Test
+    public void stripesAreAPowerOfTwo() {
+        assertThat(new StripedItemCache<>(100, LENGTH, 3).getStripeCount(), is(4));
+        assertThat(new StripedItemCache<>(100, LENGTH, 8).getStripeCount(), is(8));
+        assertThat(new StripedItemCache<>(100, LENGTH, 1).getStripeCount(), is(1));
+    }
+
+    @Test
+    public void anIdAlwaysGoesToTheSameStripe() {
+        StripedItemCache<String> cache = new StripedItemCache<>(800, LENGTH, 8);
+        for (int id = 1; id <= 50; id++) {
+            cache.put(id, "a");
+            cache.put(id, "bb");
+        }
+
+        // a replacement found the first entry, nothing is duplicated
+        assertThat(cache.getCount(), is(50));
+        assertThat(cache.getSize(), is(100L));
+        for (int id = 1; id <= 50; id++) {
+            assertThat(cache.get(id), is("bb"));
+        }
+        assertThat(cache.remove(7), is("bb"));
+        assertThat(cache.get(7), nullValue());
+    }
+
+    @Test
+    public void consecutiveIdsAreSpreadOverTheStripes() {
+        // 40 items per stripe, 25 per stripe on average: a stripe getting a lot more evicts
+        StripedItemCache<String> cache = new StripedItemCache<>(8 * 40, LENGTH, 8);
+        for (int id = 20000000; id < 20000000 + 8 * 25; id++) {
+            cache.put(id, "a");
+        }
+        assertThat(cache.getEvictionCount(), is(0L));
+        assertThat(cache.getCount(), is(200));
+
+        // the trim applies to every stripe
+        cache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertThat(cache.getCount(), is(0));
+        assertThat(cache.getEvictionCount(), is(200L));
+    }
+
+    /**
+     * fills a cache with 4 items of 10 bytes and returns its size after the trim
+     */
+    private static long sizeAfterTrim(int level) {
+        ItemCache<String> cache = new ItemCache<>(100, LENGTH);
+        for (int id = 1; id <= 4; id++) {
+            cache.put(id, "0123456789");
+        }
+        cache.onTrimMemory(level);
+        return cache.getSize();
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder s = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            s.append(c);
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.ItemDecoder;
+import com.neilsonmarcil.droidnewsreader.dto.NewsComment;
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.charset.Charset;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test the ItemDecoder with items shaped like the responses of the REST API.
+ */
+@RunWith(JUnit4.class)
+public class ItemDecoderTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void story() throws JSONException {
+        SingleNews news = decodeNews("{\"by\":\"dhouston\",\"descendants\":71,\"id\":8863," +
+                "\"kids\":[8952,9224,8917],\"score\":111,\"time\":1175714200," +
+                "\"title\":\"My YC app: Dropbox - Throw away your USB drive\",\"type\":\"story\"," +
+                "\"url\":\"http://www.getdropbox.com/u/2/screencast.html\"}");
+
+        assertThat(news.Id, is(8863));
+        assertThat(news.Author, is("dhouston"));
+        assertThat(news.Comments, is(new int[] { 8952, 9224, 8917 }));
+        assertThat(news.Score, is(111));
+        assertThat(news.Date, is(1175714200L));
+        assertThat(news.Title, is("My YC app: Dropbox - Throw away your USB drive"));
+        assertThat(news.Url, is("http://www.getdropbox.com/u/2/screencast.html"));
+    }
+
+    @Test
+    public void missingFields() throws JSONException {
+        SingleNews news = decodeNews("{ \"id\" : 1 , \"title\" : \"Ask HN\" }");
+        assertThat(news.Url, is(""));
+        assertThat(news.Author, is(""));
+        assertThat(news.Comments, is(new int[0]));
+    }
+
+    @Test
+    public void comment() throws JSONException {
+        NewsComment comment = decodeComment("{\"by\":\"norvig\",\"id\":2921983," +
+                "\"kids\":[2922097,2922429],\"parent\":2921506," +
+                "\"text\":\"Aw shucks, guys ... you make me blush with your <i>kids</i>: [1,2]\"," +
+                "\"time\":1314211127,\"type\":\"comment\"}");
+
+        assertThat(comment.Id, is(2921983));
+        assertThat(comment.ParentId, is(2921506));
+        assertThat(comment.Author, is("norvig"));
+        assertThat(comment.CommentsIds, is(new int[] { 2922097, 2922429 }));
+        assertThat(comment.Body, is("Aw shucks, guys ... you make me blush with your <i>kids</i>: [1,2]"));
+        assertThat(comment.Date, is(1314211127L));
+    }
+
+    @Test
+    public void escapesAndUnicode() throws JSONException {
+        NewsComment comment = decodeComment("{\"text\":\"a \\\"quote\\\"\\n\\/\\\\ \\u00e9\\ud83d\\ude00 \u00e9\u20ac\ud83d\ude00\"}");
+        assertThat(comment.Body, is("a \"quote\"\n/\\ \u00e9\ud83d\ude00 \u00e9\u20ac\ud83d\ude00"));
+    }
+
+    @Test
+    public void skipsUnknownValues() throws JSONException {
+        SingleNews news = decodeNews("{\"poll\":{\"parts\":[1,2,{\"x\":\"}]\"}]},\"deleted\":true," +
+                "\"dead\":null,\"ratio\":-1.5e3,\"score\":7}");
+        assertThat(news.Score, is(7));
+    }
+
+    @Test
+    public void longString() throws JSONException {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            b.append((char)('a' + i % 26));
+        }
+        assertThat(decodeComment("{\"text\":\"" + b + "\"}").Body, is(b.toString()));
+    }
+
+    @Test(expected = JSONException.class)
+    public void nullItem() throws JSONException {
+        decodeNews("null");
+    }
+
+    @Test(expected = JSONException.class)
+    public void truncated() throws JSONException {
+        decodeNews("{\"title\":\"abc");
+    }
+
+    private static SingleNews decodeNews(String json) throws JSONException {
+        byte[] data = json.getBytes(UTF8);
+        return ItemDecoder.decodeNews(data, 0, data.length);
+    }
+
+    private static NewsComment decodeComment(String json) throws JSONException {
+        byte[] data = json.getBytes(UTF8);
+        return ItemDecoder.decodeComment(data, 0, data.length);
+    }
+}
@@ -0,0 +1,103 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.FetchScheduler;
+import com.neilsonmarcil.droidnewsreader.data.ItemFetcher;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test that the ItemFetcher reports every item at the position of its id whatever the order they
+ * complete in, that a failure stays with its item and that the worker threads cap the requests in
+ * flight.
+ */
+@RunWith(JUnit4.class)
+public class ItemFetcherTest {
+
+    private final ItemFetcher mFetcher = new ItemFetcher(new FetchScheduler(3));
+
+    @After
+    public void shutdown() {
+        mFetcher.shutdown();
+    }
+
+    @Test
+    public void resultsKeepThePositionOfTheirId() {
+        int[] ids = { 50, 40, 30, 20, 10 };
+        final String[] results = new String[ids.length];
+        final Exception[] failures = new Exception[ids.length];
+
+        // the first ids take the longest, 30 fails
+        int failed = mFetcher.fetch(ids, new ItemFetcher.Loader<String>() {
+            @Override
+            public String load(int id) throws Exception {
+                Thread.sleep(id / 5);
+                if (id == 30) {
+                    throw new IOException("offline");
+                }
+                return "item " + id;
+            }
+        }, new ItemFetcher.Callback<String>() {
+            @Override
+            public void onItem(int index, int id, String item) {
+                results[index] = item;
+            }
+
+            @Override
+            public void onFailure(int index, int id, Exception ex) {
+                failures[index] = ex;
+            }
+        });
+
+        assertThat(failed, is(1));
+        assertThat(Arrays.toString(results), is("[item 50, item 40, null, item 20, item 10]"));
+        assertThat(failures[2], instanceOf(IOException.class));
+        assertThat(failures[0] == null && failures[1] == null && failures[3] == null && failures[4] == null, is(true));
+    }
+
+    @Test
+    public void theWorkerThreadsCapTheRequestsInFlight() {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        int[] ids = new int[30];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+        }
+
+        int failed = mFetcher.fetch(ids, new ItemFetcher.Loader<Integer>() {
+            @Override
+            public Integer load(int id) throws Exception {
+                int current = inFlight.incrementAndGet();
+                int max;
+                while (current > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, current)) {
+                    // retrying with the new max
+                }
+                Thread.sleep(2);
+                inFlight.decrementAndGet();
+                return id;
+            }
+        }, new ItemFetcher.Callback<Integer>() {
+            @Override
+            public void onItem(int index, int id, Integer item) {
+            }
+
+            @Override
+            public void onFailure(int index, int id, Exception ex) {
+            }
+        });
+
+        assertThat(failed, is(0));
+        assertTrue(maxInFlight.get() >= 1 && maxInFlight.get() <= 3);
+    }
+}
@@ -0,0 +1,168 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.DataLayer;
+import com.neilsonmarcil.droidnewsreader.data.DiskItemCache;
+import com.neilsonmarcil.droidnewsreader.data.FetchHandle;
+import com.neilsonmarcil.droidnewsreader.data.FetchScheduler;
+import com.neilsonmarcil.droidnewsreader.data.HttpTransport;
+import com.neilsonmarcil.droidnewsreader.data.RESTDataLayer;
+import com.neilsonmarcil.droidnewsreader.data.RequestTiming;
+import com.neilsonmarcil.droidnewsreader.data.StreamBuffer;
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+import com.neilsonmarcil.droidnewsreader.dto.TopStoriesUpdate;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test that a refresh downloads the new stories, revalidates the ones kept in place and releases
+ * the ones no longer displayed.
+ */
+@RunWith(JUnit4.class)
+public class RESTDataLayerRefreshTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final FetchHandle mHandle = new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+
+    /**
+     * the ranking served, the score of a story is its id plus mScoreBonus
+     */
+    private volatile int[] mRanking;
+    private volatile int mScoreBonus;
+    private final List<String> mRequests = Collections.synchronizedList(new ArrayList<String>());
+
+    private final RESTDataLayer mDataLayer = new RESTDataLayer(new HttpTransport() {
+        @Override
+        public StreamBuffer get(String path, RequestTiming timing) throws IOException {
+            mRequests.add(path);
+            String json;
+            if (path.equals("topstories.json")) {
+                json = Arrays.toString(mRanking).replace(" ", "");
+            }
+            else {
+                int id = Integer.parseInt(path.substring("item/".length(), path.length() - ".json".length()));
+                json = "{\"id\":" + id + ",\"title\":\"Story " + id + "\",\"score\":" + (id + mScoreBonus) +
+                       ",\"kids\":[" + (id * 10 + mScoreBonus) + "]}";
+            }
+            byte[] bytes = json.getBytes(StreamBuffer.UTF8);
+            return StreamBuffer.obtain().readFrom(new ByteArrayInputStream(bytes), bytes.length);
+        }
+    }) { };
+
+    @Test
+    public void onlyNewStoriesAreLoadedAndKeptOnesRevalidated() {
+        mRanking = new int[] { 1, 2, 3, 4, 5, 6 };
+        mDataLayer.getTopStoriesIds();
+        SingleNews[] before = mDataLayer.getTopStories(0, 4);
+        assertThat(before.length, is(4));
+
+        // 2 and 4 are gone, 7 is new, 3 moved up
+        mRanking = new int[] { 3, 1, 7, 5, 6 };
+        mScoreBonus = 100;
+        mRequests.clear();
+
+        TopStoriesUpdate update = mDataLayer.refreshTopStories(4, mHandle);
+
+        assertThat(update.Ids.length, is(5));
+        assertThat(update.Stories.length, is(4));
+        assertThat(update.Stories[0].Id, is(3));
+        assertThat(update.Stories[1].Id, is(1));
+        assertThat(update.Stories[2].Id, is(7));
+        assertThat(update.Stories[3].Id, is(5));
+        assertThat(update.Revalidated, is(2));
+        assertThat(update.Added, is(2));
+        assertThat(update.Dropped, is(2));
+
+        // revalidated into new instances, the ones handed out before are not changed
+        assertThat(update.Stories[0].Score, is(103));
+        assertThat(update.Stories[0].Comments[0], is(130));
+        assertThat(mDataLayer.getCachedNews(3), is(sameInstance(update.Stories[0])));
+        assertThat(before[2].Score, is(3));
+        assertThat(before[2].Comments[0], is(30));
+
+        // the ranking and the 4 stories displayed, nothing else
+        assertThat(mRequests.size(), is(5));
+        assertThat(mDataLayer.getCachedNews(2), is(nullValue()));
+        assertThat(mDataLayer.getCachedNews(4), is(nullValue()));
+    }
+
+    @Test
+    public void aRefreshAtLaunchDownloadsTheStaleRecords() throws IOException {
+        File directory = new File(mFolder.getRoot(), "items");
+        DiskItemCache disk = new DiskItemCache(directory);
+        for (int id = 1; id <= 2; id++) {
+            SingleNews news = new SingleNews();
+            news.Id = id;
+            news.Title = "Story " + id;
+            news.Author = "author";
+            news.Score = id;
+            news.Comments = new int[] { id * 10 };
+            disk.writeNews(news);
+        }
+        long stale = System.currentTimeMillis() - DiskItemCache.STORY_TTL - 1000;
+        DiskItemCacheTest.setSavedAt(new File(directory, "s1"), stale);
+        DiskItemCacheTest.setSavedAt(new File(directory, "s2"), stale);
+        mDataLayer.setDiskCache(disk);
+
+        // the launch from a snapshot, no ranking loaded yet and nothing in memory
+        mRanking = new int[] { 2, 1 };
+        mScoreBonus = 100;
+        TopStoriesUpdate update = mDataLayer.refreshTopStories(2, mHandle);
+
+        assertThat(update.Stories.length, is(2));
+        assertThat(update.Stories[0].Score, is(102));
+        assertThat(update.Stories[1].Score, is(101));
+        assertThat(mRequests.size(), is(3));
+        assertThat(disk.readNews(1).isFresh(), is(true));
+        assertThat(disk.readNews(1).Item.Score, is(101));
+    }
+
+    @Test
+    public void pagesStopAtTheMaxStories() {
+        int[] ranking = new int[DataLayer.MAX_STORIES + 100];
+        for (int i = 0; i < ranking.length; i++) {
+            ranking[i] = i + 1;
+        }
+        mRanking = ranking;
+        mDataLayer.getTopStoriesIds();
+
+        SingleNews[] last = mDataLayer.getTopStories(DataLayer.MAX_STORIES - 5, 10);
+        assertThat(last.length, is(5));
+        assertThat(last[4].Id, is(DataLayer.MAX_STORIES));
+
+        // a page past the max is empty, even when the ranking is longer
+        assertThat(mDataLayer.getTopStories(DataLayer.MAX_STORIES, 10).length, is(0));
+        assertThat(mDataLayer.getTopStories(DataLayer.MAX_STORIES + 50, 10).length, is(0));
+    }
+
+    @Test
+    public void nothingWhenTheRankingFails() {
+        mRanking = new int[] { 1, 2 };
+        mDataLayer.getTopStories(0, 2);
+
+        // an invalid ranking
+        mRanking = null;
+        TopStoriesUpdate update = mDataLayer.refreshTopStories(2, mHandle);
+
+        assertThat(update.Stories.length, is(0));
+        assertThat(mDataLayer.getCachedNews(1).Id, is(1));
+    }
+}
@@ -0,0 +1,221 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.HttpTransport;
+import com.neilsonmarcil.droidnewsreader.data.RESTDataLayer;
+import com.neilsonmarcil.droidnewsreader.data.RequestTiming;
+import com.neilsonmarcil.droidnewsreader.data.StreamBuffer;
+import com.neilsonmarcil.droidnewsreader.dto.NewsComment;
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Runs many threads against the data layer with a stub transport and checks that every item is
+ * downloaded once and kept in the cache.
+ */
+@RunWith(JUnit4.class)
+public class RESTDataLayerStressTest {
+
+    private static final int THREADS = 16;
+    private static final int STORIES = 300;
+    private static final int FIRST_COMMENT = 100000;
+    private static final int COMMENTS = 300;
+
+    @Test
+    public void concurrentFetchesDownloadOnce() throws Exception {
+        final CountingTransport transport = new CountingTransport();
+        final RESTDataLayer dataLayer = new RESTDataLayer(transport) { };
+        final CyclicBarrier start = new CyclicBarrier(THREADS);
+
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final long seed = t;
+            workers.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    List<Integer> ids = new ArrayList<>();
+                    for (int i = 1; i <= STORIES; i++) {
+                        ids.add(i);
+                    }
+                    for (int i = 0; i < COMMENTS; i++) {
+                        ids.add(FIRST_COMMENT + i);
+                    }
+                    Collections.shuffle(ids, new Random(seed));
+
+                    start.await();
+                    for (int id : ids) {
+                        if (id < FIRST_COMMENT) {
+                            SingleNews news = dataLayer.getSpecificNews(id);
+                            assertThat(news.Id, is(id));
+                            assertThat(news.Title, is("Story " + id));
+                        }
+                        else {
+                            NewsComment comment = dataLayer.getSpecificComment(id);
+                            assertThat(comment.Id, is(id));
+                            assertThat(comment.Body, is("Comment " + id));
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        runAll(workers);
+
+        // no duplicate downloads
+        assertThat(transport.mRequests.size(), is(STORIES + COMMENTS));
+        for (AtomicInteger count : transport.mRequests.values()) {
+            assertThat(count.get(), is(1));
+        }
+
+        // no lost entries
+        assertThat(dataLayer.getStoriesCache().getCount(), is(STORIES));
+        assertThat(dataLayer.getCommentsCache().getCount(), is(COMMENTS));
+        assertThat(dataLayer.getStoriesCache().getEvictionCount(), is(0L));
+    }
+
+    @Test
+    public void concurrentPagesAndLookups() throws Exception {
+        final CountingTransport transport = new CountingTransport();
+        final RESTDataLayer dataLayer = new RESTDataLayer(transport) { };
+        dataLayer.getTopStoriesIds();
+        final CyclicBarrier start = new CyclicBarrier(THREADS);
+
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int offset = (t % 4) * 50;
+            workers.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    SingleNews[] page = dataLayer.getTopStories(offset, 100);
+                    assertThat(page.length, is(100));
+                    for (int i = 0; i < page.length; i++) {
+                        assertThat(page[i].Id, is(offset + i + 1));
+                        assertThat(dataLayer.getSpecificNews(page[i].Id), is(sameInstance(page[i])));
+                    }
+                    return null;
+                }
+            });
+        }
+
+        runAll(workers);
+
+        for (AtomicInteger count : transport.mRequests.values()) {
+            assertThat(count.get(), is(1));
+        }
+        assertThat(dataLayer.getStoriesCache().getCount(), is(250));
+    }
+
+    @Test
+    public void singleInstance() throws Exception {
+        final CyclicBarrier start = new CyclicBarrier(THREADS);
+        List<Callable<RESTDataLayer>> callers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            callers.add(new Callable<RESTDataLayer>() {
+                @Override
+                public RESTDataLayer call() throws Exception {
+                    start.await();
+                    return RESTDataLayer.getInstance();
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<RESTDataLayer>> results = executor.invokeAll(callers, 10, TimeUnit.SECONDS);
+            RESTDataLayer first = results.get(0).get();
+            for (Future<RESTDataLayer> result : results) {
+                assertThat(result.get(), is(sameInstance(first)));
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> void runAll(List<Callable<T>> workers) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+        try {
+            for (Future<T> result : executor.invokeAll(workers, 30, TimeUnit.SECONDS)) {
+                // rethrows the assertion errors of the workers
+                result.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Answers the item requests with generated JSON and counts the requests by path. Every
+     * request takes a little time so the concurrent loads overlap.
+     */
+    private static class CountingTransport implements HttpTransport {
+
+        final ConcurrentHashMap<String, AtomicInteger> mRequests = new ConcurrentHashMap<>();
+
+        @Override
+        public StreamBuffer get(String path, RequestTiming timing) throws IOException {
+            AtomicInteger count = mRequests.get(path);
+            if (count == null) {
+                AtomicInteger created = new AtomicInteger();
+                count = mRequests.putIfAbsent(path, created);
+                if (count == null) {
+                    count = created;
+                }
+            }
+            count.incrementAndGet();
+
+            try {
+                Thread.sleep(1);
+            }
+            catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+
+            String json;
+            if (path.equals("topstories.json")) {
+                StringBuilder ids = new StringBuilder("[");
+                for (int i = 1; i <= STORIES; i++) {
+                    ids.append(i == 1 ? "" : ",").append(i);
+                }
+                json = ids.append("]").toString();
+                // the ranking is downloaded again on purpose, it is not counted
+                mRequests.remove(path);
+            }
+            else {
+                int id = Integer.parseInt(path.substring("item/".length(), path.length() - ".json".length()));
+                json = id < FIRST_COMMENT
+                        ? "{\"id\":" + id + ",\"by\":\"author\",\"time\":1460000000,\"title\":\"Story " + id +
+                          "\",\"score\":10,\"kids\":[],\"url\":\"http://example.com/" + id + "\"}"
+                        : "{\"id\":" + id + ",\"by\":\"author\",\"parent\":1,\"time\":1460000000," +
+                          "\"text\":\"Comment " + id + "\"}";
+            }
+
+            byte[] bytes = json.getBytes(StreamBuffer.UTF8);
+            return StreamBuffer.obtain().readFrom(new ByteArrayInputStream(bytes), bytes.length);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.DataLayer;
+import com.neilsonmarcil.droidnewsreader.data.RankOrderPublisher;
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test that the RankOrderPublisher delivers the stories in rank order when they complete out of
+ * order, and the ranks of a page.
+ */
+@RunWith(JUnit4.class)
+public class RankOrderPublisherTest {
+
+    private final List<String> mEvents = new ArrayList<>();
+
+    private final DataLayer.StoriesListener mListener = new DataLayer.StoriesListener() {
+        @Override
+        public void onStory(int rank, SingleNews news) {
+            mEvents.add(rank + ":" + news.Id);
+        }
+
+        @Override
+        public void onComplete(int count) {
+            mEvents.add("complete " + count);
+        }
+    };
+
+    @Test
+    public void storiesAreHeldBackUntilTheOnesBeforeAreSettled() {
+        RankOrderPublisher publisher = new RankOrderPublisher(4, mListener);
+
+        publisher.onItem(2, 30, story(30));
+        publisher.onItem(3, 40, story(40));
+        assertThat(mEvents.toString(), is("[]"));
+
+        publisher.onItem(0, 10, story(10));
+        assertThat(mEvents.toString(), is("[0:10]"));
+
+        // the failure releases the stories behind it
+        publisher.onFailure(1, 20, new IOException("offline"));
+        assertThat(mEvents.toString(), is("[0:10, 2:30, 3:40]"));
+
+        assertThat(publisher.complete(), is(3));
+        assertThat(mEvents.toString(), is("[0:10, 2:30, 3:40, complete 3]"));
+    }
+
+    @Test
+    public void theRanksOfAPageFollowItsOffset() {
+        RankOrderPublisher publisher = new RankOrderPublisher(30, 3, mListener);
+
+        publisher.onItem(1, 20, story(20));
+        publisher.onItem(2, 30, story(30));
+        publisher.onItem(0, 10, story(10));
+
+        assertThat(publisher.complete(), is(3));
+        assertThat(mEvents.toString(), is("[30:10, 31:20, 32:30, complete 3]"));
+    }
+
+    private static SingleNews story(int id) {
+        SingleNews news = new SingleNews();
+        news.Id = id;
+        return news;
+    }
+}
@@ -0,0 +1,62 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.util.RelativeTimeCache;
+import com.neilsonmarcil.droidnewsreader.util.TimeFormatUtil;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Compares the cost of rendering the date of a row with TimeFormatUtil and with the
+ * RelativeTimeCache. The dates are spread over the last two days like the top stories.
+ */
+@RunWith(JUnit4.class)
+public class RelativeTimeCacheBenchmark {
+
+    private static final int ROWS = 500;
+    private static final long NOW = 1460000000000L;
+    private static final long TWO_DAYS = 2 * 24 * 60 * 60 * 1000L;
+
+    @Test
+    public void bindDates() {
+        final long[] dates = new long[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            dates[i] = NOW - (TWO_DAYS / ROWS) * i - 1000;
+        }
+
+        Benchmark.measure("TimeFormatUtil.formatTimespanAgoFirstUnit", ROWS * 20, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int length = 0;
+                for (int i = 0; i < iterations; i++) {
+                    length += TimeFormatUtil.formatTimespanAgoFirstUnit(NOW - dates[i % ROWS]).length();
+                }
+                return length;
+            }
+        });
+
+        final RelativeTimeCache cache = new RelativeTimeCache();
+        Benchmark.measure("RelativeTimeCache.format", ROWS * 20, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int length = 0;
+                for (int i = 0; i < iterations; i++) {
+                    length += cache.format(dates[i % ROWS], NOW).length();
+                }
+                return length;
+            }
+        });
+
+        Benchmark.measure("RelativeTimeCache.getNextChange", ROWS * 20, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                long change = 0;
+                for (int i = 0; i < iterations; i++) {
+                    change += cache.getNextChange(dates[i % ROWS], NOW);
+                }
+                return (int)change;
+            }
+        });
+    }
+}
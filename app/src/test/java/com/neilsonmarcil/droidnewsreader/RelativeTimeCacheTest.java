@@ -0,0 +1,72 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.util.RelativeTimeCache;
+import com.neilsonmarcil.droidnewsreader.util.TimeFormatUtil;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test the RelativeTimeCache renders the same labels as TimeFormatUtil and knows when they change.
+ */
+@RunWith(JUnit4.class)
+public class RelativeTimeCacheTest {
+
+    private static final long NOW = 1460000000000L;
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    @Test
+    public void sameLabelsAsTimeFormatUtil() {
+        RelativeTimeCache cache = new RelativeTimeCache();
+        long[] elapsed = { 1, 999, 1000, 59999, MINUTE, 5 * MINUTE + 30000, HOUR - 1, HOUR,
+                23 * HOUR + 59 * MINUTE, DAY, 29 * DAY, 30 * DAY, 400 * DAY, 4000 * DAY, 40000 * DAY,
+                1000000 * DAY };
+
+        for (long e : elapsed) {
+            assertThat(cache.format(NOW - e, NOW), is(TimeFormatUtil.formatTimespanAgoFirstUnit(e)));
+        }
+    }
+
+    @Test
+    public void futureDate() {
+        RelativeTimeCache cache = new RelativeTimeCache();
+        assertThat(cache.format(NOW, NOW), is(""));
+        assertThat(cache.format(NOW + HOUR, NOW), is(""));
+        assertThat(cache.getNextChange(NOW + HOUR, NOW), is(NOW + HOUR + 1));
+    }
+
+    @Test
+    public void labelsAreShared() {
+        RelativeTimeCache cache = new RelativeTimeCache();
+        String first = cache.format(NOW - 5 * HOUR, NOW);
+        String second = cache.format(NOW - 5 * HOUR - 20 * MINUTE, NOW);
+        assertThat(second, sameInstance(first));
+        assertThat(first, is("5 hours ago"));
+    }
+
+    @Test
+    public void nextChange() {
+        RelativeTimeCache cache = new RelativeTimeCache();
+        long date = NOW - 5 * HOUR - 20 * MINUTE;
+
+        long change = cache.getNextChange(date, NOW);
+        assertThat(change, is(NOW + 40 * MINUTE));
+        assertThat(cache.format(date, change - 1), is("5 hours ago"));
+        assertThat(cache.format(date, change), is("6 hours ago"));
+
+        // the unit changes at the end of the last hour of the day
+        date = NOW - 23 * HOUR - 30 * MINUTE;
+        change = cache.getNextChange(date, NOW);
+        assertThat(change, is(NOW + 30 * MINUTE));
+        assertThat(cache.format(date, change), is("1 day ago"));
+        assertThat(cache.format(date, change - 1), is(not("1 day ago")));
+    }
+}
@@ -0,0 +1,122 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.BatchResult;
+import com.neilsonmarcil.droidnewsreader.data.FetchHandle;
+import com.neilsonmarcil.droidnewsreader.data.FetchScheduler;
+import com.neilsonmarcil.droidnewsreader.data.HttpStatusException;
+import com.neilsonmarcil.droidnewsreader.data.HttpTransport;
+import com.neilsonmarcil.droidnewsreader.data.RESTDataLayer;
+import com.neilsonmarcil.droidnewsreader.data.RequestTiming;
+import com.neilsonmarcil.droidnewsreader.data.RetryPolicy;
+import com.neilsonmarcil.droidnewsreader.data.StreamBuffer;
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the delays and the failures retried by the RetryPolicy, and the RESTDataLayer using it.
+ */
+@RunWith(JUnit4.class)
+public class RetryPolicyTest {
+
+    @Test
+    public void delaysGrowExponentiallyWithJitter() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000);
+
+        assertThat(policy.getMaxDelay(1), is(100L));
+        assertThat(policy.getMaxDelay(2), is(200L));
+        assertThat(policy.getMaxDelay(4), is(800L));
+        assertThat(policy.getMaxDelay(5), is(1000L));
+        assertThat(policy.getMaxDelay(60), is(1000L));
+
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.getDelay(3);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        assertTrue(min >= 0 && min < 100);
+        assertTrue(max > 300 && max < 400);
+    }
+
+    @Test
+    public void onlyTransientFailuresAreRetried() {
+        RetryPolicy policy = new RetryPolicy();
+
+        assertThat(policy.shouldRetry(1, new SocketTimeoutException()), is(true));
+        assertThat(policy.shouldRetry(1, new ConnectException()), is(true));
+        assertThat(policy.shouldRetry(1, new EOFException()), is(true));
+        assertThat(policy.shouldRetry(1, new HttpStatusException(503, "item/1.json")), is(true));
+        assertThat(policy.shouldRetry(1, new HttpStatusException(429, "item/1.json")), is(true));
+
+        assertThat(policy.shouldRetry(1, new HttpStatusException(404, "item/1.json")), is(false));
+        assertThat(policy.shouldRetry(1, new IOException("invalid")), is(false));
+
+        // the last attempt
+        assertThat(policy.shouldRetry(RetryPolicy.DEFAULT_MAX_ATTEMPTS, new SocketTimeoutException()), is(false));
+    }
+
+    @Test
+    public void dataLayerRetriesTransientFailures() {
+        final AtomicInteger requests = new AtomicInteger();
+        RESTDataLayer dataLayer = new RESTDataLayer(new HttpTransport() {
+            @Override
+            public StreamBuffer get(String path, RequestTiming timing) throws IOException {
+                int request = requests.incrementAndGet();
+                if (path.equals("item/2.json")) {
+                    throw new HttpStatusException(404, path);
+                }
+                if (request < 3) {
+                    throw new HttpStatusException(503, path);
+                }
+                byte[] json = "{\"id\":1,\"by\":\"author\",\"time\":1460000000,\"title\":\"Story\"}".getBytes(StreamBuffer.UTF8);
+                return StreamBuffer.obtain().readFrom(new ByteArrayInputStream(json), json.length);
+            }
+        }) { };
+        dataLayer.setRetryPolicy(new RetryPolicy(3, 1, 1));
+
+        SingleNews news = dataLayer.getSpecificNews(1);
+        assertThat(news.Title, is("Story"));
+        assertThat(requests.get(), is(3));
+
+        // a missing item is not requested again
+        news = dataLayer.getSpecificNews(2);
+        assertThat(news.Title, nullValue());
+        assertThat(requests.get(), is(4));
+    }
+
+    @Test
+    public void cancelledRequestsAreNotRetried() {
+        final FetchHandle handle = new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+        final AtomicInteger requests = new AtomicInteger();
+        RESTDataLayer dataLayer = new RESTDataLayer(new HttpTransport() {
+            @Override
+            public StreamBuffer get(String path, RequestTiming timing) throws IOException {
+                // the screen is left during the first attempt
+                requests.incrementAndGet();
+                handle.cancel();
+                throw new HttpStatusException(503, path);
+            }
+        }) { };
+        dataLayer.setRetryPolicy(new RetryPolicy(5, 1, 1));
+
+        BatchResult<SingleNews> result = dataLayer.getNews(new int[] { 1 }, handle, 0);
+        assertThat(result.getItem(1), nullValue());
+        assertThat(requests.get(), is(1));
+    }
+}
@@ -0,0 +1,184 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.FetchHandle;
+import com.neilsonmarcil.droidnewsreader.data.FetchScheduler;
+import com.neilsonmarcil.droidnewsreader.data.SingleFlight;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Test that the concurrent loads of an id are shared, that a finished load is not reused and that
+ * the cancellation of the caller running a load is not shared.
+ */
+@RunWith(JUnit4.class)
+public class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    @Test
+    public void concurrentCallersShareOneLoad() throws Exception {
+        final SingleFlight<Object> flight = new SingleFlight<>();
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final Callable<Object> load = new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                loads.incrementAndGet();
+                started.countDown();
+                release.await();
+                return new Object();
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            Future<?>[] results = new Future<?>[CALLERS];
+            results[0] = executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return flight.execute(42, load);
+                }
+            });
+            started.await();
+
+            for (int i = 1; i < CALLERS; i++) {
+                results[i] = executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        return flight.execute(42, load);
+                    }
+                });
+            }
+
+            // leaving time to the other callers to join the running load
+            Thread.sleep(100);
+            release.countDown();
+
+            Object first = results[0].get(5, TimeUnit.SECONDS);
+            for (int i = 1; i < CALLERS; i++) {
+                assertThat(results[i].get(5, TimeUnit.SECONDS), is(sameInstance(first)));
+            }
+            assertThat(loads.get(), is(1));
+            assertThat(flight.getInFlightCount(), is(0));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void finishedLoadIsNotReused() throws Exception {
+        SingleFlight<Integer> flight = new SingleFlight<>();
+        final AtomicInteger loads = new AtomicInteger();
+        Callable<Integer> load = new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return loads.incrementAndGet();
+            }
+        };
+
+        assertThat(flight.execute(1, load), is(1));
+        assertThat(flight.execute(1, load), is(2));
+        assertThat(flight.execute(2, load), is(3));
+    }
+
+    @Test
+    public void aCancelledLoadIsRunAgainForTheOthers() throws Exception {
+        final SingleFlight<String> flight = new SingleFlight<>();
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final FetchHandle ownerHandle = new FetchHandle(FetchScheduler.Priority.USER_VISIBLE);
+
+        // the first load stops on the cancellation of its caller
+        final Callable<String> load = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                if (loads.incrementAndGet() == 1) {
+                    started.countDown();
+                    release.await();
+                    throw new InterruptedIOException("Request cancelled");
+                }
+                return "loaded";
+            }
+        };
+
+        FetchScheduler scheduler = new FetchScheduler(1);
+        final CountDownLatch ownerDone = new CountDownLatch(1);
+        final Exception[] ownerFailure = new Exception[1];
+        scheduler.execute(ownerHandle, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flight.execute(42, load);
+                }
+                catch (Exception ex) {
+                    ownerFailure[0] = ex;
+                }
+                ownerDone.countDown();
+            }
+        }, null);
+        started.await();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> joiner = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return flight.execute(42, load);
+                }
+            });
+
+            // leaving time to the other caller to join the running load
+            Thread.sleep(100);
+            ownerHandle.cancel();
+            release.countDown();
+
+            assertThat(joiner.get(5, TimeUnit.SECONDS), is("loaded"));
+            assertThat(ownerDone.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(ownerFailure[0] instanceof InterruptedIOException, is(true));
+            assertThat(loads.get(), is(2));
+        }
+        finally {
+            executor.shutdownNow();
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void exceptionIsRethrown() throws Exception {
+        SingleFlight<Object> flight = new SingleFlight<>();
+        try {
+            flight.execute(1, new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    throw new IOException("offline");
+                }
+            });
+            fail("IOException expected");
+        }
+        catch (IOException ex) {
+            assertThat(ex.getMessage(), is("offline"));
+        }
+        assertThat(flight.getInFlightCount(), is(0));
+    }
+}
@@ -0,0 +1,68 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.adapter.StoryListDiff;
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test the changes computed between two lists of stories.
+ */
+@RunWith(JUnit4.class)
+public class StoryListDiffTest {
+
+    @Test
+    public void sameIdsIsNotStructural() {
+        StoryListDiff diff = StoryListDiff.compute(stories(1, 2, 3), stories(1, 2, 3));
+        assertThat(diff.isStructural(), is(false));
+        assertThat(diff.getInserted() + diff.getRemoved() + diff.getMoved(), is(0));
+    }
+
+    @Test
+    public void insertsAndRemovals() {
+        StoryListDiff diff = StoryListDiff.compute(stories(1, 2, 3, 4), stories(0, 1, 3, 4, 5));
+        assertThat(diff.getInserted(), is(2));
+        assertThat(diff.getRemoved(), is(1));
+        assertThat(diff.getMoved(), is(0));
+        assertThat(diff.isStructural(), is(true));
+    }
+
+    @Test
+    public void singleStoryMovingUpIsOneMove() {
+        StoryListDiff diff = StoryListDiff.compute(stories(1, 2, 3, 4, 5), stories(5, 1, 2, 3, 4));
+        assertThat(diff.getMoved(), is(1));
+        assertThat(diff.getInserted(), is(0));
+        assertThat(diff.getRemoved(), is(0));
+    }
+
+    @Test
+    public void reversedListMovesAllButOne() {
+        StoryListDiff diff = StoryListDiff.compute(stories(1, 2, 3, 4, 5), stories(5, 4, 3, 2, 1));
+        assertThat(diff.getMoved(), is(4));
+    }
+
+    @Test
+    public void emptyLists() {
+        assertThat(StoryListDiff.compute(stories(), stories(1, 2)).getInserted(), is(2));
+        assertThat(StoryListDiff.compute(stories(1, 2), stories()).getRemoved(), is(2));
+        assertThat(StoryListDiff.compute(stories(), stories()).isStructural(), is(false));
+    }
+
+    private static List<SingleNews> stories(int... ids) {
+        List<SingleNews> stories = new ArrayList<>();
+        for (int id : ids) {
+            SingleNews news = new SingleNews();
+            news.Id = id;
+            stories.add(news);
+        }
+        return stories;
+    }
+}
@@ -0,0 +1,103 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.StreamBuffer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares reading a response with the StreamBuffer and with the previous implementation that
+ * copied the whole content for every 1KB chunk, for payloads from a small item to a 1MB response.
+ */
+@RunWith(JUnit4.class)
+public class StreamBufferBenchmark {
+
+    private static final int[] PAYLOAD_SIZES = { 200, 4 * 1024, 64 * 1024, 1024 * 1024 };
+
+    /**
+     * the total number of bytes read per measure, the iterations are adjusted to the payload size
+     */
+    private static final int BYTES_PER_MEASURE = 4 * 1024 * 1024;
+
+    @Test
+    public void readPayloads() throws IOException {
+        for (int size : PAYLOAD_SIZES) {
+            final byte[] payload = new byte[size];
+            Arrays.fill(payload, (byte)'7');
+            int iterations = Math.max(1, BYTES_PER_MEASURE / size);
+
+            // sanity check, both readers return the same content
+            assertThat(Arrays.equals(readLegacy(new ByteArrayInputStream(payload)), payload), is(true));
+            StreamBuffer check = StreamBuffer.obtain().readFrom(new ByteArrayInputStream(payload), -1);
+            assertThat(Arrays.equals(check.toByteArray(), payload), is(true));
+
+            Benchmark.measure("legacy accumulateBytes, " + size + " B", iterations, new Benchmark.Operation() {
+                @Override
+                public int run(int iterations) {
+                    int total = 0;
+                    for (int i = 0; i < iterations; i++) {
+                        total += readLegacy(new ByteArrayInputStream(payload)).length;
+                    }
+                    return total;
+                }
+            });
+
+            Benchmark.measure("StreamBuffer, no Content-Length, " + size + " B", iterations, new Benchmark.Operation() {
+                @Override
+                public int run(int iterations) {
+                    return readWithBuffer(payload, -1, iterations);
+                }
+            });
+
+            Benchmark.measure("StreamBuffer, Content-Length, " + size + " B", iterations, new Benchmark.Operation() {
+                @Override
+                public int run(int iterations) {
+                    return readWithBuffer(payload, payload.length, iterations);
+                }
+            });
+        }
+    }
+
+    private static int readWithBuffer(byte[] payload, int contentLength, int iterations) {
+        int total = 0;
+        try {
+            for (int i = 0; i < iterations; i++) {
+                total += StreamBuffer.obtain().readFrom(new ByteArrayInputStream(payload), contentLength).getLength();
+            }
+        }
+        catch (IOException ex) {
+            throw new AssertionError(ex);
+        }
+        return total;
+    }
+
+    /**
+     * the reading loop RESTDataLayer used before the StreamBuffer
+     */
+    private static byte[] readLegacy(InputStream in) {
+        try {
+            byte[] buffer = new byte[1024];
+            byte[] content = new byte[0];
+            int read;
+            while ((read = in.read(buffer, 0, 1024)) > 0) {
+                byte[] expended = Arrays.copyOf(content, content.length + read);
+                System.arraycopy(buffer, 0, expended, content.length, read);
+                content = expended;
+            }
+            in.close();
+            return content;
+        }
+        catch (IOException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.util.TimeFormatUtil;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.CharBuffer;
+
+/**
+ * Compares the cost of the String methods of TimeFormatUtil with the append methods writing in a
+ * reused StringBuilder or CharBuffer. The append methods should not allocate once warmed up.
+ */
+@RunWith(JUnit4.class)
+public class TimeFormatUtilBenchmark {
+
+    private static final int TIMES = 1000;
+    private static final long TWO_DAYS = 2 * 24 * 60 * 60 * 1000L;
+
+    private static long[] elapsedTimes() {
+        long[] times = new long[TIMES];
+        for (int i = 0; i < TIMES; i++) {
+            times[i] = (TWO_DAYS / TIMES) * i + 1234;
+        }
+        return times;
+    }
+
+    @Test
+    public void firstUnit() {
+        final long[] times = elapsedTimes();
+
+        Benchmark.measure("formatTimespanAgoFirstUnit", TIMES * 20, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int length = 0;
+                for (int i = 0; i < iterations; i++) {
+                    length += TimeFormatUtil.formatTimespanAgoFirstUnit(times[i % TIMES]).length();
+                }
+                return length;
+            }
+        });
+
+        final StringBuilder b = new StringBuilder(64);
+        Benchmark.measure("appendTimespanAgoFirstUnit(StringBuilder)", TIMES * 20, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int length = 0;
+                for (int i = 0; i < iterations; i++) {
+                    b.setLength(0);
+                    length += TimeFormatUtil.appendTimespanAgoFirstUnit(times[i % TIMES], b).length();
+                }
+                return length;
+            }
+        });
+
+        final CharBuffer buffer = CharBuffer.allocate(64);
+        Benchmark.measure("appendTimespanAgoFirstUnit(CharBuffer)", TIMES * 20, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int length = 0;
+                for (int i = 0; i < iterations; i++) {
+                    buffer.clear();
+                    length += TimeFormatUtil.appendTimespanAgoFirstUnit(times[i % TIMES], buffer).position();
+                }
+                return length;
+            }
+        });
+    }
+
+    @Test
+    public void allUnits() {
+        final long[] times = elapsedTimes();
+
+        Benchmark.measure("formatTimespanAgo", TIMES * 20, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int length = 0;
+                for (int i = 0; i < iterations; i++) {
+                    length += TimeFormatUtil.formatTimespanAgo(times[i % TIMES]).length();
+                }
+                return length;
+            }
+        });
+
+        final StringBuilder b = new StringBuilder(64);
+        Benchmark.measure("appendTimespanAgo(StringBuilder)", TIMES * 20, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int length = 0;
+                for (int i = 0; i < iterations; i++) {
+                    b.setLength(0);
+                    length += TimeFormatUtil.appendTimespanAgo(times[i % TIMES], b).length();
+                }
+                return length;
+            }
+        });
+
+        final CharBuffer buffer = CharBuffer.allocate(64);
+        Benchmark.measure("appendTimespanAgo(CharBuffer)", TIMES * 20, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int length = 0;
+                for (int i = 0; i < iterations; i++) {
+                    buffer.clear();
+                    length += TimeFormatUtil.appendTimespanAgo(times[i % TIMES], buffer).position();
+                }
+                return length;
+            }
+        });
+    }
+}
@@ -5,6 +5,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.io.IOException;
+import java.nio.CharBuffer;
+
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
@@ -58,4 +61,98 @@ public class TimeFormatUtilTest {
         res = TimeFormatUtil.formatTimespanAgo(time);
         assertThat(res, is("1 hour 1 minute ago"));
     }
+
+    @Test
+    public void appendToStringBuilder() {
+        StringBuilder b = new StringBuilder("posted ");
+        TimeFormatUtil.appendTimespanAgoFirstUnit(1000 * 4 * 60 + 1000, b);
+        assertThat(b.toString(), is("posted 4 minutes ago"));
+
+        b.setLength(0);
+        TimeFormatUtil.appendTimespanAgo((60000 * 60 * 2) + (60000 * 45) + (1000 * 22) + (554), b);
+        assertThat(b.toString(), is("2 hours 45 minutes 22 seconds 554 milliseconds ago"));
+
+        b.setLength(0);
+        TimeFormatUtil.appendTimespanAgoFirstUnit(0, b);
+        assertThat(b.length(), is(0));
+    }
+
+    @Test
+    public void appendToCharBuffer() {
+        CharBuffer buffer = CharBuffer.allocate(64);
+        TimeFormatUtil.appendTimespanAgoFirstUnit(1000, buffer);
+        buffer.flip();
+        assertThat(buffer.toString(), is("1 second ago"));
+
+        buffer.clear();
+        TimeFormatUtil.appendTimespanAgo((1000 * 60 * 60) + (60000), buffer);
+        buffer.flip();
+        assertThat(buffer.toString(), is("1 hour 1 minute ago"));
+    }
+
+    @Test
+    public void appendWithDescriptor() {
+        TimeFormatUtil.AppendingTimeUnitDescriptor french = new TimeFormatUtil.AppendingTimeUnitDescriptor() {
+            private final String[] UNITS = { "si\u00e8cle", "d\u00e9cennie", "an", "mois", "jour", "heure", "minute", "seconde", "milliseconde" };
+
+            @Override
+            public void appendUnit(Appendable out, int unit, long value) throws IOException {
+                out.append(UNITS[unit]);
+                if (value > 1 && unit != 3) {
+                    out.append('s');
+                }
+            }
+
+            @Override
+            public void appendPrefix(Appendable out) throws IOException {
+                out.append("il y a ");
+            }
+
+            @Override
+            public void appendSuffix(Appendable out) {
+            }
+        };
+
+        StringBuilder b = new StringBuilder();
+        TimeFormatUtil.appendTimespanAgoFirstUnit(1000 * 60 * 60 * 3, b, french);
+        assertThat(b.toString(), is("il y a 3 heures "));
+    }
+
+    @Test
+    public void sameAsFormat() {
+        StringBuilder b = new StringBuilder();
+        long time = 1;
+        while (time < Long.MAX_VALUE / 7) {
+            b.setLength(0);
+            assertThat(TimeFormatUtil.appendTimespanAgoFirstUnit(time, b).toString(),
+                    is(TimeFormatUtil.formatTimespanAgoFirstUnit(time, DESCRIPTOR)));
+            b.setLength(0);
+            assertThat(TimeFormatUtil.appendTimespanAgo(time, b).toString(),
+                    is(TimeFormatUtil.formatTimespanAgo(time, DESCRIPTOR)));
+            time = time * 7 + 3;
+        }
+    }
+
+    /**
+     * the English names with the String based descriptor
+     */
+    private static final TimeFormatUtil.TimeUnitDescriptor DESCRIPTOR = new TimeFormatUtil.TimeUnitDescriptor() {
+        private final String[] SINGLE_UNIT = { "century", "decade", "year", "month", "day", "hour", "minute", "second", "millisecond" };
+        private final String[] PLURAL_UNIT = { "centuries", "decades", "years", "months", "days", "hours", "minutes", "seconds", "milliseconds" };
+
+        @Override
+        public String getSingle(int i) {
+            return SINGLE_UNIT[i];
+        }
+
+        @Override
+        public String getPural(int i) {
+            return PLURAL_UNIT[i];
+        }
+
+        @Override
+        public String formatResult(String s) {
+            return String.format("%sago", s);
+        }
+    };
 }
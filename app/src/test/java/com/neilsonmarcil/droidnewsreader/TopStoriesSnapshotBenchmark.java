@@ -0,0 +1,196 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.ItemDecoder;
+import com.neilsonmarcil.droidnewsreader.data.TopStoriesSnapshot;
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+
+import org.json.JSONException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Compares the cost of reading the stories of the list at launch from the binary snapshot, from
+ * the JSON of the API decoded with the ItemDecoder and with the Java serialization. The stories
+ * are in memory for the three formats, the snapshot is also read from a file like at launch.
+ */
+@RunWith(JUnit4.class)
+public class TopStoriesSnapshotBenchmark {
+
+    private static final int STORIES = 100;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void readStories() throws IOException {
+        SingleNews[] stories = TopStoriesSnapshotTest.createStories(STORIES);
+
+        // the JSON of every story, one after the other
+        final byte[][] json = new byte[STORIES][];
+        for (int i = 0; i < STORIES; i++) {
+            json[i] = toJson(stories[i]).getBytes("UTF-8");
+        }
+
+        final byte[] serialized = serialize(stories);
+        final byte[] snapshot = TopStoriesSnapshot.encode(stories);
+
+        final TopStoriesSnapshot file = new TopStoriesSnapshot(new File(mFolder.getRoot(), "snapshot"));
+        file.write(stories);
+
+        Benchmark.report("JSON " + totalLength(json) + " B, serialization " + serialized.length +
+                         " B, snapshot " + snapshot.length + " B");
+
+        Benchmark.measure("JSON with the ItemDecoder, " + STORIES + " stories", 200, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int count = 0;
+                try {
+                    for (int i = 0; i < iterations; i++) {
+                        for (byte[] item : json) {
+                            count += ItemDecoder.decodeNews(item, 0, item.length).Id;
+                        }
+                    }
+                }
+                catch (JSONException ex) {
+                    throw new IllegalStateException(ex);
+                }
+                return count;
+            }
+        });
+
+        Benchmark.measure("Java serialization, " + STORIES + " stories", 200, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int count = 0;
+                for (int i = 0; i < iterations; i++) {
+                    count += deserialize(serialized).length;
+                }
+                return count;
+            }
+        });
+
+        Benchmark.measure("TopStoriesSnapshot.decode, " + STORIES + " stories", 200, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int count = 0;
+                try {
+                    for (int i = 0; i < iterations; i++) {
+                        count += TopStoriesSnapshot.decode(ByteBuffer.wrap(snapshot)).length;
+                    }
+                }
+                catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+                return count;
+            }
+        });
+
+        Benchmark.measure("TopStoriesSnapshot.read from file, " + STORIES + " stories", 200, new Benchmark.Operation() {
+            @Override
+            public int run(int iterations) {
+                int count = 0;
+                for (int i = 0; i < iterations; i++) {
+                    count += file.read().length;
+                }
+                return count;
+            }
+        });
+    }
+
+    private static String toJson(SingleNews news) {
+        StringBuilder b = new StringBuilder();
+        b.append("{\"by\":\"").append(news.Author).append("\",\"descendants\":").append(news.Comments.length)
+         .append(",\"id\":").append(news.Id).append(",\"kids\":[");
+        for (int i = 0; i < news.Comments.length; i++) {
+            b.append(i > 0 ? "," : "").append(news.Comments[i]);
+        }
+        return b.append("],\"score\":").append(news.Score).append(",\"time\":").append(news.Date)
+                .append(",\"title\":\"").append(news.Title).append("\",\"type\":\"story\",\"url\":\"")
+                .append(news.Url).append("\"}").toString();
+    }
+
+    private static int totalLength(byte[][] arrays) {
+        int length = 0;
+        for (byte[] a : arrays) {
+            length += a.length;
+        }
+        return length;
+    }
+
+    private static byte[] serialize(SingleNews[] stories) throws IOException {
+        SerializableNews[] copies = new SerializableNews[stories.length];
+        for (int i = 0; i < stories.length; i++) {
+            copies[i] = new SerializableNews(stories[i]);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(copies);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static SingleNews[] deserialize(byte[] data) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+            SerializableNews[] copies = (SerializableNews[])in.readObject();
+            SingleNews[] stories = new SingleNews[copies.length];
+            for (int i = 0; i < copies.length; i++) {
+                stories[i] = copies[i].toSingleNews();
+            }
+            return stories;
+        }
+        catch (IOException | ClassNotFoundException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * SingleNews is not Serializable, the stories are copied in this class to measure the Java
+     * serialization
+     */
+    private static class SerializableNews implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        int id;
+        String title;
+        String author;
+        String url;
+        long date;
+        int score;
+        int[] comments;
+
+        SerializableNews(SingleNews news) {
+            id = news.Id;
+            title = news.Title;
+            author = news.Author;
+            url = news.Url;
+            date = news.Date;
+            score = news.Score;
+            comments = news.Comments;
+        }
+
+        SingleNews toSingleNews() {
+            SingleNews news = new SingleNews();
+            news.Id = id;
+            news.Title = title;
+            news.Author = author;
+            news.Url = url;
+            news.Date = date;
+            news.Score = score;
+            news.Comments = comments;
+            return news;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.TopStoriesSnapshot;
+import com.neilsonmarcil.droidnewsreader.dto.SingleNews;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the TopStoriesSnapshot writes and reads the stories as they were, and ignores the files
+ * it cannot read.
+ */
+@RunWith(JUnit4.class)
+public class TopStoriesSnapshotTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    static SingleNews[] createStories(int count) {
+        SingleNews[] stories = new SingleNews[count];
+        for (int i = 0; i < count; i++) {
+            SingleNews news = new SingleNews();
+            news.Id = 11000000 + i;
+            news.Title = "Story number " + i + " about caf\u00e9s and \u65e5\u672c";
+            news.Author = "author" + (i % 7);
+            news.Url = i % 5 == 0 ? "" : "https://example.com/articles/" + i;
+            news.Date = 1460000000L + i * 60;
+            news.Score = i * 3;
+            news.Comments = new int[i % 12];
+            for (int c = 0; c < news.Comments.length; c++) {
+                news.Comments[c] = 12000000 + i * 100 + c;
+            }
+            stories[i] = news;
+        }
+        return stories;
+    }
+
+    private static void assertSameStories(SingleNews[] actual, SingleNews[] expected) {
+        assertThat(actual.length, is(expected.length));
+        for (int i = 0; i < expected.length; i++) {
+            assertThat(actual[i].Id, is(expected[i].Id));
+            assertThat(actual[i].Title, is(expected[i].Title));
+            assertThat(actual[i].Author, is(expected[i].Author));
+            assertThat(actual[i].Url, is(expected[i].Url));
+            assertThat(actual[i].Date, is(expected[i].Date));
+            assertThat(actual[i].Score, is(expected[i].Score));
+            assertTrue(Arrays.equals(actual[i].Comments, expected[i].Comments));
+        }
+    }
+
+    @Test
+    public void writeThenRead() throws IOException {
+        SingleNews[] stories = createStories(50);
+        stories[3].Url = null;
+
+        TopStoriesSnapshot snapshot = new TopStoriesSnapshot(new File(mFolder.getRoot(), "snapshot"));
+        assertThat(snapshot.read(), nullValue());
+
+        assertTrue(snapshot.write(stories));
+        assertSameStories(snapshot.read(), stories);
+
+        // replaced by the next write, no temporary file is left
+        assertTrue(snapshot.write(Arrays.copyOf(stories, 10)));
+        assertSameStories(snapshot.read(), Arrays.copyOf(stories, 10));
+        assertThat(mFolder.getRoot().list().length, is(1));
+    }
+
+    @Test
+    public void stringsAreStoredOnce() throws IOException {
+        SingleNews[] stories = createStories(100);
+        for (SingleNews news : stories) {
+            news.Author = "same";
+        }
+        int shared = TopStoriesSnapshot.encode(stories).length;
+
+        for (int i = 0; i < stories.length; i++) {
+            stories[i].Author = "author" + (100 + i);
+        }
+        int distinct = TopStoriesSnapshot.encode(stories).length;
+
+        // each distinct author adds its length and bytes to the table
+        assertThat(distinct - shared, is(99 * (4 + 9) + (9 - 4)));
+    }
+
+    @Test
+    public void decodeInMemory() throws IOException {
+        SingleNews[] stories = createStories(20);
+        byte[] data = TopStoriesSnapshot.encode(stories);
+        assertSameStories(TopStoriesSnapshot.decode(ByteBuffer.wrap(data)), stories);
+    }
+
+    @Test
+    public void corruptedFileIsIgnored() throws IOException {
+        File file = new File(mFolder.getRoot(), "snapshot");
+        TopStoriesSnapshot snapshot = new TopStoriesSnapshot(file);
+        byte[] data = TopStoriesSnapshot.encode(createStories(20));
+
+        // truncated in the middle of the records
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(data, 0, data.length / 2);
+        out.close();
+        assertThat(snapshot.read(), nullValue());
+
+        // not a snapshot at all
+        out = new FileOutputStream(file);
+        out.write("{\"id\": 1}".getBytes("UTF-8"));
+        out.close();
+        assertThat(snapshot.read(), nullValue());
+    }
+}
@@ -0,0 +1,108 @@
+package com.neilsonmarcil.droidnewsreader;
+
+import com.neilsonmarcil.droidnewsreader.data.HttpStatusException;
+import com.neilsonmarcil.droidnewsreader.data.RequestTiming;
+import com.neilsonmarcil.droidnewsreader.data.StreamBuffer;
+import com.neilsonmarcil.droidnewsreader.data.UrlConnectionTransport;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test the UrlConnectionTransport against a local stub server.
+ */
+@RunWith(JUnit4.class)
+public class UrlConnectionTransportTest {
+
+    private static final String ITEM = "{\"id\":1,\"title\":\"stub\"}";
+
+    private HttpServer mServer;
+
+    /**
+     * the client ports seen by the server, one per connection
+     */
+    private final Set<Integer> mClientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    private UrlConnectionTransport mTransport;
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/v0/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mClientPorts.add(exchange.getRemoteAddress().getPort());
+                boolean found = exchange.getRequestURI().getPath().equals("/v0/item/1.json");
+                byte[] body = (found ? ITEM : "not found").getBytes("UTF-8");
+                exchange.sendResponseHeaders(found ? 200 : 404, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.start();
+
+        mTransport = new UrlConnectionTransport("http://127.0.0.1:" + mServer.getAddress().getPort() + "/v0");
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void readsBodyAndTiming() throws IOException {
+        RequestTiming timing = new RequestTiming();
+        StreamBuffer content = mTransport.get("item/1.json", timing);
+
+        assertThat(content.decode(), is(ITEM));
+        assertThat(timing.Bytes, is(ITEM.length()));
+        assertTrue(timing.FirstByteNanos > 0);
+        assertTrue(timing.getTotalNanos() > 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void errorStatus() throws IOException {
+        mTransport.get("item/2.json", null);
+    }
+
+    @Test
+    public void reusesConnection() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            mTransport.get("item/1.json", null);
+        }
+        assertThat(mClientPorts.size(), is(1));
+    }
+
+    @Test
+    public void reusesConnectionAfterAnErrorStatus() throws IOException {
+        mTransport.get("item/1.json", null);
+        try {
+            mTransport.get("item/2.json", null);
+            fail("HttpStatusException expected");
+        }
+        catch (HttpStatusException ex) {
+            assertThat(ex.getStatus(), is(404));
+        }
+        mTransport.get("item/1.json", null);
+        assertThat(mClientPorts.size(), is(1));
+    }
+}